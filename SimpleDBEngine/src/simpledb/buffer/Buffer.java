@@ -1,5 +1,6 @@
 package simpledb.buffer;
 
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 
@@ -8,6 +9,12 @@ import simpledb.log.LogMgr;
  * its status, such as the associated disk block, the number of times the buffer
  * has been pinned, whether its contents have been modified, and if so, the id
  * and lsn of the modifying transaction.
+ * <p>
+ * The page is protected by a latch, which is separate from the transactions'
+ * locks and is held only while the page is being read or changed. Any number
+ * of threads can read the page together under a shared latch; a change takes
+ * the latch exclusively. Transaction locks decide which values a transaction
+ * may touch, and the latch keeps each individual access whole.
  * 
  * @author Edward Sciore
  */
@@ -19,7 +26,9 @@ public class Buffer {
 	private int pins = 0;
 	private int txnum = -1;
 	private int lsn = -1;
+	private int recLSN = -1;
 	private int id = -1;
+	private ReentrantReadWriteLock latch = new ReentrantReadWriteLock();
 
 	public Buffer(FileMgr fm, LogMgr lm, int id) {
 		this.fm = fm;
@@ -32,6 +41,30 @@ public class Buffer {
 		return contents;
 	}
 
+	/**
+	 * Acquire the buffer's latch in shared mode, waiting while another thread is
+	 * changing the page.
+	 */
+	public void latchShared() {
+		latch.readLock().lock();
+	}
+
+	public void unlatchShared() {
+		latch.readLock().unlock();
+	}
+
+	/**
+	 * Acquire the buffer's latch in exclusive mode, waiting until no other thread
+	 * is reading or changing the page.
+	 */
+	public void latchExclusive() {
+		latch.writeLock().lock();
+	}
+
+	public void unlatchExclusive() {
+		latch.writeLock().unlock();
+	}
+
 	/**
 	 * Returns a reference to the disk block allocated to the buffer.
 	 * 
@@ -50,10 +83,40 @@ public class Buffer {
 		return id;
 	}
 
-	public void setModified(int txnum, int lsn) {
+	/**
+	 * Marks the buffer as modified by the specified transaction. The first logged
+	 * modification since the buffer was last written becomes its recovery LSN.
+	 * Callers that log a change hold the buffer's exclusive latch from the log
+	 * append until this call, so a checkpoint never sees the change half done.
+	 * 
+	 * @param txnum the id of the modifying transaction
+	 * @param lsn   the LSN of the change's log record, or -1 if it was not logged
+	 */
+	public synchronized void setModified(int txnum, int lsn) {
 		this.txnum = txnum;
-		if (lsn >= 0)
+		if (lsn >= 0) {
 			this.lsn = lsn;
+			if (recLSN < 0)
+				recLSN = lsn;
+		}
+	}
+
+	/**
+	 * Returns the LSN of the earliest logged change that has not yet been written
+	 * to disk, or -1 if there is none. The method waits for a change in progress
+	 * to finish.
+	 * 
+	 * @return the buffer's recovery LSN
+	 */
+	public int recoveryLSN() {
+		latchShared();
+		try {
+			synchronized (this) {
+				return txnum >= 0 ? recLSN : -1;
+			}
+		} finally {
+			unlatchShared();
+		}
 	}
 
 	/**
@@ -84,13 +147,22 @@ public class Buffer {
 	}
 
 	/**
-	 * Write the buffer to its disk block if it is dirty.
+	 * Write the buffer to its disk block if it is dirty. The page is written under
+	 * a shared latch, so that no change is made to it meanwhile.
 	 */
 	void flush() {
-		if (txnum >= 0) {
-			lm.flush(lsn);
-			fm.write(blk, contents);
-			txnum = -1;
+		latchShared();
+		try {
+			synchronized (this) {
+				if (txnum >= 0) {
+					lm.flush(lsn);
+					fm.write(blk, contents);
+					txnum = -1;
+					recLSN = -1;
+				}
+			}
+		} finally {
+			unlatchShared();
 		}
 	}
 
@@ -0,0 +1,76 @@
+package simpledb.buffer;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+
+public class BufferLatchTest {
+   private static final int THREADS = 8;
+
+   public static void main(String[] args) throws Exception {
+      // threads reading different values of one page never see each other's bytes
+      Page p = new Page(400);
+      for (int i=0; i<THREADS; i++) {
+         p.setString(40*i, "value" + i);
+         p.setBytes(40*i + 20, new byte[] {(byte) i, (byte) i, (byte) i});
+      }
+      AtomicInteger wrong = new AtomicInteger();
+      List<Thread> threads = new ArrayList<>();
+      for (int i=0; i<THREADS; i++) {
+         int k = i;
+         Thread t = new Thread(() -> {
+            for (int n=0; n<100000; n++) {
+               if (!p.getString(40*k).equals("value" + k))
+                  wrong.incrementAndGet();
+               byte[] b = p.getBytes(40*k + 20);
+               if (b.length != 3 || b[0] != k || b[2] != k)
+                  wrong.incrementAndGet();
+            }
+         });
+         t.start();
+         threads.add(t);
+      }
+      for (Thread t : threads)
+         t.join();
+      System.out.println("Wrong values read concurrently (should be 0): " + wrong.get());
+
+      SimpleDB db = new SimpleDB("bufferlatchtest", 400, 3);
+      Buffer buff = db.bufferMgr().pin(new BlockId("testfile", 1));
+
+      // shared latches are held together
+      buff.latchShared();
+      long waited = timeOther(() -> {
+         buff.latchShared();
+         buff.unlatchShared();
+      });
+      buff.unlatchShared();
+      System.out.println("Second shared latch waited (should be false): " + (waited >= 200));
+
+      // an exclusive latch holds up readers, and the recovery LSN of a change in progress
+      buff.latchExclusive();
+      waited = timeOther(() -> {
+         buff.latchShared();
+         buff.unlatchShared();
+      });
+      System.out.println("Shared latch waited for the exclusive one (should be true): " + (waited >= 200));
+      waited = timeOther(() -> buff.recoveryLSN());
+      System.out.println("Recovery LSN waited for the exclusive latch (should be true): " + (waited >= 200));
+      buff.unlatchExclusive();
+      db.bufferMgr().unpin(buff);
+   }
+
+   // Run the action on another thread and return how long it took,
+   // or 300 if it is still waiting after 300ms.
+   private static long timeOther(Runnable action) throws InterruptedException {
+      long[] elapsed = new long[1];
+      Thread t = new Thread(() -> {
+         long start = System.currentTimeMillis();
+         action.run();
+         elapsed[0] = System.currentTimeMillis() - start;
+      });
+      t.start();
+      t.join(300);
+      return t.isAlive() ? 300 : elapsed[0];
+   }
+}
@@ -1,5 +1,6 @@
 package simpledb.buffer;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -16,6 +17,7 @@ import simpledb.log.LogMgr;
  *
  */
 public class BufferMgr {
+	private Buffer[] bufferpool;
 	private List<Buffer> unpinnedBuffers;
 	private Map<BlockId, Buffer> allocatedBuffers;
 	private int numAvailable;
@@ -32,9 +34,12 @@ public class BufferMgr {
 		unpinnedBuffers = new LinkedList<Buffer>();
 		allocatedBuffers = new HashMap<BlockId, Buffer>();
 
+		bufferpool = new Buffer[numbuffs];
 		numAvailable = numbuffs;
-		for (int i = 0; i < numbuffs; i++)
-			unpinnedBuffers.add(new Buffer(fm, lm, i));
+		for (int i = 0; i < numbuffs; i++) {
+			bufferpool[i] = new Buffer(fm, lm, i);
+			unpinnedBuffers.add(bufferpool[i]);
+		}
 	}
 
 	/**
@@ -52,11 +57,47 @@ public class BufferMgr {
 	 * @param txnum the transaction's id number
 	 */
 	public synchronized void flushAll(int txnum) {
-		for (Buffer buff : unpinnedBuffers)
+		for (Buffer buff : bufferpool)
 			if (buff.modifyingTx() == txnum)
 				buff.flush();
 	}
 
+	/**
+	 * Flushes the specified buffers if they are dirty, regardless of which
+	 * transaction modified them last. A buffer that has since been assigned to
+	 * another block was flushed when it was reassigned.
+	 * 
+	 * @param buffs the buffers to flush
+	 */
+	public synchronized void flush(Collection<Buffer> buffs) {
+		for (Buffer buff : buffs)
+			buff.flush();
+	}
+
+	/**
+	 * Flushes every dirty buffer, regardless of which transaction modified it.
+	 */
+	public synchronized void flushAll() {
+		for (Buffer buff : bufferpool)
+			buff.flush();
+	}
+
+	/**
+	 * Returns the dirty page table: the recovery LSN of each buffer that holds
+	 * logged changes not yet written to disk, keyed by its block.
+	 * 
+	 * @return the blocks of the dirty buffers and their recovery LSNs
+	 */
+	public synchronized Map<BlockId, Integer> dirtyPages() {
+		Map<BlockId, Integer> dpt = new HashMap<BlockId, Integer>();
+		for (Buffer buff : bufferpool) {
+			int reclsn = buff.recoveryLSN();
+			if (reclsn >= 0)
+				dpt.put(buff.block(), reclsn);
+		}
+		return dpt;
+	}
+
 	/**
 	 * Unpins the specified data buffer. If its pin count goes to zero, then notify
 	 * any waiting threads.
@@ -170,11 +211,12 @@ public class BufferMgr {
 
 	private Buffer findExistingBuffer(BlockId blk) {
 		Buffer buff = allocatedBuffers.get(blk);
-		if (buff != null && buff.isPinned()) {
-			return buff;
+		if (buff != null && !buff.isPinned()) {
+			// The buffer still holds the block (possibly with committed changes
+			// that have not been written yet), so take it off the LRU list.
+			unpinnedBuffers.remove(buff);
 		}
-		
-		return null;
+		return buff;
 	}
 
 	private Buffer chooseUnpinnedBuffer() {
@@ -18,6 +18,8 @@ public class BlockId {
    }
    
    public boolean equals(Object obj) {
+      if (!(obj instanceof BlockId))
+         return false;
       BlockId blk = (BlockId) obj;
       return filename.equals(blk.filename) && blknum == blk.blknum;
    }
@@ -71,6 +71,63 @@ public class FileMgr {
       }
    }
 
+   /**
+    * Extends the specified file so that it contains at least
+    * the specified number of blocks. The new blocks are
+    * allocated up front, so later writes to them do not
+    * need to grow the file.
+    * @param filename the name of the file
+    * @param numblocks the desired number of blocks
+    */
+   public synchronized void preallocate(String filename, int numblocks) {
+      try {
+         RandomAccessFile f = getFile(filename);
+         long size = (long) numblocks * blocksize;
+         if (f.length() < size)
+            f.setLength(size);
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot preallocate " + filename);
+      }
+   }
+
+   /**
+    * Renames the specified file, closing it first if it is open.
+    * @param oldname the current name of the file
+    * @param newname the new name of the file
+    */
+   public synchronized void rename(String oldname, String newname) {
+      close(oldname);
+      close(newname);
+      File oldfile = new File(dbDirectory, oldname);
+      File newfile = new File(dbDirectory, newname);
+      if (!oldfile.renameTo(newfile))
+         throw new RuntimeException("cannot rename " + oldname + " to " + newname);
+   }
+
+   /**
+    * Deletes the specified file, closing it first if it is open.
+    * @param filename the name of the file
+    */
+   public synchronized void delete(String filename) {
+      close(filename);
+      new File(dbDirectory, filename).delete();
+   }
+
+   /**
+    * Returns the names of the files in the database directory
+    * that begin with the specified prefix.
+    * @param prefix the prefix of the file names
+    * @return the matching file names
+    */
+   public synchronized List<String> list(String prefix) {
+      List<String> result = new ArrayList<>();
+      for (String filename : dbDirectory.list())
+         if (filename.startsWith(prefix))
+            result.add(filename);
+      return result;
+   }
+
    public boolean isNew() {
       return isNew;
    }
@@ -79,6 +136,18 @@ public class FileMgr {
       return blocksize;
    }
 
+   private void close(String filename) {
+      RandomAccessFile f = openFiles.remove(filename);
+      if (f != null) {
+         try {
+            f.close();
+         }
+         catch (IOException e) {
+            throw new RuntimeException("cannot close " + filename);
+         }
+      }
+   }
+
    private RandomAccessFile getFile(String filename) throws IOException {
       RandomAccessFile f = openFiles.get(filename);
       if (f == null) {
@@ -3,6 +3,12 @@ package simpledb.file;
 import java.nio.ByteBuffer;
 import java.nio.charset.*;
 
+/**
+ * The contents of a block. Every accessor addresses the page by an absolute
+ * offset and leaves the position of the underlying byte buffer alone, so any
+ * number of threads can read the same page at once. Writers must be kept apart
+ * from readers by the caller, which for a buffer's page is the buffer's latch.
+ */
 public class Page {
 	private ByteBuffer bb;
 	public static Charset CHARSET = StandardCharsets.US_ASCII;
@@ -33,10 +39,9 @@ public class Page {
 
 	// TODO :: Handle if offset can't have an bytes.
 	public byte[] getBytes(int offset) {
-		bb.position(offset);
-		int length = bb.getInt();
+		int length = bb.getInt(offset);
 		byte[] b = new byte[length];
-		bb.get(b);
+		view(offset + 4).get(b);
 		return b;
 	}
 
@@ -46,23 +51,49 @@ public class Page {
 			String bytesStr = new String(b, StandardCharsets.UTF_8);
 			System.out.println("Bytes " + bytesStr + " does not fit at location " + offset + " of the page.");
 		} else {
-			bb.position(offset);
-			bb.putInt(b.length);
-			bb.put(b);
+			bb.putInt(offset, b.length);
+			view(offset + 4).put(b);
 		}
 	}
 
-	public String getString(int offset) {
-		bb.position(offset);
+	// reads the specified number of bytes, without a length prefix
+	public byte[] getRaw(int offset, int length) {
+		byte[] b = new byte[length];
+		view(offset).get(b);
+		return b;
+	}
 
-		String s = "";
+	// writes the bytes as they are, without a length prefix
+	public void setRaw(int offset, byte[] b) {
+		view(offset).put(b);
+	}
+
+	// reads the bit at the specified bit position: bit i of the page is
+	// bit i % 8 of byte i / 8, counting from the least significant bit
+	public boolean getBit(int bitpos) {
+		return (bb.get(bitpos / 8) & (1 << (bitpos % 8))) != 0;
+	}
+
+	// writes the bit at the specified bit position, leaving the other bits of
+	// its byte alone
+	public void setBit(int bitpos, boolean val) {
+		int offset = bitpos / 8;
+		int mask = 1 << (bitpos % 8);
+		byte b = bb.get(offset);
+		bb.put(offset, (byte) (val ? (b | mask) : (b & ~mask)));
+	}
+
+	public String getString(int offset) {
+		StringBuilder sb = new StringBuilder();
 		char c;
+		int pos = offset;
 
-		while ((c = bb.getChar()) != '\0') {
-			s += c;
+		while ((c = bb.getChar(pos)) != '\0') {
+			sb.append(c);
+			pos += 2;
 		}
 
-		return s;
+		return sb.toString();
 	}
 
 	public void setString(int offset, String s) {
@@ -70,22 +101,45 @@ public class Page {
 		if (bb.capacity() - maxLength < offset) {
 			System.out.println("The string " + s + " does not fit at location " + offset + " of the page.");
 		} else {
-			char[] chars = s.toCharArray();
-			bb.position(offset);
-			for (char c : chars) {
-				bb.putChar(c);
+			int pos = offset;
+			for (int i = 0; i < s.length(); i++) {
+				bb.putChar(pos, s.charAt(i));
+				pos += 2;
 			}
-			bb.putChar('\0');
+			bb.putChar(pos, '\0');
 		}
 	}
 
+	public int size() {
+		return bb.capacity();
+	}
+
+	// returns a view of the page positioned at the specified offset, for the
+	// relative bulk get and put, without moving the page's own position
+	private ByteBuffer view(int offset) {
+		ByteBuffer view = bb.duplicate();
+		view.position(offset);
+		return view;
+	}
+
+	// copies the whole page into a page of the same size
+	public void copyTo(Page dest) {
+		ByteBuffer src = bb.duplicate();
+		src.clear();
+		ByteBuffer dst = dest.bb.duplicate();
+		dst.clear();
+		dst.put(src);
+	}
+
 	public static int maxLength(int strlen) {
 		return (strlen * 2) + 2;
 	}
 
-	// a package private method, needed by FileMgr
+	// a package private method, needed by FileMgr;
+	// returns a view of the whole page with its own position
 	ByteBuffer contents() {
-		bb.position(0);
-		return bb;
+		ByteBuffer view = bb.duplicate();
+		view.clear();
+		return view;
 	}
 }
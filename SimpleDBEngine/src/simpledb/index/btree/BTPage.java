@@ -47,10 +47,14 @@ public class BTPage {
    
    /**
     * Close the page by unpinning its buffer.
+    * Under read committed, the transaction's read locks
+    * on the block are released as well.
     */
    public void close() {
-      if (currentblk != null)
+      if (currentblk != null) {
+         tx.leaveBlock(currentblk);
          tx.unpin(currentblk);
+      }
       currentblk = null;
    }
    
@@ -3,6 +3,7 @@ package simpledb.jdbc.embedded;
 import java.sql.SQLException;
 import simpledb.server.SimpleDB;
 import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.IsolationLevel;
 import simpledb.plan.Planner;
 import simpledb.jdbc.ConnectionAdapter;
 
@@ -15,6 +16,8 @@ class EmbeddedConnection extends ConnectionAdapter {
    private SimpleDB db;
    private Transaction currentTx;
    private Planner planner;
+   private boolean readOnly = false;
+   private IsolationLevel isolation = IsolationLevel.SERIALIZABLE;
 
    /**
     * Creates a connection
@@ -46,7 +49,7 @@ class EmbeddedConnection extends ConnectionAdapter {
     */
    public void commit() throws SQLException {
       currentTx.commit();
-      currentTx = db.newTx();
+      currentTx = newTx();
    }
 
    /**
@@ -54,7 +57,45 @@ class EmbeddedConnection extends ConnectionAdapter {
     */
    public void rollback() throws SQLException {
       currentTx.rollback();
-      currentTx = db.newTx();
+      currentTx = newTx();
+   }
+
+   /**
+    * Puts the connection in read-only mode or takes it out of it.
+    * The current transaction is committed, and the next one is
+    * read-only if the connection is. A read-only transaction
+    * reads a snapshot of the database without locking or logging,
+    * and rejects updates.
+    */
+   public void setReadOnly(boolean readOnly) throws SQLException {
+      if (readOnly == this.readOnly)
+         return;
+      this.readOnly = readOnly;
+      currentTx.commit();
+      currentTx = newTx();
+   }
+
+   public boolean isReadOnly() throws SQLException {
+      return readOnly;
+   }
+
+   /**
+    * Sets the isolation level of the current transaction
+    * and of the ones that follow it. Read uncommitted is
+    * not supported, so it is raised to read committed.
+    */
+   public void setTransactionIsolation(int level) throws SQLException {
+      try {
+         isolation = IsolationLevel.forJdbcLevel(level);
+      }
+      catch(IllegalArgumentException e) {
+         throw new SQLException(e);
+      }
+      currentTx.setIsolationLevel(isolation);
+   }
+
+   public int getTransactionIsolation() throws SQLException {
+      return isolation.jdbcLevel();
    }
 
    /**
@@ -65,5 +106,11 @@ class EmbeddedConnection extends ConnectionAdapter {
    Transaction getTransaction() {  
       return currentTx;
    }
+
+   private Transaction newTx() {
+      Transaction tx = readOnly ? db.newReadOnlyTx() : db.newTx();
+      tx.setIsolationLevel(isolation);
+      return tx;
+   }
 }
 
@@ -6,6 +6,7 @@ import java.rmi.server.UnicastRemoteObject;
 import simpledb.plan.Planner;
 import simpledb.server.SimpleDB;
 import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.IsolationLevel;
 
 /**
  * The RMI server-side implementation of RemoteConnection.
@@ -16,6 +17,8 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
    private SimpleDB db;
    private Transaction currentTx;
    private Planner planner;
+   private boolean readOnly = false;
+   private IsolationLevel isolation = IsolationLevel.SERIALIZABLE;
    
    /**
     * Creates a remote connection
@@ -44,6 +47,38 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
    public void close() throws RemoteException {
       currentTx.commit();
    }
+
+   /**
+    * Puts the connection in read-only mode or takes it out of it.
+    * The current transaction is committed, and the next one is
+    * read-only if the connection is.
+    * @see simpledb.jdbc.network.RemoteConnection#setReadOnly(boolean)
+    */
+   public void setReadOnly(boolean readOnly) throws RemoteException {
+      if (readOnly == this.readOnly)
+         return;
+      this.readOnly = readOnly;
+      currentTx.commit();
+      currentTx = newTx();
+   }
+
+   public boolean isReadOnly() throws RemoteException {
+      return readOnly;
+   }
+
+   /**
+    * Sets the isolation level of the current transaction
+    * and of the ones that follow it.
+    * @see simpledb.jdbc.network.RemoteConnection#setTransactionIsolation(int)
+    */
+   public void setTransactionIsolation(int level) throws RemoteException {
+      isolation = IsolationLevel.forJdbcLevel(level);
+      currentTx.setIsolationLevel(isolation);
+   }
+
+   public int getTransactionIsolation() throws RemoteException {
+      return isolation.jdbcLevel();
+   }
    
 // The following methods are used by the server-side classes.
    
@@ -62,7 +97,7 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
     */
    void commit() {
       currentTx.commit();
-      currentTx = db.newTx();
+      currentTx = newTx();
    }
    
    /**
@@ -71,7 +106,13 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
     */
    void rollback() {
       currentTx.rollback();
-      currentTx = db.newTx();
+      currentTx = newTx();
+   }
+
+   private Transaction newTx() {
+      Transaction tx = readOnly ? db.newReadOnlyTx() : db.newTx();
+      tx.setIsolationLevel(isolation);
+      return tx;
    }
 }
 
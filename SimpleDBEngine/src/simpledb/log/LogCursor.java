@@ -0,0 +1,136 @@
+package simpledb.log;
+
+import simpledb.file.*;
+
+/**
+ * A cursor that moves through the records of the log in
+ * reverse order without copying them. After each call to
+ * {@link #next()}, the current record can be read in place
+ * from {@link #page()}, starting at {@link #position()}.
+ * The page is reused for every block, so a record must be
+ * copied with {@link #bytes()} if it is needed later.
+ */
+public class LogCursor {
+   private FileMgr fm;
+   private String logfile;
+   private int segmentblocks;
+   private int firstseg;
+   private int seg;
+   private BlockId blk;
+   private Page p;
+   private int currentpos;
+   private int recpos = -1;
+
+   /**
+    * Creates a cursor for the records in the log file,
+    * positioned after the last log record.
+    */
+   LogCursor(FileMgr fm, String logfile, int segmentblocks,
+             int firstseg, int seg, BlockId blk) {
+      this.fm = fm;
+      this.logfile = logfile;
+      this.segmentblocks = segmentblocks;
+      this.firstseg = firstseg;
+      this.seg = seg;
+      this.blk = blk;
+      byte[] b = new byte[fm.blockSize()];
+      p = new Page(b);
+      moveToBlock(blk);
+   }
+
+   /**
+    * Determines if there is a record earlier than the current one.
+    * @return true if there is an earlier record
+    */
+   public boolean hasNext() {
+      return currentpos<fm.blockSize() || blk.number()>0 || seg>firstseg;
+   }
+
+   /**
+    * Moves to the next earliest log record.
+    * If there are no more log records in the block,
+    * then move to the previous block (which is the last
+    * block of the previous segment if this is the first
+    * block of its segment).
+    * @return false if there was no earlier record
+    */
+   public boolean next() {
+      if (!hasNext())
+         return false;
+      if (currentpos == fm.blockSize()) {
+         if (blk.number() > 0)
+            blk = new BlockId(blk.fileName(), blk.number()-1);
+         else {
+            seg--;
+            blk = new BlockId(LogMgr.segmentName(logfile, seg), segmentblocks-1);
+         }
+         moveToBlock(blk);
+      }
+      recpos = currentpos;
+      currentpos += Integer.BYTES + p.getInt(currentpos);
+      return true;
+   }
+
+   /**
+    * Moves to the record at the specified address, as passed to
+    * {@link LogWritable#appended(long)} when the record was written.
+    * The record's block is read only if the cursor is not already
+    * on it. Calling {@link #next()} then moves to the record
+    * preceding it.
+    * @param address the address of the record
+    */
+   public void moveTo(long address) {
+      int recseg = (int) (address >>> 32);
+      int blknum = (int) address / fm.blockSize();
+      if (recseg != seg || blknum != blk.number()) {
+         seg = recseg;
+         blk = new BlockId(LogMgr.segmentName(logfile, seg), blknum);
+         fm.read(blk, p);
+      }
+      recpos = (int) address % fm.blockSize();
+      currentpos = recpos + Integer.BYTES + p.getInt(recpos);
+   }
+
+   /**
+    * Returns the page that holds the current record.
+    * @return the current log page
+    */
+   public Page page() {
+      return p;
+   }
+
+   /**
+    * Returns the offset in the page of the current record's first byte.
+    * @return the position of the current record
+    */
+   public int position() {
+      return recpos + Integer.BYTES;
+   }
+
+   /**
+    * Returns a copy of the current record.
+    * @return the bytes of the current record
+    */
+   public byte[] bytes() {
+      return p.getBytes(recpos);
+   }
+
+   /**
+    * Returns the address of the record whose size is stored at
+    * the specified byte of the specified segment, counting from
+    * the start of the segment.
+    */
+   static long address(int seg, int pos) {
+      return ((long) seg << 32) | pos;
+   }
+
+   /**
+    * Moves to the specified log block
+    * and positions it at the first record in that block
+    * (i.e., the most recent one).
+    */
+   private void moveToBlock(BlockId blk) {
+      fm.read(blk, p);
+      currentpos = p.getInt(0);
+   }
+}
@@ -5,27 +5,23 @@ import simpledb.file.*;
 
 /**
  * A class that provides the ability to move through the
- * records of the log file in reverse order.
+ * records of the log file in reverse order, stepping back
+ * through the segments from the current one to the oldest.
+ * Each record is returned as a copy; see {@link LogCursor}
+ * for reading records in place.
  * 
  * @author Edward Sciore
  */
 class LogIterator implements Iterator<byte[]> {
-   private FileMgr fm;
-   private BlockId blk;
-   private Page p;
-   private int currentpos;
-   private int boundary;
+   private LogCursor cursor;
 
    /**
     * Creates an iterator for the records in the log file,
     * positioned after the last log record.
     */
-   public LogIterator(FileMgr fm, BlockId blk) {
-      this.fm = fm;
-      this.blk = blk;
-      byte[] b = new byte[fm.blockSize()];
-      p = new Page(b);
-      moveToBlock(blk);
+   public LogIterator(FileMgr fm, String logfile, int segmentblocks,
+                      int firstseg, int seg, BlockId blk) {
+      cursor = new LogCursor(fm, logfile, segmentblocks, firstseg, seg, blk);
    }
 
    /**
@@ -34,34 +30,16 @@ class LogIterator implements Iterator<byte[]> {
     * @return true if there is an earlier record
     */
    public boolean hasNext() {
-      return currentpos<fm.blockSize() || blk.number()>0;
+      return cursor.hasNext();
    }
 
    /**
-    * Moves to the next log record in the block.
-    * If there are no more log records in the block,
-    * then move to the previous block
-    * and return the log record from there.
+    * Moves to the next earliest log record
+    * and returns a copy of it.
     * @return the next earliest log record
     */
    public byte[] next() {
-      if (currentpos == fm.blockSize()) {
-         blk = new BlockId(blk.fileName(), blk.number()-1);
-         moveToBlock(blk);
-      }
-      byte[] rec = p.getBytes(currentpos);
-      currentpos += Integer.BYTES + rec.length;
-      return rec;
-   }
-
-   /**
-    * Moves to the specified log block
-    * and positions it at the first record in that block
-    * (i.e., the most recent one).
-    */
-   private void moveToBlock(BlockId blk) {
-      fm.read(blk, p);
-      boundary = p.getInt(0);
-      currentpos = boundary;
+      cursor.next();
+      return cursor.bytes();
    }
 }
@@ -1,41 +1,101 @@
 package simpledb.log;
 
-import java.util.Iterator;
+import java.util.*;
 import simpledb.file.*;
 
 /**
- * The log manager, which is responsible for 
- * writing log records into a log file. The tail of 
+ * The log manager, which is responsible for
+ * writing log records into a log file. The tail of
  * the log is kept in a bytebuffer, which is flushed
- * to disk when needed. 
+ * to disk when needed.
+ * <p>
+ * The log is split into fixed-size segment files, named
+ * by appending the segment number to the log file name.
+ * Each segment is preallocated to its full size, so
+ * moving to a new log block never extends a file.
+ * Every block starts with a header that holds the boundary,
+ * the segment number, and the LSN preceding the block's
+ * first record, so LSNs keep increasing across restarts.
+ * Segments that only hold records older than the
+ * oldest LSN still needed by recovery can be released
+ * by calling {@link #truncate(int)}; a few of them are
+ * kept as spares and reused as future segments.
  * @author Edward Sciore
  */
 public class LogMgr {
+   public static final int DEFAULT_SEGMENT_BLOCKS = 64;
+   private static final int MAX_SPARES = 2;
+   private static final int SEGNUM_OFFSET = Integer.BYTES;
+   private static final int BASELSN_OFFSET = 2 * Integer.BYTES;
+   static final int HEADER_SIZE = 3 * Integer.BYTES;
+
    private FileMgr fm;
    private String logfile;
+   private int segmentblocks;
    private Page logpage;
    private BlockId currentblk;
+   private int firstseg;
+   private int currentseg;
+   private List<Integer> spares = new ArrayList<>();
+   private Map<Integer,Integer> firstLSNs = new HashMap<>();
    private int latestLSN = 0;
    private int lastSavedLSN = 0;
 
    /**
-    * Creates the manager for the specified log file.
-    * If the log file does not yet exist, it is created
-    * with an empty first block.
+    * Creates the manager for the specified log file,
+    * using segments of the default size.
     * @param FileMgr the file manager
     * @param logfile the name of the log file
     */
    public LogMgr(FileMgr fm, String logfile) {
+      this(fm, logfile, DEFAULT_SEGMENT_BLOCKS);
+   }
+
+   /**
+    * Creates the manager for the specified log file.
+    * If the log does not yet exist, its first segment is
+    * created with an empty first block. Otherwise the
+    * manager positions itself at the last block written
+    * in the newest segment, and continues numbering LSNs
+    * from the last record in that block.
+    * @param FileMgr the file manager
+    * @param logfile the name of the log file
+    * @param segmentblocks the number of blocks in each segment
+    */
+   public LogMgr(FileMgr fm, String logfile, int segmentblocks) {
       this.fm = fm;
       this.logfile = logfile;
+      this.segmentblocks = segmentblocks;
       byte[] b = new byte[fm.blockSize()];
       logpage = new Page(b);
-      int logsize = fm.length(logfile);
-      if (logsize == 0)
-         currentblk = appendNewBlock();
+      List<Integer> segs = existingSegments();
+      if (segs.isEmpty()) {
+         firstseg = currentseg = 0;
+         fm.preallocate(segmentName(logfile, 0), segmentblocks);
+         currentblk = formatBlock(new BlockId(segmentName(logfile, 0), 0));
+      }
       else {
-         currentblk = new BlockId(logfile, logsize-1);
+         firstseg = currentseg = segs.get(0);
+         Page p = new Page(new byte[fm.blockSize()]);
+         for (int seg : segs) {
+            if (seg == currentseg)
+               continue;
+            if (seg == currentseg+1 && ownsBlock(seg, 0)) {
+               currentseg = seg;
+               fm.read(new BlockId(segmentName(logfile, seg), 0), p);
+               firstLSNs.put(seg, p.getInt(BASELSN_OFFSET) + 1);
+            }
+            else
+               spares.add(seg);
+         }
+         String segfile = segmentName(logfile, currentseg);
+         int blknum = 0;
+         while (blknum+1 < segmentblocks && ownsBlock(currentseg, blknum+1))
+            blknum++;
+         currentblk = new BlockId(segfile, blknum);
          fm.read(currentblk, logpage);
+         latestLSN = logpage.getInt(BASELSN_OFFSET) + recordCount(logpage);
+         lastSavedLSN = latestLSN;
       }
    }
 
@@ -45,55 +105,220 @@ public class LogMgr {
     * All earlier log records will also be written to disk.
     * @param lsn the LSN of a log record
     */
-   public void flush(int lsn) {
+   public synchronized void flush(int lsn) {
       if (lsn >= lastSavedLSN)
          flush();
    }
 
-   public Iterator<byte[]> iterator() {
+   /**
+    * Returns the LSN of the most recently appended log record.
+    * @return the latest LSN
+    */
+   public synchronized int latestLSN() {
+      return latestLSN;
+   }
+
+   /**
+    * Returns the size of the largest record that fits in a log block.
+    * @return the maximum record size in bytes
+    */
+   public int maxRecordSize() {
+      return fm.blockSize() - HEADER_SIZE - Integer.BYTES;
+   }
+
+   public synchronized Iterator<byte[]> iterator() {
       flush();
-      return new LogIterator(fm, currentblk);
+      return new LogIterator(fm, logfile, segmentblocks, firstseg, currentseg, currentblk);
    }
 
    /**
-    * Appends a log record to the log buffer. 
-    * The record consists of an arbitrary array of bytes. 
+    * Returns a cursor that reads the log records in reverse
+    * order without copying them.
+    * @return a cursor positioned after the last log record
+    */
+   public synchronized LogCursor cursor() {
+      flush();
+      return new LogCursor(fm, logfile, segmentblocks, firstseg, currentseg, currentblk);
+   }
+
+   /**
+    * Appends a log record to the log buffer.
+    * The record consists of an arbitrary array of bytes.
     * Log records are written right to left in the buffer.
     * The size of the record is written before the bytes.
     * The beginning of the buffer contains the location
-    * of the last-written record (the "boundary").
+    * of the last-written record (the "boundary"), followed
+    * by the number of the segment that the block belongs to
+    * and the LSN that precedes the block's first record.
     * Storing the records backwards makes it easy to read
     * them in reverse order.
     * @param logrec a byte buffer containing the bytes.
     * @return the LSN of the final value
     */
    public synchronized int append(byte[] logrec) {
+      int recpos = allocate(logrec.length);
+      logpage.setBytes(recpos, logrec);
+      return latestLSN;
+   }
+
+   /**
+    * Appends a log record to the log buffer, letting the
+    * record serialize itself in place after its size.
+    * Unlike {@link #append(byte[])}, no copy of the record
+    * is made, so the call allocates nothing.
+    * The record is then told its address in the log.
+    * @param rec the record to append
+    * @return the LSN of the final value
+    */
+   public synchronized int append(LogWritable rec) {
+      int recsize = rec.logSize();
+      int recpos = allocate(recsize);
+      logpage.setInt(recpos, recsize);
+      rec.writeTo(logpage, recpos + Integer.BYTES);
+      rec.appended(LogCursor.address(currentseg, currentblk.number() * fm.blockSize() + recpos));
+      return latestLSN;
+   }
+
+   /**
+    * Reserves room in the log buffer for a record of the
+    * specified size, moving to the next block if needed,
+    * and assigns the record its LSN.
+    * A record larger than {@link #maxRecordSize()} cannot
+    * fit in any block, and is rejected.
+    * @return the position of the record's size
+    */
+   private int allocate(int recsize) {
+      if (recsize > maxRecordSize())
+         throw new RuntimeException("log record of " + recsize
+               + " bytes is larger than the maximum of " + maxRecordSize());
       int boundary = logpage.getInt(0);
-      int recsize = logrec.length;
       int bytesneeded = recsize + Integer.BYTES;
-      if (boundary - bytesneeded < Integer.BYTES) { // the log record doesn't fit,
+      if (boundary - bytesneeded < HEADER_SIZE) { // the log record doesn't fit,
          flush();        // so move to the next block.
-         currentblk = appendNewBlock();
+         currentblk = nextBlock();
          boundary = logpage.getInt(0);
       }
       int recpos = boundary - bytesneeded;
-
-      logpage.setBytes(recpos, logrec);
       logpage.setInt(0, recpos); // the new boundary
       latestLSN += 1;
-      return latestLSN;
+      return recpos;
+   }
+
+   /**
+    * Releases the log segments whose records are all older
+    * than the specified LSN. The current segment is never
+    * released. A released
+    * segment is renamed to become a future segment if there
+    * are not yet enough spares; otherwise it is deleted.
+    * @param lsn the oldest LSN that is still needed
+    */
+   public synchronized void truncate(int lsn) {
+      while (firstseg < currentseg) {
+         if (firstLSNs.get(firstseg+1) > lsn)
+            return;
+         String segfile = segmentName(logfile, firstseg);
+         if (spares.size() < MAX_SPARES) {
+            int spare = currentseg + 1;
+            for (int seg : spares)
+               spare = Math.max(spare, seg + 1);
+            fm.rename(segfile, segmentName(logfile, spare));
+            spares.add(spare);
+         }
+         else
+            fm.delete(segfile);
+         firstLSNs.remove(firstseg);
+         firstseg++;
+      }
    }
 
    /**
-    * Initialize the bytebuffer and append it to the log file.
+    * Returns the number of log segments currently in use.
+    * @return the number of live segments
     */
-   private BlockId appendNewBlock() {
-      BlockId blk = fm.append(logfile);     
+   public synchronized int segmentCount() {
+      return currentseg - firstseg + 1;
+   }
+
+   /**
+    * Returns the name of the file holding the specified log segment.
+    */
+   static String segmentName(String logfile, int seg) {
+      return logfile + "." + seg;
+   }
+
+   /**
+    * Moves to the block following the current one,
+    * starting a new segment if the current one is full.
+    * The new segment reuses a spare if one is available,
+    * and is preallocated otherwise.
+    */
+   private BlockId nextBlock() {
+      if (currentblk.number() + 1 < segmentblocks)
+         return formatBlock(new BlockId(currentblk.fileName(), currentblk.number()+1));
+      currentseg++;
+      String segfile = segmentName(logfile, currentseg);
+      if (!spares.remove(Integer.valueOf(currentseg)))
+         fm.preallocate(segfile, segmentblocks);
+      firstLSNs.put(currentseg, latestLSN + 1);
+      return formatBlock(new BlockId(segfile, 0));
+   }
+
+   /**
+    * Initialize the bytebuffer and write it to the specified
+    * block of the current segment.
+    */
+   private BlockId formatBlock(BlockId blk) {
       logpage.setInt(0, fm.blockSize());
+      logpage.setInt(SEGNUM_OFFSET, currentseg);
+      logpage.setInt(BASELSN_OFFSET, latestLSN);
       fm.write(blk, logpage);
       return blk;
    }
 
+   /**
+    * Returns the number of records in the specified log page.
+    */
+   private int recordCount(Page p) {
+      int count = 0;
+      int pos = p.getInt(0);
+      while (pos < fm.blockSize()) {
+         pos += Integer.BYTES + p.getInt(pos);
+         count++;
+      }
+      return count;
+   }
+
+   /**
+    * Determines whether the specified block was written as part
+    * of the specified segment, as opposed to being a zero-filled
+    * preallocated block or a leftover from a recycled segment.
+    */
+   private boolean ownsBlock(int seg, int blknum) {
+      Page p = new Page(new byte[fm.blockSize()]);
+      fm.read(new BlockId(segmentName(logfile, seg), blknum), p);
+      int boundary = p.getInt(0);
+      return p.getInt(SEGNUM_OFFSET) == seg
+            && boundary >= HEADER_SIZE && boundary <= fm.blockSize();
+   }
+
+   /**
+    * Returns the numbers of the existing segment files, in increasing order.
+    */
+   private List<Integer> existingSegments() {
+      List<Integer> segs = new ArrayList<>();
+      String prefix = logfile + ".";
+      for (String filename : fm.list(prefix)) {
+         try {
+            segs.add(Integer.parseInt(filename.substring(prefix.length())));
+         }
+         catch (NumberFormatException e) {
+            // not a log segment
+         }
+      }
+      Collections.sort(segs);
+      return segs;
+   }
+
    /**
     * Write the buffer to the log file.
     */
@@ -0,0 +1,44 @@
+package simpledb.log;
+
+import java.util.Iterator;
+import simpledb.file.*;
+
+public class LogSegmentTest {
+   public static void main(String[] args) {
+      FileMgr fm = new FileMgr(new java.io.File("logsegmenttest"), 400);
+      LogMgr lm = new LogMgr(fm, "segtest.log", 4);
+
+      int lsn = 0;
+      for (int i=1; i<=200; i++)
+         lsn = lm.append(createLogRecord(i));
+      System.out.println("segments before truncate: " + lm.segmentCount());
+      int keep = lsn - 20;
+      lm.truncate(keep);
+      System.out.println("segments after truncate: " + lm.segmentCount());
+      System.out.println("files: " + fm.list("segtest.log"));
+
+      int count = 0, last = 0;
+      Iterator<byte[]> iter = lm.iterator();
+      while (iter.hasNext()) {
+         last = new Page(iter.next()).getInt(0);
+         count++;
+      }
+      System.out.println("records still readable: " + count + ", earliest " + last
+                         + " (record " + (keep) + " should be included)");
+
+      // reopen the log, and check that appends continue where they left off
+      LogMgr lm2 = new LogMgr(fm, "segtest.log", 4);
+      lm2.append(createLogRecord(201));
+      iter = lm2.iterator();
+      System.out.println("latest record after reopening: " + new Page(iter.next()).getInt(0));
+      System.out.println("followed by: " + new Page(iter.next()).getInt(0));
+   }
+
+   private static byte[] createLogRecord(int n) {
+      byte[] b = new byte[2 * Integer.BYTES];
+      Page p = new Page(b);
+      p.setInt(0, n);
+      p.setInt(Integer.BYTES, n);
+      return b;
+   }
+}
@@ -0,0 +1,32 @@
+package simpledb.log;
+
+import simpledb.file.Page;
+
+/**
+ * An object that can serialize itself directly into the log buffer, so that
+ * appending it does not require an intermediate byte array.
+ */
+public interface LogWritable {
+   /**
+    * Returns the number of bytes that the record occupies.
+    * @return the size of the serialized record
+    */
+   int logSize();
+
+   /**
+    * Writes the record into the specified page, starting at the specified offset.
+    * Exactly {@link #logSize()} bytes must be written.
+    * @param p the log page
+    * @param offset the position of the record's first byte
+    */
+   void writeTo(Page p, int offset);
+
+   /**
+    * Called once the record is in the log buffer, with the address
+    * from which {@link LogCursor#moveTo(long)} can read it back.
+    * The default ignores it.
+    * @param address the address of the record
+    */
+   default void appended(long address) {
+   }
+}
@@ -23,6 +23,22 @@ public interface AggregationFn {
     */
    void processNext(Scan s);
    
+   /**
+    * Use the specified row of the batch
+    * to be the first record in the group.
+    * @param b the batch to aggregate over.
+    * @param row the index of the row
+    */
+   void processFirst(ColumnBatch b, int row);
+   
+   /**
+    * Use the specified row of the batch
+    * to be the next record in the group.
+    * @param b the batch to aggregate over.
+    * @param row the index of the row
+    */
+   void processNext(ColumnBatch b, int row);
+   
    /**
     * Return the name of the new aggregation field.
     * @return the name of the new aggregation field
@@ -0,0 +1,109 @@
+package simpledb.materialize;
+
+import java.util.*;
+
+import simpledb.query.*;
+import simpledb.record.Schema;
+
+/**
+ * The batch scan class for the <i>groupby</i> operator.
+ * Like {@link GroupByScan}, it expects the records of
+ * the underlying scan to be sorted on the group fields.
+ * A group may span several input batches, and an
+ * output batch holds many groups.
+ */
+public class BatchGroupByScan implements BatchScan {
+   private BatchScan s;
+   private List<String> groupfields;
+   private List<AggregationFn> aggfns;
+   private Schema sch = new Schema();
+   private ColumnBatch in, out;
+   private int pos;
+   private GroupValue groupval;
+   
+   /**
+    * Create a groupby scan, given a grouped batch scan.
+    * The aggregation fields are integer fields, as in
+    * {@link GroupByPlan}.
+    * @param s the grouped scan
+    * @param groupfields the group fields
+    * @param aggfns the aggregation functions
+    */
+   public BatchGroupByScan(BatchScan s, List<String> groupfields, List<AggregationFn> aggfns) {
+      this.s = s;
+      this.groupfields = groupfields;
+      this.aggfns = aggfns;
+      for (String fldname : groupfields)
+         sch.add(fldname, s.schema());
+      for (AggregationFn fn : aggfns)
+         sch.addIntField(fn.fieldName());
+      out = new ColumnBatch(sch);
+      beforeFirst();
+   }
+   
+   public void beforeFirst() {
+      s.beforeFirst();
+      in = null;
+      groupval = null;
+   }
+   
+   /**
+    * Fill the output batch with the next groups.
+    * The rows of the input batches are read in turn; a row
+    * whose group values differ from those of the current
+    * group ends that group, which is then added to the
+    * output batch. The last group ends with the input.
+    * @see simpledb.query.BatchScan#nextBatch()
+    */
+   public boolean nextBatch() {
+      out.clear();
+      while (!out.isFull()) {
+         if (in == null || pos == in.size()) {
+            if (!s.nextBatch()) {
+               in = null;
+               if (groupval != null)
+                  addGroup();
+               groupval = null;
+               break;
+            }
+            in = s.batch();
+            pos = 0;
+         }
+         int row = in.row(pos++);
+         if (groupval != null && groupval.matches(in, row)) {
+            for (AggregationFn fn : aggfns)
+               fn.processNext(in, row);
+            continue;
+         }
+         if (groupval != null)
+            addGroup();
+         groupval = new GroupValue(in, row, groupfields);
+         for (AggregationFn fn : aggfns)
+            fn.processFirst(in, row);
+      }
+      return out.size() > 0;
+   }
+   
+   public ColumnBatch batch() {
+      return out;
+   }
+   
+   public Schema schema() {
+      return sch;
+   }
+   
+   public void close() {
+      s.close();
+   }
+   
+   /**
+    * Add the current group to the output batch.
+    */
+   private void addGroup() {
+      int row = out.addRow();
+      for (String fldname : groupfields)
+         out.setVal(fldname, row, groupval.getVal(fldname));
+      for (AggregationFn fn : aggfns)
+         out.setVal(fn.fieldName(), row, fn.value());
+   }
+}
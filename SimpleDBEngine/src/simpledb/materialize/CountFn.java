@@ -40,6 +40,22 @@ public class CountFn implements AggregationFn {
       count++;
    }
    
+   /**
+    * Start a new count, as for a scan.
+    * @see simpledb.materialize.AggregationFn#processFirst(simpledb.query.ColumnBatch, int)
+    */
+   public void processFirst(ColumnBatch b, int row) {
+      count = 1;
+   }
+   
+   /**
+    * Increment the count, as for a scan.
+    * @see simpledb.materialize.AggregationFn#processNext(simpledb.query.ColumnBatch, int)
+    */
+   public void processNext(ColumnBatch b, int row) {
+      count++;
+   }
+   
    /**
     * Return the field's name, prepended by "countof".
     * @see simpledb.materialize.AggregationFn#fieldName()
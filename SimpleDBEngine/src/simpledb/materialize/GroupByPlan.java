@@ -48,6 +48,15 @@ public class GroupByPlan implements Plan {
       return new GroupByScan(s, groupfields, aggfns);
    }
    
+   /**
+    * Creates a batch groupby scan over the sorted records.
+    * The sort itself returns its records one at a time.
+    * @see simpledb.plan.Plan#openBatch(java.util.Collection)
+    */
+   public BatchScan openBatch(Collection<String> fields) {
+      return new BatchGroupByScan(p.openBatch(), groupfields, aggfns);
+   }
+   
    /**
     * Return the number of blocks required to
     * compute the aggregation,
@@ -1,5 +1,6 @@
 package simpledb.materialize;
 
+import static java.sql.Types.INTEGER;
 import java.util.*;
 
 import simpledb.query.*;
@@ -26,6 +27,43 @@ public class GroupValue {
          vals.put(fldname, s.getVal(fldname));
    }
    
+   /**
+    * Create a new group value, given the specified row
+    * of a batch and list of fields.
+    * @param b a batch
+    * @param row the index of the row
+    * @param fields the list of fields
+    */
+   public GroupValue(ColumnBatch b, int row, List<String> fields) {
+      for (String fldname : fields)
+         vals.put(fldname, b.getVal(fldname, row));
+   }
+   
+   /**
+    * Return true if the specified row of the batch has the
+    * same values as this group for the grouping fields.
+    * The values are compared without creating Constants.
+    * @param b a batch
+    * @param row the index of the row
+    * @return true if the row belongs to the group
+    */
+   public boolean matches(ColumnBatch b, int row) {
+      for (String fldname : vals.keySet()) {
+         Constant c = vals.get(fldname);
+         if (b.isNull(fldname, row) || c.isNull()) {
+            if (b.isNull(fldname, row) != c.isNull())
+               return false;
+         }
+         else if (b.schema().type(fldname) == INTEGER) {
+            if (c.asInt() != b.getInt(fldname, row))
+               return false;
+         }
+         else if (!c.asString().equals(b.getString(fldname, row)))
+            return false;
+      }
+      return true;
+   }
+   
    /**
     * Return the Constant value of the specified field in the group.
     * @param fldname the name of a field
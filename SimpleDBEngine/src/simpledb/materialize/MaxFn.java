@@ -1,5 +1,6 @@
 package simpledb.materialize;
 
+import static java.sql.Types.INTEGER;
 import simpledb.query.*;
 
 /**
@@ -38,6 +39,37 @@ public class MaxFn implements AggregationFn {
          val = newval;
    }
    
+   /**
+    * Start a new maximum to be the 
+    * field value in the specified row.
+    * @see simpledb.materialize.AggregationFn#processFirst(simpledb.query.ColumnBatch, int)
+    */
+   public void processFirst(ColumnBatch b, int row) {
+      val = b.getVal(fldname, row);
+   }
+   
+   /**
+    * Replace the current maximum by the field value
+    * in the specified row, if it is higher.
+    * Null values are skipped.
+    * An integer value is compared without creating a Constant.
+    * @see simpledb.materialize.AggregationFn#processNext(simpledb.query.ColumnBatch, int)
+    */
+   public void processNext(ColumnBatch b, int row) {
+      if (b.isNull(fldname, row))
+         return;
+      if (b.schema().type(fldname) == INTEGER) {
+         int newval = b.getInt(fldname, row);
+         if (val.isNull() || newval > val.asInt())
+            val = new Constant(newval);
+      }
+      else {
+         Constant newval = b.getVal(fldname, row);
+         if (val.isNull() || newval.compareTo(val) > 0)
+            val = newval;
+      }
+   }
+   
    /**
     * Return the field's name, prepended by "maxof".
     * @see simpledb.materialize.AggregationFn#fieldName()
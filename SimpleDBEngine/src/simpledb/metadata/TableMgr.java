@@ -9,6 +9,12 @@ import simpledb.record.*;
  * There are methods to create a table, save the metadata
  * in the catalog, and obtain the metadata of a
  * previously-created table.
+ * <p>
+ * Each tblcat record holds the table's {@link RecordFormat}
+ * as the int field "format". A tblcat created before the
+ * field was added cannot be read; see
+ * {@link simpledb.server.SimpleDB} for how such a database
+ * is rejected.
  * @author Edward Sciore
  */
 class TableMgr {
@@ -27,6 +33,7 @@ class TableMgr {
       Schema tcatSchema = new Schema();
       tcatSchema.addStringField("tblname", MAX_NAME);
       tcatSchema.addIntField("slotsize");
+      tcatSchema.addIntField("format");
       tcatLayout = new Layout(tcatSchema);
 
       Schema fcatSchema = new Schema();
@@ -44,18 +51,32 @@ class TableMgr {
    }
 
    /**
-    * Create a new table having the specified name and schema.
+    * Create a new table having the specified name and schema,
+    * whose records have a fixed size.
     * @param tblname the name of the new table
     * @param sch the table's schema
     * @param tx the transaction creating the table
     */
    public void createTable(String tblname, Schema sch, Transaction tx) {
-      Layout layout = new Layout(sch);
+      createTable(tblname, sch, RecordFormat.FIXED, tx);
+   }
+
+   /**
+    * Create a new table having the specified name, schema
+    * and record format.
+    * @param tblname the name of the new table
+    * @param sch the table's schema
+    * @param format the format of the table's blocks
+    * @param tx the transaction creating the table
+    */
+   public void createTable(String tblname, Schema sch, RecordFormat format, Transaction tx) {
+      Layout layout = new Layout(sch, format);
       // insert one record into tblcat
       TableScan tcat = new TableScan(tx, "tblcat", tcatLayout);
       tcat.insert();
       tcat.setString("tblname", tblname);
       tcat.setInt("slotsize", layout.slotSize());
+      tcat.setInt("format", format.ordinal());
       tcat.close();
 
       // insert a record into fldcat for each field
@@ -80,10 +101,12 @@ class TableMgr {
     */
    public Layout getLayout(String tblname, Transaction tx) {
       int size = -1;
+      int format = RecordFormat.FIXED.ordinal();
     TableScan tcat = new TableScan(tx, "tblcat", tcatLayout);
       while(tcat.next())
          if(tcat.getString("tblname").equals(tblname)) {
             size = tcat.getInt("slotsize");
+            format = tcat.getInt("format");
             break;
          }
       tcat.close();
@@ -101,6 +124,6 @@ class TableMgr {
             sch.addField(fldname, fldtype, fldlen);
          }
       fcat.close();
-      return new Layout(sch, offsets, size);
+      return new Layout(sch, offsets, size, RecordFormat.values()[format]);
    }
 }
\ No newline at end of file
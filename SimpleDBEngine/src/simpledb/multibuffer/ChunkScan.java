@@ -35,7 +35,7 @@ public class ChunkScan implements Scan {
       this.endbnum   = endbnum;
       for (int i=startbnum; i<=endbnum; i++) {
          BlockId blk = new BlockId(filename, i);
-         buffs.add(new RecordPage(tx, blk, layout));
+         buffs.add(RecordPage.open(tx, blk, layout));
       }
       moveToBlock(startbnum);
    }
@@ -1,5 +1,6 @@
 package simpledb.parse;
 
+import simpledb.record.RecordFormat;
 import simpledb.record.Schema;
 
 /**
@@ -9,13 +10,23 @@ import simpledb.record.Schema;
 public class CreateTableData {
    private String tblname;
    private Schema sch;
+   private RecordFormat format;
    
    /**
-    * Saves the table name and schema.
+    * Saves the table name and schema of a table
+    * whose records have a fixed size.
     */
    public CreateTableData(String tblname, Schema sch) {
+      this(tblname, sch, RecordFormat.FIXED);
+   }
+   
+   /**
+    * Saves the table name, schema and record format.
+    */
+   public CreateTableData(String tblname, Schema sch, RecordFormat format) {
       this.tblname = tblname;
       this.sch = sch;
+      this.format = format;
    }
    
    /**
@@ -33,5 +44,13 @@ public class CreateTableData {
    public Schema newSchema() {
       return sch;
    }
+   
+   /**
+    * Returns the record format of the new table.
+    * @return the format of the table's blocks
+    */
+   public RecordFormat format() {
+      return format;
+   }
 }
 
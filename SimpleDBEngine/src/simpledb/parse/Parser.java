@@ -219,7 +219,18 @@ public class Parser {
 		lex.eatDelim('(');
 		Schema sch = fieldDefs();
 		lex.eatDelim(')');
-		return new CreateTableData(tblname, sch);
+		RecordFormat format = RecordFormat.FIXED;
+		if (lex.matchId()) {
+			// the format is an ordinary word, so "slotted" and "pax" remain usable as names
+			String word = lex.eatId();
+			if (word.equals("slotted"))
+				format = RecordFormat.SLOTTED;
+			else if (word.equals("pax"))
+				format = RecordFormat.PAX;
+			else
+				throw new BadSyntaxException();
+		}
+		return new CreateTableData(tblname, sch, format);
 	}
 
 	private Schema fieldDefs() {
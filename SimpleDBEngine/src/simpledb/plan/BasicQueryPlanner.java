@@ -19,7 +19,8 @@ public class BasicQueryPlanner implements QueryPlanner {
    /**
     * Creates a query plan as follows.  It first takes
     * the product of all tables and views; it then selects on the predicate;
-    * and finally it projects on the field list. 
+    * and finally it projects on the field list. Since every
+    * table is scanned in full, each one is locked as a whole.
     */
    public Plan createPlan(QueryData data, Transaction tx) {
       //Step 1: Create a plan for each mentioned table or view.
@@ -32,7 +33,7 @@ public class BasicQueryPlanner implements QueryPlanner {
             plans.add(createPlan(viewdata, tx));
          }
          else
-            plans.add(new TablePlan(tx, tblname, mdm));
+            plans.add(new TablePlan(tx, tblname, mdm, true));
       }
       
       //Step 2: Create the product of all table plans
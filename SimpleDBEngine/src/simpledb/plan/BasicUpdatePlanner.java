@@ -8,6 +8,9 @@ import simpledb.metadata.MetadataMgr;
 
 /**
  * The basic planner for SQL update statements.
+ * Deletions and modifications scan the entire table,
+ * so they lock the table as a whole; the blocks they
+ * change are then XLocked under a SIX lock on the table.
  * @author sciore
  */
 public class BasicUpdatePlanner implements UpdatePlanner {
@@ -18,7 +21,7 @@ public class BasicUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeDelete(DeleteData data, Transaction tx) {
-      Plan p = new TablePlan(tx, data.tableName(), mdm);
+      Plan p = new TablePlan(tx, data.tableName(), mdm, true);
       p = new SelectPlan(p, data.pred());
       UpdateScan us = (UpdateScan) p.open();
       int count = 0;
@@ -31,7 +34,7 @@ public class BasicUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeModify(ModifyData data, Transaction tx) {
-      Plan p = new TablePlan(tx, data.tableName(), mdm);
+      Plan p = new TablePlan(tx, data.tableName(), mdm, true);
       p = new SelectPlan(p, data.pred());
       UpdateScan us = (UpdateScan) p.open();
       int count = 0;
@@ -58,7 +61,7 @@ public class BasicUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeCreateTable(CreateTableData data, Transaction tx) {
-      mdm.createTable(data.tableName(), data.newSchema(), tx);
+      mdm.createTable(data.tableName(), data.newSchema(), data.format(), tx);
       return 0;
    }
    
@@ -1,5 +1,8 @@
 package simpledb.plan;
 
+import java.util.Collection;
+import simpledb.query.BatchScan;
+import simpledb.query.RowToBatchScan;
 import simpledb.query.Scan;
 import simpledb.record.*;
 
@@ -18,6 +21,28 @@ public interface Plan {
     */
    public Scan   open();
    
+   /**
+    * Opens a batch scan corresponding to this plan,
+    * which returns the records in batches of column vectors.
+    * @return a batch scan
+    */
+   default BatchScan openBatch() {
+      return openBatch(schema().fields());
+   }
+   
+   /**
+    * Opens a batch scan corresponding to this plan,
+    * whose batches only need to hold the specified fields.
+    * A plan can then avoid reading the other fields.
+    * By default, the batches hold every field, and are
+    * filled from the scan returned by open().
+    * @param fields the fields that will be read
+    * @return a batch scan
+    */
+   default BatchScan openBatch(Collection<String> fields) {
+      return new RowToBatchScan(open(), schema());
+   }
+   
    /**
     * Returns an estimate of the number of block accesses
     * that will occur when the scan is read to completion.
@@ -25,6 +50,19 @@ public interface Plan {
     */
    public int    blocksAccessed();
    
+   /**
+    * Returns an estimate of the number of block accesses
+    * that will occur when only the specified fields
+    * are read from the scan, as by a batch scan opened
+    * with {@link #openBatch(Collection)}.
+    * By default, this is the same as blocksAccessed().
+    * @param fields the fields that will be read
+    * @return the estimated number of block accesses
+    */
+   default int blocksAccessed(Collection<String> fields) {
+      return blocksAccessed();
+   }
+   
    /**
     * Returns an estimate of the number of records
     * in the query's output table.
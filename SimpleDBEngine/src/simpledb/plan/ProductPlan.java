@@ -1,5 +1,8 @@
 package simpledb.plan;
 
+import java.util.*;
+import simpledb.query.BatchProductScan;
+import simpledb.query.BatchScan;
 import simpledb.query.ProductScan;
 import simpledb.query.Scan;
 import simpledb.record.Schema;
@@ -35,6 +38,16 @@ public class ProductPlan implements Plan {
       return new ProductScan(s1, s2);
    }
    
+   /**
+    * Creates a batch product scan for this query.
+    * Each subquery provides the needed fields it has.
+    * @see simpledb.plan.Plan#openBatch(java.util.Collection)
+    */
+   public BatchScan openBatch(Collection<String> fields) {
+      List<List<String>> split = split(fields);
+      return new BatchProductScan(p1.openBatch(split.get(0)), p2.openBatch(split.get(1)));
+   }
+   
    /**
     * Estimates the number of block accesses in the product.
     * The formula is:
@@ -45,6 +58,19 @@ public class ProductPlan implements Plan {
       return p1.blocksAccessed() + (p1.recordsOutput() * p2.blocksAccessed());
    }
    
+   /**
+    * Estimates the number of block accesses in the product
+    * when only the specified fields are read, using the same
+    * formula with the estimates of the subqueries for the
+    * fields that each provides.
+    * @see simpledb.plan.Plan#blocksAccessed(java.util.Collection)
+    */
+   public int blocksAccessed(Collection<String> fields) {
+      List<List<String>> split = split(fields);
+      return p1.blocksAccessed(split.get(0))
+            + (p1.recordsOutput() * p2.blocksAccessed(split.get(1)));
+   }
+   
    /**
     * Estimates the number of output records in the product.
     * The formula is:
@@ -76,4 +102,21 @@ public class ProductPlan implements Plan {
    public Schema schema() {
       return schema;
    }
+   
+   /**
+    * Splits the specified fields into those read from
+    * the left-hand subquery and those read from the
+    * right-hand one. A field that both have is read from
+    * the left-hand subquery.
+    */
+   private List<List<String>> split(Collection<String> fields) {
+      List<String> fields1 = new ArrayList<>(), fields2 = new ArrayList<>();
+      for (String fldname : fields) {
+         if (p1.schema().hasField(fldname))
+            fields1.add(fldname);
+         else if (p2.schema().hasField(fldname))
+            fields2.add(fldname);
+      }
+      return Arrays.asList(fields1, fields2);
+   }
 }
@@ -1,6 +1,6 @@
 package simpledb.plan;
 
-import java.util.List;
+import java.util.*;
 import simpledb.record.Schema;
 import simpledb.query.*;
 
@@ -33,13 +33,33 @@ public class ProjectPlan implements Plan {
       return new ProjectScan(s, schema.fields());
    }
 
+   /**
+    * Creates a batch project scan for this query,
+    * keeping only the projected fields that are needed.
+    * @see simpledb.plan.Plan#openBatch(java.util.Collection)
+    */
+   public BatchScan openBatch(Collection<String> fields) {
+      List<String> kept = kept(fields);
+      return new BatchProjectScan(p.openBatch(kept), kept);
+   }
+
    /**
     * Estimates the number of block accesses in the projection,
-    * which is the same as in the underlying query.
+    * which is the same as in the underlying query
+    * when only the projected fields are read from it.
     * @see simpledb.plan.Plan#blocksAccessed()
     */
    public int blocksAccessed() {
-      return p.blocksAccessed();
+      return p.blocksAccessed(schema.fields());
+   }
+   
+   /**
+    * Estimates the number of block accesses in the projection
+    * when only the specified fields are read.
+    * @see simpledb.plan.Plan#blocksAccessed(java.util.Collection)
+    */
+   public int blocksAccessed(Collection<String> fields) {
+      return p.blocksAccessed(kept(fields));
    }
 
    /**
@@ -69,4 +89,15 @@ public class ProjectPlan implements Plan {
    public Schema schema() {
       return schema;
    }
+   
+   /**
+    * Returns the projected fields that are among the specified ones.
+    */
+   private List<String> kept(Collection<String> fields) {
+      List<String> kept = new ArrayList<>();
+      for (String fldname : schema.fields())
+         if (fields.contains(fldname))
+            kept.add(fldname);
+      return kept;
+   }
 }
@@ -1,5 +1,8 @@
 package simpledb.plan;
 
+import java.util.*;
+import simpledb.query.BatchScan;
+import simpledb.query.BatchSelectScan;
 import simpledb.query.Predicate;
 import simpledb.query.Scan;
 import simpledb.query.SelectScan;
@@ -33,6 +36,18 @@ public class SelectPlan implements Plan {
       return new SelectScan(s, pred);
    }
    
+   /**
+    * Creates a batch select scan for this query.
+    * The underlying query also provides the fields
+    * of the predicate.
+    * @see simpledb.plan.Plan#openBatch(java.util.Collection)
+    */
+   public BatchScan openBatch(Collection<String> fields) {
+      Set<String> needed = new HashSet<>(fields);
+      needed.addAll(pred.fields());
+      return new BatchSelectScan(p.openBatch(needed), pred);
+   }
+   
    /**
     * Estimates the number of block accesses in the selection,
     * which is the same as in the underlying query.
@@ -42,6 +57,18 @@ public class SelectPlan implements Plan {
       return p.blocksAccessed();
    }
    
+   /**
+    * Estimates the number of block accesses in the selection
+    * when only the specified fields are read, which also
+    * counts the fields of the predicate.
+    * @see simpledb.plan.Plan#blocksAccessed(java.util.Collection)
+    */
+   public int blocksAccessed(Collection<String> fields) {
+      Set<String> needed = new HashSet<>(fields);
+      needed.addAll(pred.fields());
+      return p.blocksAccessed(needed);
+   }
+   
    /**
     * Estimates the number of output records in the selection,
     * which is determined by the 
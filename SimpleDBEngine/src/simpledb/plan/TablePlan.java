@@ -2,6 +2,8 @@ package simpledb.plan;
 
 import simpledb.tx.Transaction;
 import simpledb.metadata.*;
+import java.util.Collection;
+import simpledb.query.BatchScan;
 import simpledb.query.Scan;
 import simpledb.record.*;
 
@@ -13,6 +15,7 @@ public class TablePlan implements Plan {
    private Transaction tx;
    private Layout layout;
    private StatInfo si;
+   private boolean locktable;
    
    /**
     * Creates a leaf node in the query tree corresponding
@@ -21,8 +24,21 @@ public class TablePlan implements Plan {
     * @param tx the calling transaction
     */
    public TablePlan(Transaction tx, String tblname, MetadataMgr md) {
+      this(tx, tblname, md, false);
+   }
+   
+   /**
+    * Creates a leaf node in the query tree corresponding
+    * to the specified table. If the plan's scans will read
+    * the whole table, they can lock it with a single lock.
+    * @param tblname the name of the table
+    * @param tx the calling transaction
+    * @param locktable whether the scans lock the whole table
+    */
+   public TablePlan(Transaction tx, String tblname, MetadataMgr md, boolean locktable) {
       this.tblname = tblname;
       this.tx = tx;
+      this.locktable = locktable;
       layout = md.getLayout(tblname, tx);
       si = md.getStatInfo(tblname, layout, tx);
    }
@@ -32,7 +48,16 @@ public class TablePlan implements Plan {
     * @see simpledb.plan.Plan#open()
     */
    public Scan open() {
-      return new TableScan(tx, tblname, layout);
+      return new TableScan(tx, tblname, layout, locktable);
+   }
+   
+   /**
+    * Creates a batch scan of the table, which only
+    * reads the specified fields.
+    * @see simpledb.plan.Plan#openBatch(java.util.Collection)
+    */
+   public BatchScan openBatch(Collection<String> fields) {
+      return new BatchTableScan(tx, tblname, layout, locktable, fields);
    }
    
    /**
@@ -44,6 +69,25 @@ public class TablePlan implements Plan {
       return si.blocksAccessed();
    }
    
+   /**
+    * Estimates the number of block accesses when only the
+    * specified fields are read.
+    * A scan of a PAX table reads just the headers and the
+    * minipages of those fields, so the estimate is the share
+    * of the table's blocks that they fill, rounded up.
+    * For the other formats, every field is read with its record.
+    * @see simpledb.plan.Plan#blocksAccessed(java.util.Collection)
+    */
+   public int blocksAccessed(Collection<String> fields) {
+      if (layout.format() != RecordFormat.PAX)
+         return blocksAccessed();
+      int bytes = Integer.BYTES;
+      for (String fldname : layout.schema().fields())
+         if (fields.contains(fldname))
+            bytes += layout.lengthInBytes(fldname);
+      return (int) Math.ceil((double) blocksAccessed() * bytes / layout.slotSize());
+   }
+   
    /**
     * Estimates the number of records in the table,
     * which is obtainable from the statistics manager.
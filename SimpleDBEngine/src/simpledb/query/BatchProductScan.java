@@ -0,0 +1,123 @@
+package simpledb.query;
+
+import java.util.*;
+import simpledb.record.Schema;
+
+/**
+ * The batch scan class corresponding to the <i>product</i>
+ * relational algebra operator.
+ * For each batch of the LHS scan, the RHS scan is read
+ * from the start, and each of its batches is combined with
+ * the LHS batch: every selected LHS row is paired with every
+ * selected RHS row. The rows of the pairs are collected first,
+ * and the output batch is then filled one column at a time.
+ * The records come out in a different order than from
+ * {@link ProductScan}, which reads the RHS scan once per LHS record.
+ */
+public class BatchProductScan implements BatchScan {
+   private BatchScan s1, s2;
+   private Schema sch = new Schema();
+   private List<String> fields1, fields2 = new ArrayList<>();
+   private ColumnBatch left, right, out;
+   private int[] lrows, rrows;
+   private int li, ri;
+
+   /**
+    * Create a product scan having the two underlying batch scans.
+    * A field that both scans have is taken from the LHS scan.
+    * @param s1 the LHS scan
+    * @param s2 the RHS scan
+    */
+   public BatchProductScan(BatchScan s1, BatchScan s2) {
+      this.s1 = s1;
+      this.s2 = s2;
+      sch.addAll(s2.schema());
+      sch.addAll(s1.schema());
+      fields1 = s1.schema().fields();
+      for (String fldname : s2.schema().fields())
+         if (!s1.schema().hasField(fldname))
+            fields2.add(fldname);
+      out = new ColumnBatch(sch);
+      lrows = new int[out.capacity()];
+      rrows = new int[out.capacity()];
+      beforeFirst();
+   }
+
+   /**
+    * Position both scans at their first batch.
+    * If either scan is empty, so is the product.
+    * @see simpledb.query.BatchScan#beforeFirst()
+    */
+   public void beforeFirst() {
+      s1.beforeFirst();
+      s2.beforeFirst();
+      left = right = null;
+      li = ri = 0;
+      if (s1.nextBatch() && s2.nextBatch()) {
+         left = s1.batch();
+         right = s2.batch();
+      }
+   }
+
+   /**
+    * Fill the output batch with the next pairs of the
+    * current LHS and RHS batches. Once they have no pairs
+    * left, move to the next RHS batch, or else to the
+    * next LHS batch and the first RHS batch.
+    * @see simpledb.query.BatchScan#nextBatch()
+    */
+   public boolean nextBatch() {
+      while (left != null) {
+         if (li < left.size()) {
+            int count = 0;
+            while (count < lrows.length && li < left.size()) {
+               lrows[count] = left.row(li);
+               rrows[count] = right.row(ri);
+               count++;
+               if (++ri == right.size()) {
+                  ri = 0;
+                  li++;
+               }
+            }
+            for (String fldname : fields1)
+               out.gather(left, fldname, lrows, count);
+            for (String fldname : fields2)
+               out.gather(right, fldname, rrows, count);
+            out.setRowCount(count);
+            return true;
+         }
+         li = 0;
+         if (!s2.nextBatch()) {
+            if (!s1.nextBatch()) {
+               left = null;
+               return false;
+            }
+            left = s1.batch();
+            s2.beforeFirst();
+            if (!s2.nextBatch()) {
+               left = null;
+               return false;
+            }
+         }
+         right = s2.batch();
+      }
+      return false;
+   }
+
+   public ColumnBatch batch() {
+      return out;
+   }
+
+   public Schema schema() {
+      return sch;
+   }
+
+   /**
+    * Close both underlying scans.
+    * @see simpledb.query.BatchScan#close()
+    */
+   public void close() {
+      s1.close();
+      s2.close();
+   }
+}
@@ -0,0 +1,50 @@
+package simpledb.query;
+
+import java.util.List;
+import simpledb.record.Schema;
+
+/**
+ * The batch scan class corresponding to the <i>project</i>
+ * relational algebra operator.
+ * The batches of the underlying scan are returned as they are;
+ * only the schema of the scan leaves out the other fields.
+ */
+public class BatchProjectScan implements BatchScan {
+   private BatchScan s;
+   private Schema sch = new Schema();
+
+   /**
+    * Create a project scan having the specified
+    * underlying batch scan and field list.
+    * @param s the underlying scan
+    * @param fieldlist the list of field names
+    */
+   public BatchProjectScan(BatchScan s, List<String> fieldlist) {
+      this.s = s;
+      for (String fldname : fieldlist) {
+         if (!s.schema().hasField(fldname))
+            throw new RuntimeException("field " + fldname + " not found.");
+         sch.add(fldname, s.schema());
+      }
+   }
+
+   public void beforeFirst() {
+      s.beforeFirst();
+   }
+
+   public boolean nextBatch() {
+      return s.nextBatch();
+   }
+
+   public ColumnBatch batch() {
+      return s.batch();
+   }
+
+   public Schema schema() {
+      return sch;
+   }
+
+   public void close() {
+      s.close();
+   }
+}
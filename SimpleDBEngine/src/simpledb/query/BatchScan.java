@@ -0,0 +1,47 @@
+package simpledb.query;
+
+import simpledb.record.Schema;
+
+/**
+ * The interface implemented by the scans that return their
+ * records a batch at a time, as a {@link ColumnBatch}, instead
+ * of one record at a time as a {@link Scan} does.
+ * An operator then works on a whole vector of values per call,
+ * instead of making a call and creating a Constant for each value.
+ * {@link RowToBatchScan} and {@link BatchToRowScan} convert
+ * between the two kinds of scan.
+ */
+public interface BatchScan {
+
+   /**
+    * Position the scan before its first batch.
+    */
+   public void beforeFirst();
+
+   /**
+    * Move the scan to the next batch of records.
+    * A batch always has at least one selected row.
+    * @return false if there are no more records
+    */
+   public boolean nextBatch();
+
+   /**
+    * Return the current batch.
+    * The batch may be reused, and is only valid until
+    * the next call to nextBatch() or beforeFirst().
+    * The caller may narrow its selection vector.
+    * @return the current batch
+    */
+   public ColumnBatch batch();
+
+   /**
+    * Return the schema of the scan's records.
+    * @return the schema
+    */
+   public Schema schema();
+
+   /**
+    * Close the scan and its subscans, if any.
+    */
+   public void close();
+}
@@ -0,0 +1,106 @@
+package simpledb.query;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.record.*;
+
+public class BatchScanTest {
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("batchscantest");
+      Transaction tx = db.newTx();
+
+      Schema sch1 = new Schema();
+      sch1.addIntField("A");
+      sch1.addStringField("B", 9);
+      Layout layout1 = new Layout(sch1);
+      UpdateScan us1 = new TableScan(tx, "T1", layout1);
+      int n = 200;
+      System.out.println("Inserting " + n + " records into T1.");
+      for (int i=0; i<n; i++) {
+         us1.insert();
+         us1.setInt("A", i % 50);
+         us1.setString("B", "bbb"+i);
+      }
+      us1.close();
+
+      Schema sch2 = new Schema();
+      sch2.addIntField("C");
+      sch2.addStringField("D", 9);
+      // T2 is stored column by column
+      Layout layout2 = new Layout(sch2, RecordFormat.PAX);
+      UpdateScan us2 = new TableScan(tx, "T2", layout2);
+      System.out.println("Inserting " + n + " records into T2.");
+      for (int i=0; i<n; i++) {
+         us2.insert();
+         us2.setInt("C", n-i-1);
+         us2.setString("D", "ddd"+(n-i-1));
+      }
+      us2.close();
+
+      // select B, D from T1, T2 where A = C and A < 5,
+      // read a batch at a time
+      BatchScan s1 = new BatchTableScan(tx, "T1", layout1, false, sch1.fields());
+      BatchScan s2 = new BatchTableScan(tx, "T2", layout2, false, sch2.fields());
+      BatchScan s3 = new BatchProductScan(s1, s2);
+      Predicate pred = new Predicate(new Term(new Expression("A"), new Expression("C")));
+      pred.conjoinWith(new Predicate(new Term(new Expression("A"), new Expression(new Constant(5)), Term.LT)));
+      System.out.println("The predicate is " + pred);
+      BatchScan s4 = new BatchSelectScan(s3, pred);
+      BatchScan s5 = new BatchProjectScan(s4, Arrays.asList("B", "D"));
+      int count = 0;
+      while (s5.nextBatch()) {
+         ColumnBatch b = s5.batch();
+         String[] bvals = b.strings("B"), dvals = b.strings("D");
+         for (int i=0; i<b.size(); i++) {
+            int row = b.row(i);
+            System.out.println(bvals[row] + " " + dvals[row]);
+            count++;
+         }
+      }
+      s5.close();
+      System.out.println(count + " records were read in batches.");
+
+      // the same query, read through the row adapter
+      s1 = new BatchTableScan(tx, "T1", layout1, false, sch1.fields());
+      s2 = new BatchTableScan(tx, "T2", layout2, false, sch2.fields());
+      Scan s6 = new BatchToRowScan(new BatchProjectScan(new BatchSelectScan(new BatchProductScan(s1, s2), pred), Arrays.asList("B", "D")));
+      count = 0;
+      while (s6.next())
+         count++;
+      s6.close();
+      System.out.println(count + " records were read one at a time.");
+
+      // terms checked row by row skip the null values
+      Schema sch3 = new Schema();
+      sch3.addIntField("E");
+      sch3.addStringField("F", 9);
+      Layout layout3 = new Layout(sch3);
+      UpdateScan us3 = new TableScan(tx, "T3", layout3);
+      while (us3.next())
+         us3.delete();
+      for (int i=0; i<10; i++) {
+         us3.insert();
+         us3.setInt("E", i);
+         us3.setString("F", "f"+i);
+         if (i % 2 == 0)
+            us3.setVal("E", new Constant());
+         if (i % 3 == 0)
+            us3.setVal("F", new Constant());
+      }
+      us3.close();
+      Term[] terms = {
+         new Term(new Expression("E"), new Expression("E")),
+         new Term(new Expression("F"), new Expression("F")) };
+      String[] expected = { "5", "6" };
+      for (int t=0; t<terms.length; t++) {
+         BatchScan s7 = new BatchSelectScan(new BatchTableScan(tx, "T3", layout3, false, sch3.fields()), new Predicate(terms[t]));
+         count = 0;
+         while (s7.nextBatch())
+            count += s7.batch().size();
+         s7.close();
+         System.out.println("Rows where " + terms[t] + " (should be " + expected[t] + "): " + count);
+      }
+      tx.commit();
+   }
+}
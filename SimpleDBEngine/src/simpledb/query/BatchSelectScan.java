@@ -0,0 +1,51 @@
+package simpledb.query;
+
+import simpledb.record.Schema;
+
+/**
+ * The batch scan class corresponding to the <i>select</i>
+ * relational algebra operator.
+ * The predicate narrows the selection vector of each
+ * batch of the underlying scan; batches left with no
+ * selected rows are skipped.
+ */
+public class BatchSelectScan implements BatchScan {
+   private BatchScan s;
+   private Predicate pred;
+
+   /**
+    * Create a select scan having the specified underlying
+    * batch scan and predicate.
+    * @param s the scan of the underlying query
+    * @param pred the selection predicate
+    */
+   public BatchSelectScan(BatchScan s, Predicate pred) {
+      this.s = s;
+      this.pred = pred;
+   }
+
+   public void beforeFirst() {
+      s.beforeFirst();
+   }
+
+   public boolean nextBatch() {
+      while (s.nextBatch()) {
+         pred.select(s.batch());
+         if (s.batch().size() > 0)
+            return true;
+      }
+      return false;
+   }
+
+   public ColumnBatch batch() {
+      return s.batch();
+   }
+
+   public Schema schema() {
+      return s.schema();
+   }
+
+   public void close() {
+      s.close();
+   }
+}
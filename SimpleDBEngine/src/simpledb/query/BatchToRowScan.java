@@ -0,0 +1,67 @@
+package simpledb.query;
+
+/**
+ * A row scan that returns the selected rows of the
+ * batches of a batch scan one at a time, so that the
+ * result of a batch scan can be read by the code that
+ * expects a {@link Scan}.
+ */
+public class BatchToRowScan implements Scan {
+   private BatchScan s;
+   private ColumnBatch batch;
+   private int pos, row;
+
+   /**
+    * Create a row scan over the specified batch scan.
+    * @param s the batch scan
+    */
+   public BatchToRowScan(BatchScan s) {
+      this.s = s;
+      beforeFirst();
+   }
+
+   public void beforeFirst() {
+      s.beforeFirst();
+      batch = null;
+      pos = -1;
+   }
+
+   /**
+    * Move to the next selected row of the current batch,
+    * moving to the next batch when the current one is used up.
+    * @see simpledb.query.Scan#next()
+    */
+   public boolean next() {
+      pos++;
+      while (batch == null || pos >= batch.size()) {
+         if (!s.nextBatch()) {
+            batch = null;
+            return false;
+         }
+         batch = s.batch();
+         pos = 0;
+      }
+      row = batch.row(pos);
+      return true;
+   }
+
+   public int getInt(String fldname) {
+      return batch.getInt(fldname, row);
+   }
+
+   public String getString(String fldname) {
+      return batch.getString(fldname, row);
+   }
+
+   public Constant getVal(String fldname) {
+      return batch.getVal(fldname, row);
+   }
+
+   public boolean hasField(String fldname) {
+      return s.schema().hasField(fldname);
+   }
+
+   public void close() {
+      s.close();
+   }
+}
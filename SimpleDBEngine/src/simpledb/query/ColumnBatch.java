@@ -0,0 +1,276 @@
+package simpledb.query;
+
+import static java.sql.Types.INTEGER;
+import java.util.*;
+import simpledb.record.Schema;
+
+/**
+ * A batch of records, stored column by column.
+ * Each field of the batch's schema has a vector of values,
+ * an int[] for an integer field and a String[] for a string field,
+ * and a vector of null flags.
+ * The batch also has a selection vector, which lists the rows
+ * that are part of the output, in increasing order.
+ * An operator such as <i>select</i> removes rows by shortening
+ * the selection vector, without moving any values.
+ */
+public class ColumnBatch {
+   public static final int DEFAULT_CAPACITY = 1024;
+   private Schema sch;
+   private int capacity;
+   private Map<String,Integer> columns = new HashMap<>();
+   private Object[] vectors;
+   private boolean[][] nulls;
+   private int[] sel;
+   private int rows = 0, size = 0;
+
+   /**
+    * Create an empty batch of records having the specified
+    * schema, with room for the default number of rows.
+    * @param sch the schema of the records
+    */
+   public ColumnBatch(Schema sch) {
+      this(sch, DEFAULT_CAPACITY);
+   }
+
+   /**
+    * Create an empty batch of records having the specified
+    * schema, with room for the specified number of rows.
+    * @param sch the schema of the records
+    * @param capacity the maximum number of rows
+    */
+   public ColumnBatch(Schema sch, int capacity) {
+      this.sch = sch;
+      this.capacity = capacity;
+      List<String> fields = sch.fields();
+      vectors = new Object[fields.size()];
+      nulls = new boolean[fields.size()][capacity];
+      for (int i=0; i<fields.size(); i++) {
+         String fldname = fields.get(i);
+         columns.put(fldname, i);
+         if (sch.type(fldname) == INTEGER)
+            vectors[i] = new int[capacity];
+         else
+            vectors[i] = new String[capacity];
+      }
+      sel = new int[capacity];
+   }
+
+   /**
+    * Return the schema of the batch's records.
+    * @return the schema
+    */
+   public Schema schema() {
+      return sch;
+   }
+
+   /**
+    * Return true if the batch has the specified field.
+    * @param fldname the name of the field
+    * @return true if the batch has that field
+    */
+   public boolean hasField(String fldname) {
+      return columns.containsKey(fldname);
+   }
+
+   /**
+    * Remove all of the rows from the batch.
+    */
+   public void clear() {
+      rows = size = 0;
+   }
+
+   /**
+    * Add a row to the end of the batch, and select it.
+    * The values of the new row are left as they are.
+    * @return the index of the new row
+    */
+   public int addRow() {
+      sel[size++] = rows;
+      return rows++;
+   }
+
+   /**
+    * Make the batch hold the specified number of rows,
+    * all of them selected.
+    * @param count the number of rows
+    */
+   public void setRowCount(int count) {
+      for (int i=0; i<count; i++)
+         sel[i] = i;
+      rows = size = count;
+   }
+
+   /**
+    * Return true if no more rows can be added to the batch.
+    * @return true if the batch is full
+    */
+   public boolean isFull() {
+      return rows == capacity;
+   }
+
+   /**
+    * Return the maximum number of rows in the batch.
+    * @return the capacity of the batch
+    */
+   public int capacity() {
+      return capacity;
+   }
+
+   /**
+    * Return the number of selected rows.
+    * @return the number of selected rows
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Return the index of the specified selected row.
+    * @param i a position in the selection vector
+    * @return the index of the row selected at that position
+    */
+   public int row(int i) {
+      return sel[i];
+   }
+
+   /**
+    * Return the selection vector, whose first size() entries
+    * are the selected rows.
+    * The caller may remove rows by moving the remaining
+    * ones to the front of the vector and calling select().
+    * @return the selection vector
+    */
+   public int[] selection() {
+      return sel;
+   }
+
+   /**
+    * Keep only the first rows of the selection vector.
+    * @param count the number of rows that remain selected
+    */
+   public void select(int count) {
+      size = count;
+   }
+
+   /**
+    * Return the vector of values of the specified integer field.
+    * @param fldname the name of the field
+    * @return the field's values, indexed by row
+    */
+   public int[] ints(String fldname) {
+      return (int[]) vectors[column(fldname)];
+   }
+
+   /**
+    * Return the vector of values of the specified string field.
+    * @param fldname the name of the field
+    * @return the field's values, indexed by row
+    */
+   public String[] strings(String fldname) {
+      return (String[]) vectors[column(fldname)];
+   }
+
+   /**
+    * Return the vector of null flags of the specified field.
+    * @param fldname the name of the field
+    * @return the field's null flags, indexed by row
+    */
+   public boolean[] nulls(String fldname) {
+      return nulls[column(fldname)];
+   }
+
+   public int getInt(String fldname, int row) {
+      return ints(fldname)[row];
+   }
+
+   public String getString(String fldname, int row) {
+      return strings(fldname)[row];
+   }
+
+   public boolean isNull(String fldname, int row) {
+      return nulls(fldname)[row];
+   }
+
+   /**
+    * Return the value of the specified field in the
+    * specified row, expressed as a Constant.
+    * @param fldname the name of the field
+    * @param row the index of the row
+    * @return the value of that field, expressed as a Constant
+    */
+   public Constant getVal(String fldname, int row) {
+      int col = column(fldname);
+      if (nulls[col][row])
+         return new Constant();
+      else if (vectors[col] instanceof int[])
+         return new Constant(((int[]) vectors[col])[row]);
+      else
+         return new Constant(((String[]) vectors[col])[row]);
+   }
+
+   public void setInt(String fldname, int row, int val) {
+      int col = column(fldname);
+      ((int[]) vectors[col])[row] = val;
+      nulls[col][row] = false;
+   }
+
+   public void setString(String fldname, int row, String val) {
+      int col = column(fldname);
+      ((String[]) vectors[col])[row] = val;
+      nulls[col][row] = false;
+   }
+
+   public void setNull(String fldname, int row) {
+      nulls[column(fldname)][row] = true;
+   }
+
+   /**
+    * Store the specified value in the specified field
+    * of the specified row.
+    * @param fldname the name of the field
+    * @param row the index of the row
+    * @param val the value, which may be null
+    */
+   public void setVal(String fldname, int row, Constant val) {
+      if (val.isNull())
+         setNull(fldname, row);
+      else if (sch.type(fldname) == INTEGER)
+         setInt(fldname, row, val.asInt());
+      else
+         setString(fldname, row, val.asString());
+   }
+
+   /**
+    * Copy the values of the specified field from the
+    * specified rows of another batch into the first
+    * rows of this batch.
+    * @param src the batch to copy from
+    * @param fldname the name of the field in both batches
+    * @param srcrows the rows of the other batch
+    * @param count the number of rows to copy
+    */
+   public void gather(ColumnBatch src, String fldname, int[] srcrows, int count) {
+      int col = column(fldname), srccol = src.column(fldname);
+      boolean[] srcnulls = src.nulls[srccol];
+      for (int i=0; i<count; i++)
+         nulls[col][i] = srcnulls[srcrows[i]];
+      if (vectors[col] instanceof int[]) {
+         int[] to = (int[]) vectors[col], from = (int[]) src.vectors[srccol];
+         for (int i=0; i<count; i++)
+            to[i] = from[srcrows[i]];
+      }
+      else {
+         String[] to = (String[]) vectors[col], from = (String[]) src.vectors[srccol];
+         for (int i=0; i<count; i++)
+            to[i] = from[srcrows[i]];
+      }
+   }
+
+   private int column(String fldname) {
+      Integer col = columns.get(fldname);
+      if (col == null)
+         throw new RuntimeException("field " + fldname + " not found.");
+      return col;
+   }
+}
@@ -29,6 +29,17 @@ public class Expression {
       return (val != null) ? val : s.getVal(fldname);
    }
    
+   /**
+    * Evaluate the expression with respect to the
+    * specified row of the specified batch.
+    * @param b the batch
+    * @param row the index of the row
+    * @return the value of the expression, as a Constant
+    */
+   public Constant evaluate(ColumnBatch b, int row) {
+      return (val != null) ? val : b.getVal(fldname, row);
+   }
+   
    /**
     * Return true if the expression is a field reference.
     * @return true if the expression denotes a field
@@ -48,6 +48,31 @@ public class Predicate {
       return true;
    }
 
+   /**
+    * Remove from the selection vector of the specified
+    * batch the rows that do not satisfy the predicate.
+    * Each term only looks at the rows left by the previous one.
+    * @param b the batch
+    */
+   public void select(ColumnBatch b) {
+      for (Term t : terms) {
+         if (b.size() == 0)
+            return;
+         t.select(b);
+      }
+   }
+
+   /**
+    * Return the fields that the predicate mentions.
+    * @return the names of the fields
+    */
+   public Set<String> fields() {
+      Set<String> result = new HashSet<>();
+      for (Term t : terms)
+         t.addFields(result);
+      return result;
+   }
+
    /** 
     * Calculate the extent to which selecting on the predicate 
     * reduces the number of records output by a query.
@@ -0,0 +1,66 @@
+package simpledb.query;
+
+import java.util.List;
+import simpledb.record.Schema;
+
+/**
+ * A batch scan that fills its batches from the records
+ * of a row scan, for the operators that have no batch
+ * implementation.
+ * Each value is read with getVal, since a row scan has
+ * no other way to tell that a value is null.
+ */
+public class RowToBatchScan implements BatchScan {
+   private Scan s;
+   private Schema sch;
+   private List<String> fields;
+   private ColumnBatch batch;
+   private boolean more = true;
+
+   /**
+    * Create a batch scan over the specified row scan.
+    * @param s the row scan
+    * @param sch the schema of the row scan's records
+    */
+   public RowToBatchScan(Scan s, Schema sch) {
+      this.s = s;
+      this.sch = sch;
+      fields = sch.fields();
+      batch = new ColumnBatch(sch);
+   }
+
+   public void beforeFirst() {
+      s.beforeFirst();
+      more = true;
+   }
+
+   /**
+    * Fill the batch with the next records of the row scan.
+    * The row scan is not moved past its end again
+    * once it has reached it.
+    * @see simpledb.query.BatchScan#nextBatch()
+    */
+   public boolean nextBatch() {
+      batch.clear();
+      if (!more)
+         return false;
+      while (!batch.isFull() && (more = s.next())) {
+         int row = batch.addRow();
+         for (String fldname : fields)
+            batch.setVal(fldname, row, s.getVal(fldname));
+      }
+      return batch.size() > 0;
+   }
+
+   public ColumnBatch batch() {
+      return batch;
+   }
+
+   public Schema schema() {
+      return sch;
+   }
+
+   public void close() {
+      s.close();
+   }
+}
@@ -1,5 +1,9 @@
 package simpledb.query;
 
+import static java.sql.Types.INTEGER;
+
+import java.util.Collection;
+
 import simpledb.plan.Plan;
 import simpledb.record.*;
 
@@ -47,8 +51,70 @@ public class Term {
 			return lhsval.isNull();
 		}
 
-		Constant rhsval = rhs.evaluate(s);
+		return compare(lhsval, rhs.evaluate(s));
+	}
 
+	/**
+	 * Remove from the selection vector of the specified batch the rows that do not
+	 * satisfy the term. A comparison of an integer field with an integer constant,
+	 * and the equality of a string field with a string constant, are checked
+	 * directly on the field's vector; any other term is evaluated row by row, as
+	 * {@link #isSatisfied(Scan)} does. A null value satisfies no comparison.
+	 * 
+	 * @param b the batch
+	 */
+	public void select(ColumnBatch b) {
+		int[] sel = b.selection();
+		int size = b.size();
+		int n = 0;
+		Expression field = (lhs.isFieldName() || rhs == null) ? lhs : rhs;
+		Expression other = (field == lhs) ? rhs : lhs;
+		Constant c = (other == null) ? null : other.asConstant();
+		int op = (field == lhs) ? operator : flipped(operator);
+		if (operator == ISNULL && lhs.isFieldName()) {
+			boolean[] nulls = b.nulls(lhs.asFieldName());
+			for (int i = 0; i < size; i++)
+				if (nulls[sel[i]])
+					sel[n++] = sel[i];
+		} else if (field.isFieldName() && c != null && !c.isNull() && c.asString() == null
+				&& b.schema().type(field.asFieldName()) == INTEGER) {
+			int[] vals = b.ints(field.asFieldName());
+			boolean[] nulls = b.nulls(field.asFieldName());
+			int k = c.asInt();
+			for (int i = 0; i < size; i++) {
+				int row = sel[i];
+				if (!nulls[row] && compare(vals[row], op, k))
+					sel[n++] = row;
+			}
+		} else if (field.isFieldName() && c != null && c.asString() != null && op == EQ
+				&& b.schema().type(field.asFieldName()) != INTEGER) {
+			String[] vals = b.strings(field.asFieldName());
+			boolean[] nulls = b.nulls(field.asFieldName());
+			String k = c.asString();
+			for (int i = 0; i < size; i++) {
+				int row = sel[i];
+				if (!nulls[row] && k.equals(vals[row]))
+					sel[n++] = row;
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				int row = sel[i];
+				Constant lhsval = lhs.evaluate(b, row);
+				boolean satisfied;
+				if (operator == ISNULL)
+					satisfied = lhsval.isNull();
+				else {
+					Constant rhsval = rhs.evaluate(b, row);
+					satisfied = !lhsval.isNull() && !rhsval.isNull() && compare(lhsval, rhsval);
+				}
+				if (satisfied)
+					sel[n++] = row;
+			}
+		}
+		b.select(n);
+	}
+
+	private boolean compare(Constant lhsval, Constant rhsval) {
 		switch (operator) {
 		case EQ:
 			return rhsval.equals(lhsval);
@@ -61,6 +127,38 @@ public class Term {
 		}
 	}
 
+	private static boolean compare(int val, int op, int k) {
+		switch (op) {
+		case EQ:
+			return val == k;
+		case LT:
+			return val < k;
+		case GT:
+			return val > k;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Return the operator that compares the expressions the other way round.
+	 */
+	private static int flipped(int operator) {
+		return (operator == LT) ? GT : (operator == GT) ? LT : operator;
+	}
+
+	/**
+	 * Add the fields that the term mentions to the specified collection.
+	 * 
+	 * @param fields the collection of field names
+	 */
+	public void addFields(Collection<String> fields) {
+		if (lhs.isFieldName())
+			fields.add(lhs.asFieldName());
+		if (rhs != null && rhs.isFieldName())
+			fields.add(rhs.asFieldName());
+	}
+
 	/**
 	 * Calculate the extent to which selecting on the term reduces the number of
 	 * records output by a query. For example if the reduction factor is 2, then the
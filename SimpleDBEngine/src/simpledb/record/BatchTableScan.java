@@ -0,0 +1,68 @@
+package simpledb.record;
+
+import java.util.Collection;
+
+import simpledb.query.BatchScan;
+import simpledb.query.ColumnBatch;
+import simpledb.tx.Transaction;
+
+/**
+ * A batch scan of a table. Each batch is filled by a {@link TableScan}, which
+ * does the locking and moves from block to block, and has the record page of
+ * each block read its records' values straight into the batch's vectors. Only
+ * the fields that the caller needs are read, which in a PAX table means that
+ * only their minipages are touched.
+ */
+public class BatchTableScan implements BatchScan {
+	private TableScan ts;
+	private Schema sch;
+	private ColumnBatch batch;
+	private boolean more = true;
+	private String[] fields;
+
+	/**
+	 * Create a batch scan of the specified fields of the specified table.
+	 * 
+	 * @param locktable whether to SLock the whole table
+	 * @param fldnames  the fields to read
+	 */
+	public BatchTableScan(Transaction tx, String tblname, Layout layout, boolean locktable,
+			Collection<String> fldnames) {
+		ts = new TableScan(tx, tblname, layout, locktable);
+		sch = new Schema();
+		for (String fldname : layout.schema().fields())
+			if (fldnames.contains(fldname))
+				sch.add(fldname, layout.schema());
+		batch = new ColumnBatch(sch);
+		fields = sch.fields().toArray(new String[0]);
+	}
+
+	public void beforeFirst() {
+		ts.beforeFirst();
+		more = true;
+	}
+
+	/**
+	 * Fill the batch with the next records of the table. The table scan is not
+	 * moved past its end again once it has reached it.
+	 */
+	public boolean nextBatch() {
+		batch.clear();
+		if (!more)
+			return false;
+		more = ts.readInto(batch, fields);
+		return batch.size() > 0;
+	}
+
+	public ColumnBatch batch() {
+		return batch;
+	}
+
+	public Schema schema() {
+		return sch;
+	}
+
+	public void close() {
+		ts.close();
+	}
+}
@@ -0,0 +1,419 @@
+package simpledb.record;
+
+import static java.sql.Types.INTEGER;
+
+import java.util.BitSet;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.query.ColumnBatch;
+import simpledb.tx.SlotUpdate;
+import simpledb.tx.Transaction;
+
+/**
+ * Store a record at a given location in a block, giving every record a slot of
+ * the same size, as laid out by the table's {@link Layout}. Each change to a
+ * record is logged once, as a slot record, instead of once per value. A newly
+ * inserted record is kept in memory until the caller moves on to another slot
+ * or calls {@link #finishInsert()}, and then written with all of its fields at
+ * once. The transaction is told of the started record, and writes it itself
+ * when another of its scans works on the block, and at commit.
+ * <p>
+ * Records are locked one at a time: reading a record SLocks it and changing it
+ * XLocks it, so transactions can work on different records of the same block
+ * at once. The headers are read without a lock while searching for a slot, and
+ * the slot's header is checked again once the slot is locked.
+ * <p>
+ * The block starts with an occupancy bitmap, which holds one bit per slot that
+ * is set while the slot is in use. The bit is part of each logged change to the
+ * slot, so it always agrees with the slot's header, and a search for a used or
+ * empty slot reads the bitmap in one piece instead of reading each header.
+ * <p>
+ * When the transaction can read the whole block without further locks, such as
+ * during a full scan that has SLocked the table, or when it is read-only, the
+ * record page reads the values straight from the page returned by
+ * {@link Transaction#pageForScan(BlockId)}, instead of locking each record and
+ * going through the transaction for each value.
+ * <p>
+ * A table in the {@link RecordFormat#PAX} format has the same slots, but stores
+ * them column by column: after the bitmap come the headers of all the slots,
+ * and then one minipage per field, which holds that field's value for every
+ * slot of the block. A field's minipage starts at the bitmap size plus the
+ * number of slots times the field's offset in the layout, so the minipages fill
+ * the same space as the slots of a row block. Only the positions of the values
+ * differ, so PAX records are logged and recovered like the others, and
+ * {@link #readInto(int, ColumnBatch, String[])} reads a field of many records
+ * from one contiguous minipage.
+ * 
+ * @author Edward Sciore
+ */
+public class FixedRecordPage implements RecordPage {
+	private Transaction tx;
+	private BlockId blk;
+	private Layout layout;
+	private Page page;
+	private SlotUpdate pending;
+	private int pendingslot = -1;
+	private int numslots, bitmapsize;
+	private boolean columnar;
+
+	public FixedRecordPage(Transaction tx, BlockId blk, Layout layout) {
+		this.tx = tx;
+		this.blk = blk;
+		this.layout = layout;
+		numslots = Math.max(0, tx.blockSize() / layout.slotSize());
+		while (numslots > 0 && bitmapSize(numslots) + numslots * layout.slotSize() > tx.blockSize())
+			numslots--;
+		bitmapsize = bitmapSize(numslots);
+		columnar = (layout.format() == RecordFormat.PAX);
+		tx.pin(blk);
+		page = tx.pageForScan(blk);
+	}
+
+	/**
+	 * Return the integer value stored for the specified field of a specified slot.
+	 * 
+	 * @param fldname the name of the field.
+	 * @return the integer stored in that field
+	 */
+	public int getInt(int slot, String fldname) {
+		int fldpos = fieldPos(slot, fldname);
+		if (slot == pendingslot)
+			return pending.getInt(pending.indexOf(fldpos));
+		lockRecord(slot);
+		return readInt(fldpos);
+	}
+
+	/**
+	 * Return the string value stored for the specified field of the specified slot.
+	 * 
+	 * @param fldname the name of the field.
+	 * @return the string stored in that field
+	 */
+	public String getString(int slot, String fldname) {
+		int fldpos = fieldPos(slot, fldname);
+		if (slot == pendingslot)
+			return pending.getString(pending.indexOf(fldpos));
+		lockRecord(slot);
+		return readString(fldpos);
+	}
+
+	/**
+	 * Store an integer at the specified field of the specified slot.
+	 * 
+	 * @param fldname the name of the field
+	 * @param val     the integer value stored in that field
+	 */
+	public void setInt(int slot, String fldname, int val) {
+		int fldpos = fieldPos(slot, fldname);
+		SlotUpdate upd = slotUpdate(slot, fldname, EMPTY % 2);
+		upd.setInt(fldpos, val);
+		writeUpdate(slot, upd);
+	}
+
+	/**
+	 * Store a string at the specified field of the specified slot.
+	 * 
+	 * @param fldname the name of the field
+	 * @param val     the string value stored in that field
+	 */
+	public void setString(int slot, String fldname, String val) {
+		int fldpos = fieldPos(slot, fldname);
+		SlotUpdate upd = slotUpdate(slot, fldname, EMPTY % 2);
+		upd.setString(fldpos, val);
+		writeUpdate(slot, upd);
+	}
+
+	public void delete(int slot) {
+		finishInserts();
+		tx.xLockRecord(blk, slot);
+		SlotUpdate img = new SlotUpdate(offset(slot), EMPTY % 2);
+		img.setBit(slot, false);
+		tx.deleteSlot(blk, img);
+	}
+
+	/**
+	 * Use the layout to format a new block of records. These values should not be
+	 * logged (because the old values are meaningless). A zero header marks the
+	 * slot as empty with no null fields, and a zero bitmap marks every slot empty.
+	 */
+	public void format() {
+		for (int pos = 0; pos < bitmapsize; pos += Integer.BYTES)
+			tx.setInt(blk, pos, 0, false);
+		int slot = 0;
+		while (isValidSlot(slot)) {
+			tx.setInt(blk, offset(slot), EMPTY, false);
+			Schema sch = layout.schema();
+			for (String fldname : sch.fields()) {
+				int fldpos = fieldPos(slot, fldname);
+				if (sch.type(fldname) == INTEGER)
+					tx.setInt(blk, fldpos, 0, false);
+				else
+					tx.setString(blk, fldpos, "", false);
+			}
+			slot++;
+		}
+	}
+
+	/**
+	 * Find the next used slot after the specified one, and SLock its record.
+	 * 
+	 * @param slot the slot to search after
+	 * @return the next used slot, or -1 if there is none
+	 */
+	public int nextAfter(int slot) {
+		finishInserts();
+		while ((slot = searchAfter(slot, USED % 2)) >= 0) {
+			lockRecord(slot);
+			if (header(slot) % 2 == USED % 2)
+				return slot;
+		}
+		return -1;
+	}
+
+	/**
+	 * Find an empty slot after the specified one and start a new record in it. The
+	 * record starts out with the field values already in the slot, and is only
+	 * written to the block, as a single INSERTSLOT log record, by
+	 * {@link #finishInsert()}. The slot's record is XLocked right away so that no
+	 * other transaction can claim the slot in the meantime. A slot whose record
+	 * another transaction has locked, such as one it has just deleted or is
+	 * inserting into, is passed over rather than waited for.
+	 * 
+	 * @param slot the slot to search after
+	 * @return the new record's slot, or -1 if the block is full
+	 */
+	public int insertAfter(int slot) {
+		finishInserts();
+		int newslot = slot;
+		while ((newslot = searchAfter(newslot, EMPTY % 2)) >= 0)
+			if (tx.tryXLockRecord(blk, newslot) && header(newslot) % 2 == EMPTY % 2)
+				break;
+		if (newslot >= 0) {
+			pending = new SlotUpdate(offset(newslot), USED % 2);
+			pending.setBit(newslot, true);
+			Schema sch = layout.schema();
+			for (String fldname : sch.fields()) {
+				int fldpos = fieldPos(newslot, fldname);
+				if (sch.type(fldname) == INTEGER)
+					pending.setInt(fldpos, readInt(fldpos));
+				else
+					pending.setString(fldpos, readString(fldpos));
+			}
+			pendingslot = newslot;
+			tx.deferInsert(blk, newslot, this::finishInsert);
+		}
+		return newslot;
+	}
+
+	/**
+	 * Write the record started by {@link #insertAfter(int)}, if any, to the block.
+	 */
+	public void finishInsert() {
+		if (pending != null) {
+			SlotUpdate img = pending;
+			int slot = pendingslot;
+			pending = null;
+			pendingslot = -1;
+			if (tx.endInsert(blk, slot))
+				tx.insertSlot(blk, img);
+		}
+	}
+
+	/**
+	 * Read the records after the specified slot into the batch, a field at a
+	 * time. When the block is read straight from the page, the used slots are
+	 * found first, and then each field is decoded for all of them together, from
+	 * its minipage in a PAX block. Otherwise the records are read one at a time.
+	 */
+	public int readInto(int slot, ColumnBatch batch, String[] fields) {
+		finishInserts();
+		if (page == null)
+			return RecordPage.super.readInto(slot, batch, fields);
+		int[] slots = new int[numslots];
+		int first = -1, count = 0;
+		while (!batch.isFull() && (slot = searchAfter(slot, USED % 2)) >= 0) {
+			int row = batch.addRow();
+			if (count == 0)
+				first = row;
+			slots[count++] = slot;
+		}
+		int[] headers = new int[count];
+		for (int i = 0; i < count; i++)
+			headers[i] = page.getInt(offset(slots[i]));
+		Schema sch = layout.schema();
+		for (String fldname : fields) {
+			boolean[] nulls = batch.nulls(fldname);
+			int bitPos = layout.bitPosition(fldname);
+			for (int i = 0; i < count; i++)
+				nulls[first + i] = getBitVal(headers[i], bitPos) == 1;
+			// the field of each slot is a fixed distance after that of the slot before
+			int base = fieldPos(0, fldname);
+			int stride = columnar ? layout.lengthInBytes(fldname) : layout.slotSize();
+			if (sch.type(fldname) == INTEGER) {
+				int[] vals = batch.ints(fldname);
+				for (int i = 0; i < count; i++)
+					if (!nulls[first + i])
+						vals[first + i] = page.getInt(base + slots[i] * stride);
+			} else {
+				String[] vals = batch.strings(fldname);
+				for (int i = 0; i < count; i++)
+					if (!nulls[first + i])
+						vals[first + i] = page.getString(base + slots[i] * stride);
+			}
+		}
+		return slot;
+	}
+
+	public BlockId block() {
+		return blk;
+	}
+
+	// Assignment 5 methods
+	// Part 2
+	public void setNull(int slot, String fldname) {
+		writeUpdate(slot, slotUpdate(slot, fldname, USED % 2));
+	}
+
+	public void setNonNull(int slot, String fldname) {
+		writeUpdate(slot, slotUpdate(slot, fldname, EMPTY % 2));
+	}
+
+	public boolean isNull(int slot, String fldname) {
+		if (slot != pendingslot)
+			lockRecord(slot);
+		int bitPos = layout.bitPosition(fldname);
+		return getBitVal(header(slot), bitPos) == 1;
+	}
+	// End of Assignment 5 methods
+
+	// Private auxiliary methods
+
+	/**
+	 * Write the records that the transaction has started in the block, whether in
+	 * this record page or in another one, so that the block shows them.
+	 */
+	private void finishInserts() {
+		finishInsert();
+		tx.finishInserts(blk);
+	}
+
+	/**
+	 * Return the first slot after the specified one whose occupancy bit matches
+	 * the specified flag. The bitmap is read without locking. A page read
+	 * directly is searched in place, without copying the bitmap on each call.
+	 */
+	private int searchAfter(int slot, int flag) {
+		if (page != null) {
+			boolean used = (flag == USED % 2);
+			for (int next = slot + 1; next < numslots; next++)
+				if (page.getBit(next) == used)
+					return next;
+			return -1;
+		}
+		BitSet used = BitSet.valueOf(readRaw(0, bitmapsize));
+		int next = (flag == USED % 2) ? used.nextSetBit(slot + 1) : used.nextClearBit(slot + 1);
+		return isValidSlot(next) ? next : -1;
+	}
+
+	/**
+	 * Return the position of the slot's header.
+	 */
+	private int offset(int slot) {
+		if (columnar)
+			return bitmapsize + slot * Integer.BYTES;
+		return bitmapsize + slot * layout.slotSize();
+	}
+
+	/**
+	 * Return the position of the specified field of the specified slot, which is
+	 * in the slot itself, or in the field's minipage in a PAX block.
+	 */
+	private int fieldPos(int slot, String fldname) {
+		if (columnar)
+			return bitmapsize + numslots * layout.offset(fldname) + slot * layout.lengthInBytes(fldname);
+		return offset(slot) + layout.offset(fldname);
+	}
+
+	/**
+	 * Return the size of a bitmap holding the specified number of bits, in whole
+	 * integers.
+	 */
+	private static int bitmapSize(int bits) {
+		return (bits + Integer.SIZE - 1) / Integer.SIZE * Integer.BYTES;
+	}
+
+	// Assignment 5 Private methods
+	private boolean isValidSlot(int slot) {
+		return 0 <= slot && slot < numslots;
+	}
+
+	/**
+	 * Return the slot's header, which holds the empty/inuse flag and the null bits.
+	 * The caller is responsible for locking the slot's record.
+	 */
+	private int header(int slot) {
+		if (slot == pendingslot)
+			return pending.flag();
+		return readInt(offset(slot));
+	}
+
+	/**
+	 * SLock the slot's record, unless the block is read from the page obtained for
+	 * the scan, which needs no record locks.
+	 */
+	private void lockRecord(int slot) {
+		if (page == null)
+			tx.sLockRecord(blk, slot);
+	}
+
+	private int readInt(int offset) {
+		return (page != null) ? page.getInt(offset) : tx.getInt(blk, offset, false);
+	}
+
+	private String readString(int offset) {
+		return (page != null) ? page.getString(offset) : tx.getString(blk, offset, false);
+	}
+
+	private byte[] readRaw(int offset, int length) {
+		return (page != null) ? page.getRaw(offset, length) : tx.getRaw(blk, offset, length);
+	}
+
+	/**
+	 * XLock the slot's record and return an update of the slot whose header has
+	 * the null bit of the specified field set to the specified value. For the
+	 * record being inserted, the update is the pending record itself.
+	 */
+	private SlotUpdate slotUpdate(int slot, String fldname, int isNull) {
+		if (slot != pendingslot)
+			tx.xLockRecord(blk, slot);
+		int bitPos = layout.bitPosition(fldname);
+		int fieldsNullInfo = setBitVal(header(slot), bitPos, isNull);
+		if (slot == pendingslot) {
+			pending.setFlag(fieldsNullInfo);
+			return pending;
+		}
+		return new SlotUpdate(offset(slot), fieldsNullInfo);
+	}
+
+	/**
+	 * Log and write the update, unless it belongs to the record being inserted.
+	 */
+	private void writeUpdate(int slot, SlotUpdate upd) {
+		if (slot != pendingslot)
+			tx.updateSlot(blk, upd);
+	}
+
+	private int getBitVal(int val, int bitpos) {
+		return (val >> bitpos) % 2;
+	}
+
+	private int setBitVal(int val, int bitpos, int flag) {
+		int mask = (1 << bitpos);
+		if (flag == 0)
+			return val & ~mask;
+		else
+			return val | mask;
+	}
+	// End of Assignment 5 Private methods
+}
\ No newline at end of file
@@ -0,0 +1,117 @@
+package simpledb.record;
+
+import simpledb.file.BlockId;
+import simpledb.tx.Transaction;
+
+/**
+ * The free-space map of a table, which records which blocks of the table are
+ * full so that an insertion can go straight to a block with room instead of
+ * trying every block in turn. The map is stored in its own file, next to the
+ * table's file, and holds one byte per block of the table: FULL if the last
+ * insertion into the block found no room, and 0 otherwise. A block that the map
+ * does not cover yet, such as a newly appended one, has room.
+ * <p>
+ * The map is only a hint. It is written without logging and without locking,
+ * so that inserting transactions do not wait for each other on the map, and a
+ * crash can leave an entry out of date. A block wrongly marked as having room
+ * costs one failed attempt, after which it is marked full again. An insertion
+ * also marks a block full when its only free slots are held by other
+ * transactions; the table scan marks the block as having room again when a
+ * transaction that deleted a record from it commits, or one that inserted a
+ * record into it rolls back, so that the slot is not lost.
+ */
+public class FreeSpaceMap {
+	private static final byte FULL = 1;
+	private static final Object extending = new Object();
+	private Transaction tx;
+	private String filename;
+	private int entriesPerBlock;
+
+	/**
+	 * Open the free-space map of the specified table.
+	 *
+	 * @param tx      the transaction
+	 * @param tblname the name of the table
+	 */
+	public FreeSpaceMap(Transaction tx, String tblname) {
+		this.tx = tx;
+		filename = tblname + ".fsm";
+		entriesPerBlock = tx.blockSize();
+	}
+
+	/**
+	 * Determine whether the specified block of the table may have room for
+	 * another record.
+	 *
+	 * @param blknum the number of the table's block
+	 * @return false if the block is marked full
+	 */
+	public boolean hasRoom(int blknum) {
+		BlockId blk = mapBlock(blknum);
+		if (blk.number() >= tx.size(filename, false))
+			return true;
+		tx.pin(blk);
+		byte entry = tx.getRaw(blk, blknum % entriesPerBlock, 1)[0];
+		tx.unpin(blk);
+		return entry != FULL;
+	}
+
+	/**
+	 * Return the first block in the specified range of block numbers that is not
+	 * marked full, or -1 if every block in the range is marked full.
+	 *
+	 * @param start the first block number of the range
+	 * @param end   the block number following the range
+	 * @return the number of a block that may have room, or -1
+	 */
+	public int findRoom(int start, int end) {
+		int mapsize = tx.size(filename, false);
+		int blknum = start;
+		while (blknum < end) {
+			BlockId blk = mapBlock(blknum);
+			if (blk.number() >= mapsize)
+				return blknum;
+			int first = blknum % entriesPerBlock;
+			int count = Math.min(entriesPerBlock - first, end - blknum);
+			tx.pin(blk);
+			byte[] entries = tx.getRaw(blk, first, count);
+			tx.unpin(blk);
+			for (int i = 0; i < count; i++)
+				if (entries[i] != FULL)
+					return blknum + i;
+			blknum += count;
+		}
+		return -1;
+	}
+
+	/**
+	 * Record whether the specified block of the table is full. Nothing is written
+	 * if the map already says so. The map file is extended as needed to cover the
+	 * block, under a latch that is only held while it is extended, so that two
+	 * transactions do not both append the missing blocks.
+	 *
+	 * @param blknum the number of the table's block
+	 * @param full   whether the block is full
+	 */
+	public void setFull(int blknum, boolean full) {
+		BlockId blk = mapBlock(blknum);
+		if (blk.number() >= tx.size(filename, false)) {
+			if (!full)
+				return;
+			synchronized (extending) {
+				while (blk.number() >= tx.size(filename, false))
+					tx.append(filename, false);
+			}
+		}
+		byte entry = full ? FULL : 0;
+		int offset = blknum % entriesPerBlock;
+		tx.pin(blk);
+		if (tx.getRaw(blk, offset, 1)[0] != entry)
+			tx.setHint(blk, offset, entry);
+		tx.unpin(blk);
+	}
+
+	private BlockId mapBlock(int blknum) {
+		return new BlockId(filename, blknum / entriesPerBlock);
+	}
+}
@@ -0,0 +1,90 @@
+package simpledb.record;
+
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+public class FreeSpaceMapTest {
+	private static SimpleDB db;
+
+	public static void main(String[] args) throws Exception {
+		db = new SimpleDB("freespacemaptest", 400, 8);
+		testMap();
+		testInserts();
+	}
+
+	private static void testMap() {
+		Transaction tx = db.newTx();
+		FreeSpaceMap map = new FreeSpaceMap(tx, "maponly");
+		for (int blknum = 0; blknum < 8; blknum++)
+			map.setFull(blknum, false);
+		System.out.println("Block 5 has room (should be true): " + map.hasRoom(5));
+		map.setFull(5, true);
+		System.out.println("Block 5 has room (should be false): " + map.hasRoom(5));
+		System.out.println("First block with room in 5-7 (should be 6): " + map.findRoom(5, 7));
+		map.setFull(6, true);
+		System.out.println("First block with room in 5-7 (should be -1): " + map.findRoom(5, 7));
+		System.out.println("First block with room in 5-8 (should be 7): " + map.findRoom(5, 8));
+		map.setFull(5, false);
+		System.out.println("First block with room in 5-7 (should be 5): " + map.findRoom(5, 7));
+
+		// the map file is extended to cover a block past its end
+		map.setFull(1000, true);
+		System.out.println("Block 1000 has room (should be false): " + map.hasRoom(1000));
+		System.out.println("Block 1001 has room (should be true): " + map.hasRoom(1001));
+		map.setFull(1000, false);
+		tx.commit();
+	}
+
+	private static void testInserts() {
+		Schema sch = new Schema();
+		sch.addIntField("id");
+		sch.addStringField("name", 20);
+		Layout layout = new Layout(sch);
+
+		// empty the table, and fill exactly its first block
+		Transaction tx = db.newTx();
+		TableScan ts = new TableScan(tx, "T", layout);
+		while (ts.next())
+			ts.delete();
+		ts.beforeFirst();
+		int id = 0;
+		do {
+			ts.insert();
+			ts.setInt("id", id++);
+		} while (ts.getRid().blockNumber() == 0);
+		ts.delete();
+		// and free its first slot
+		ts.moveToRid(new RID(0, 0));
+		ts.delete();
+		ts.close();
+		tx.commit();
+
+		// the second insert finds block 0 full, marks it so, and goes on to block 1
+		tx = db.newTx();
+		ts = new TableScan(tx, "T", layout);
+		ts.insert();
+		ts.setInt("id", -1);
+		RID first = ts.getRid();
+		ts.close();
+		ts = new TableScan(tx, "T", layout);
+		ts.insert();
+		ts.setInt("id", -2);
+		RID second = ts.getRid();
+		ts.close();
+		System.out.println("Inserted at (should be [0, 0] and block 1): " + first + " and " + second);
+		FreeSpaceMap map = new FreeSpaceMap(tx, "T");
+		System.out.println("Block 0 has room (should be false): " + map.hasRoom(0));
+		tx.rollback();
+
+		// the rollback frees the slot again, and marks block 0 as having room
+		tx = db.newTx();
+		map = new FreeSpaceMap(tx, "T");
+		System.out.println("Block 0 has room after rollback (should be true): " + map.hasRoom(0));
+		ts = new TableScan(tx, "T", layout);
+		ts.insert();
+		ts.setInt("id", 99);
+		System.out.println("Inserted after rollback at (should be [0, 0]): " + ts.getRid());
+		ts.close();
+		tx.commit();
+	}
+}
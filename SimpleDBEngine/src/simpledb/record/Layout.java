@@ -8,7 +8,9 @@ import static java.sql.Types.*;
 
 /**
  * Description of the structure of a record. It contains the name, type, length
- * and offset of each field of the table.
+ * and offset of each field of the table, and the {@link RecordFormat} of the
+ * table's blocks. The offsets and the slot size describe a fixed-size slot; in
+ * a slotted table, the slot size is the largest size a record can have.
  * 
  * @author Edward Sciore
  *
@@ -17,6 +19,7 @@ public class Layout {
 	private Schema schema;
 	private Map<String, Integer> offsets;
 	private int slotsize;
+	private RecordFormat format = RecordFormat.FIXED;
 
 	// Assignment 5 Definitions
 	// Part 2
@@ -32,7 +35,21 @@ public class Layout {
 	 * @param schema  the schema of the table's records
 	 */
 	public Layout(Schema schema) {
+		this(schema, RecordFormat.FIXED);
+	}
+
+	/**
+	 * Create a Layout object for a new table whose blocks have the specified
+	 * format.
+	 * 
+	 * @param schema the schema of the table's records
+	 * @param format the format of the table's blocks
+	 */
+	public Layout(Schema schema, RecordFormat format) {
+		if (format == RecordFormat.SLOTTED && schema.fields().size() > SlottedRecordPage.MAX_FIELDS)
+			throw new RuntimeException("a slotted table can have at most " + SlottedRecordPage.MAX_FIELDS + " fields");
 		this.schema = schema;
+		this.format = format;
 		offsets = new HashMap<>();
 		bitPositions = new HashMap<>();
 		int pos = Integer.BYTES; // leave space for the empty/inuse flag
@@ -56,7 +73,21 @@ public class Layout {
 	 * @param recordlen the already-calculated length of each record
 	 */
 	public Layout(Schema schema, Map<String, Integer> offsets, int slotsize) {
+		this(schema, offsets, slotsize, RecordFormat.FIXED);
+	}
+
+	/**
+	 * Create a Layout object from the specified metadata, for a table whose blocks
+	 * have the specified format.
+	 * 
+	 * @param schema   the schema of the table's records
+	 * @param offsets  the already-calculated offsets of the fields within a record
+	 * @param slotsize the already-calculated length of each record
+	 * @param format   the format of the table's blocks
+	 */
+	public Layout(Schema schema, Map<String, Integer> offsets, int slotsize, RecordFormat format) {
 		this.schema = schema;
+		this.format = format;
 		this.offsets = offsets;
 		this.slotsize = slotsize;
 		bitPositions = new HashMap<>();
@@ -95,7 +126,32 @@ public class Layout {
 		return slotsize;
 	}
 
-	private int lengthInBytes(String fldname) {
+	/**
+	 * Return the format of the table's blocks.
+	 * 
+	 * @return the record format
+	 */
+	public RecordFormat format() {
+		return format;
+	}
+
+	/**
+	 * Return the position of the specified field in the schema, counting from 0.
+	 * 
+	 * @param fldname the name of the field
+	 * @return the field's position
+	 */
+	public int fieldIndex(String fldname) {
+		return bitPositions.get(fldname) - 1;
+	}
+
+	/**
+	 * Return the number of bytes the specified field takes in a slot.
+	 * 
+	 * @param fldname the name of the field
+	 * @return the length of the field, in bytes
+	 */
+	public int lengthInBytes(String fldname) {
 		int fldtype = schema.type(fldname);
 		if (fldtype == INTEGER)
 			return Integer.BYTES;
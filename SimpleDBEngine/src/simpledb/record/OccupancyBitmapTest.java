@@ -0,0 +1,113 @@
+package simpledb.record;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.tx.Transaction;
+
+public class OccupancyBitmapTest {
+	private static SimpleDB db;
+	private static Layout layout;
+
+	public static void main(String[] args) throws Exception {
+		db = new SimpleDB("occupancybitmaptest", 400, 8);
+		Schema sch = new Schema();
+		sch.addIntField("A");
+		sch.addStringField("B", 9);
+		layout = new Layout(sch);
+
+		// fill a new block, and delete every third record
+		Transaction tx = db.newTx();
+		BlockId blk = tx.append("bitmapfile");
+		tx.pin(blk);
+		RecordPage rp = RecordPage.open(tx, blk, layout);
+		rp.format();
+		int numslots = 0;
+		for (int slot = rp.insertAfter(-1); slot >= 0; slot = rp.insertAfter(slot)) {
+			rp.setInt(slot, "A", slot);
+			numslots++;
+		}
+		for (int slot = 0; slot < numslots; slot += 3)
+			rp.delete(slot);
+		rp.finishInsert();
+		String expected = "";
+		for (int slot = 0; slot < numslots; slot++)
+			expected += (slot % 3 == 0) ? "0" : "1";
+		System.out.println("Bitmap (should be " + expected + "): " + bitmap(tx, blk, numslots));
+		tx.unpin(blk);
+		tx.commit();
+
+		// a rollback restores the bits along with the records
+		tx = db.newTx();
+		tx.pin(blk);
+		rp = RecordPage.open(tx, blk, layout);
+		for (int slot = rp.insertAfter(-1); slot >= 0; slot = rp.insertAfter(slot))
+			rp.setInt(slot, "A", -1);
+		rp.delete(1);
+		rp.finishInsert();
+		System.out.println("Bitmap before rollback: " + bitmap(tx, blk, numslots));
+		tx.unpin(blk);
+		tx.rollback();
+		tx = db.newTx();
+		tx.pin(blk);
+		System.out.println("Bitmap after rollback (should be " + expected + "): " + bitmap(tx, blk, numslots));
+		tx.unpin(blk);
+		tx.commit();
+
+		// two transactions insert into the same block; one rolls back
+		tx = db.newTx();
+		TableScan ts = new TableScan(tx, "T", layout);
+		while (ts.next())
+			ts.delete();
+		ts.beforeFirst();
+		for (int i = 0; i < 4; i++) {
+			ts.insert();
+			ts.setInt("A", i);
+		}
+		ts.close();
+		tx.commit();
+		Transaction tx1 = db.newTx();
+		Transaction tx2 = db.newTx();
+		TableScan ts1 = new TableScan(tx1, "T", layout);
+		TableScan ts2 = new TableScan(tx2, "T", layout);
+		ts1.insert();
+		ts1.setInt("A", 10);
+		ts1.close();
+		ts2.insert();
+		ts2.setInt("A", 20);
+		ts2.moveToRid(new RID(0, 1));
+		ts2.delete();
+		ts2.close();
+		tx1.rollback();
+		tx2.commit();
+
+		tx = db.newTx();
+		blk = new BlockId("T.tbl", 0);
+		tx.pin(blk);
+		System.out.println("Bitmap of T (should be 101101 followed by 0s): " + bitmap(tx, blk, numslots));
+		tx.unpin(blk);
+		ts = new TableScan(tx, "T", layout);
+		String rows = "";
+		while (ts.next())
+			rows += ts.getRid() + "=" + ts.getInt("A") + " ";
+		ts.close();
+		tx.commit();
+		System.out.println("Rows of T (should be [0, 0]=0 [0, 2]=2 [0, 3]=3 [0, 5]=20): " + rows);
+	}
+
+	// Return the block's occupancy bits as a string, or a message if a bit
+	// disagrees with the header of its slot.
+	private static String bitmap(Transaction tx, BlockId blk, int numslots) {
+		int bitmapsize = (numslots + Integer.SIZE - 1) / Integer.SIZE * Integer.BYTES;
+		Page bits = new Page(tx.getRaw(blk, 0, bitmapsize));
+		String s = "";
+		for (int slot = 0; slot < numslots; slot++) {
+			boolean used = bits.getBit(slot);
+			int header = tx.getInt(blk, bitmapsize + slot * layout.slotSize());
+			if (used != (header % 2 == RecordPage.USED))
+				return "bit " + slot + " disagrees with its header";
+			s += used ? "1" : "0";
+		}
+		return s;
+	}
+}
@@ -0,0 +1,15 @@
+package simpledb.record;
+
+/**
+ * The ways the records of a table can be stored in its blocks.
+ * FIXED gives every record a slot of the layout's size, in which each string
+ * field takes the space of its declared maximum length; see
+ * {@link FixedRecordPage}. SLOTTED stores each record in only the bytes its
+ * values need, behind a slot directory; see {@link SlottedRecordPage}. PAX has
+ * the same fixed-size slots as FIXED, but stores each block column by column,
+ * in one minipage per field, so that a scan reading a few fields only touches
+ * their minipages.
+ */
+public enum RecordFormat {
+	FIXED, SLOTTED, PAX
+}
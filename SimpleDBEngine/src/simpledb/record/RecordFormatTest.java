@@ -0,0 +1,99 @@
+package simpledb.record;
+
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+public class RecordFormatTest {
+	private static SimpleDB db;
+
+	public static void main(String[] args) throws Exception {
+		db = new SimpleDB("recordformattest", 400, 8);
+		Schema sch = new Schema();
+		sch.addIntField("id");
+		sch.addStringField("name", 12);
+		for (RecordFormat format : RecordFormat.values())
+			run(new Layout(sch, format), "t" + format.name().toLowerCase());
+	}
+
+	private static void run(Layout layout, String tblname) {
+		RecordFormat format = layout.format();
+		Transaction tx = db.newTx();
+		TableScan ts = new TableScan(tx, tblname, layout);
+		// empty the table of a previous run, so that its blocks are reused
+		while (ts.next())
+			ts.delete();
+		ts.beforeFirst();
+		for (int id = 0; id < 60; id++) {
+			ts.insert();
+			ts.setInt("id", id);
+			ts.setString("name", "rec" + id);
+		}
+		ts.close();
+		tx.commit();
+		System.out.println(format + ": " + rows(layout, tblname));
+
+		// delete every third record and rename the record after each deleted one
+		tx = db.newTx();
+		ts = new TableScan(tx, tblname, layout);
+		while (ts.next()) {
+			int id = ts.getInt("id");
+			if (id % 3 == 0)
+				ts.delete();
+			else if (id % 3 == 1)
+				ts.setString("name", "updated" + id);
+		}
+		ts.close();
+		tx.commit();
+		System.out.println(format + ": after deleting and updating (should be 40 rows, 20 updated, sum 1200): "
+				+ rows(layout, tblname));
+
+		// new records reuse the deleted slots, starting with the first one
+		tx = db.newTx();
+		ts = new TableScan(tx, tblname, layout);
+		RID first = null;
+		for (int id = 60; id < 80; id++) {
+			ts.insert();
+			ts.setInt("id", id);
+			ts.setString("name", "rec" + id);
+			if (first == null)
+				first = ts.getRid();
+		}
+		ts.close();
+		tx.commit();
+		System.out.println(format + ": after reinserting (should be 60 rows, 20 updated, sum 2590, first at [0, 0]): "
+				+ rows(layout, tblname) + ", first at " + first);
+
+		// a rollback undoes inserts, deletes and updates
+		String before = rows(layout, tblname);
+		tx = db.newTx();
+		ts = new TableScan(tx, tblname, layout);
+		while (ts.next()) {
+			if (ts.getInt("id") % 2 == 0)
+				ts.delete();
+			else
+				ts.setString("name", "rolledback");
+		}
+		ts.insert();
+		ts.setInt("id", 1000);
+		ts.close();
+		tx.rollback();
+		System.out.println(format + ": after rollback (should be " + before + "): " + rows(layout, tblname));
+	}
+
+	// Describe the table's rows by their number, the number of updated names and
+	// the sum of their ids.
+	private static String rows(Layout layout, String tblname) {
+		Transaction tx = db.newTx();
+		TableScan ts = new TableScan(tx, tblname, layout);
+		int count = 0, updated = 0, sum = 0;
+		while (ts.next()) {
+			count++;
+			sum += ts.getInt("id");
+			if (ts.getString("name").startsWith("updated"))
+				updated++;
+		}
+		ts.close();
+		tx.commit();
+		return count + " rows, " + updated + " updated, sum " + sum;
+	}
+}
@@ -3,24 +3,32 @@ package simpledb.record;
 import static java.sql.Types.INTEGER;
 
 import simpledb.file.BlockId;
+import simpledb.query.ColumnBatch;
 import simpledb.tx.Transaction;
 
 /**
- * Store a record at a given location in a block.
- * 
- * @author Edward Sciore
+ * The records stored in one block of a table. How they are laid out in the
+ * block depends on the table's {@link RecordFormat}; each record is identified
+ * by its slot, which does not change for as long as the record exists.
+ * Creating a record page pins its block.
  */
-public class RecordPage {
+public interface RecordPage {
 	public static final int EMPTY = 0, USED = 1;
-	private Transaction tx;
-	private BlockId blk;
-	private Layout layout;
-
-	public RecordPage(Transaction tx, BlockId blk, Layout layout) {
-		this.tx = tx;
-		this.blk = blk;
-		this.layout = layout;
-		tx.pin(blk);
+
+	/**
+	 * Open the specified block of a table having the specified layout, in the
+	 * table's record format.
+	 * 
+	 * @param tx     the transaction
+	 * @param blk    a reference to the block
+	 * @param layout the layout of the table
+	 * @return the block's record page
+	 */
+	static RecordPage open(Transaction tx, BlockId blk, Layout layout) {
+		if (layout.format() == RecordFormat.SLOTTED)
+			return new SlottedRecordPage(tx, blk, layout);
+		// a PAX block has the slots of a fixed one, stored column by column
+		return new FixedRecordPage(tx, blk, layout);
 	}
 
 	/**
@@ -29,10 +37,7 @@ public class RecordPage {
 	 * @param fldname the name of the field.
 	 * @return the integer stored in that field
 	 */
-	public int getInt(int slot, String fldname) {
-		int fldpos = offset(slot) + layout.offset(fldname);
-		return tx.getInt(blk, fldpos);
-	}
+	int getInt(int slot, String fldname);
 
 	/**
 	 * Return the string value stored for the specified field of the specified slot.
@@ -40,10 +45,7 @@ public class RecordPage {
 	 * @param fldname the name of the field.
 	 * @return the string stored in that field
 	 */
-	public String getString(int slot, String fldname) {
-		int fldpos = offset(slot) + layout.offset(fldname);
-		return tx.getString(blk, fldpos);
-	}
+	String getString(int slot, String fldname);
 
 	/**
 	 * Store an integer at the specified field of the specified slot.
@@ -51,11 +53,7 @@ public class RecordPage {
 	 * @param fldname the name of the field
 	 * @param val     the integer value stored in that field
 	 */
-	public void setInt(int slot, String fldname, int val) {
-		int fldpos = offset(slot) + layout.offset(fldname);
-		tx.setInt(blk, fldpos, val, true);
-		setNonNull(slot, fldname);
-	}
+	void setInt(int slot, String fldname, int val);
 
 	/**
 	 * Store a string at the specified field of the specified slot.
@@ -63,113 +61,68 @@ public class RecordPage {
 	 * @param fldname the name of the field
 	 * @param val     the string value stored in that field
 	 */
-	public void setString(int slot, String fldname, String val) {
-		int fldpos = offset(slot) + layout.offset(fldname);
-		tx.setString(blk, fldpos, val, true);
-		setNonNull(slot, fldname);
-	}
+	void setString(int slot, String fldname, String val);
 
-	public void delete(int slot) {
-		setFlag(slot, EMPTY % 2);
-	}
+	void delete(int slot);
 
 	/**
-	 * Use the layout to format a new block of records. These values should not be
-	 * logged (because the old values are meaningless).
+	 * Format a new block, so that it holds no records. The changes are not logged.
 	 */
-	public void format() {
-		int slot = 0;
-		while (isValidSlot(slot)) {
-			tx.setInt(blk, offset(slot), EMPTY, false);
-			Schema sch = layout.schema();
-			for (String fldname : sch.fields()) {
-				int fldpos = offset(slot) + layout.offset(fldname);
-				if (sch.type(fldname) == INTEGER)
-					tx.setInt(blk, fldpos, 0, false);
-				else
-					tx.setString(blk, fldpos, "", false);
-				setNonNull(slot, fldname);
-			}
-			slot++;
-		}
-	}
-
-	public int nextAfter(int slot) {
-		return searchAfter(slot, USED % 2);
-	}
-
-	public int insertAfter(int slot) {
-		int newslot = searchAfter(slot, EMPTY % 2);
-		if (newslot >= 0)
-			setFlag(newslot, USED % 2);
-		return newslot;
-	}
-
-	public BlockId block() {
-		return blk;
-	}
-
-	// Assignment 5 methods
-	// Part 2
-	public void setNull(int slot, String fldname) {
-		setIsNull(slot, fldname, USED % 2);
-	}
+	void format();
 
-	public void setNonNull(int slot, String fldname) {
-		setIsNull(slot, fldname, EMPTY % 2);
-	}
-
-	public boolean isNull(int slot, String fldname) {
-		int bitPos = layout.bitPosition(fldname);
-		return getBitVal(tx.getInt(blk, offset(slot)), bitPos) == 1;
-	}
-	// End of Assignment 5 methods
+	/**
+	 * Find the next used slot after the specified one, and SLock its record.
+	 * 
+	 * @param slot the slot to search after
+	 * @return the next used slot, or -1 if there is none
+	 */
+	int nextAfter(int slot);
 
-	// Private auxiliary methods
+	/**
+	 * Find an empty slot after the specified one and start a new record in it.
+	 * 
+	 * @param slot the slot to search after
+	 * @return the new record's slot, or -1 if the block is full
+	 */
+	int insertAfter(int slot);
 
 	/**
-	 * Set the record's empty/inuse flag.
+	 * Write the record started by {@link #insertAfter(int)}, if any, to the block.
 	 */
-	private void setFlag(int slot, int flag) {
-		tx.setInt(blk, offset(slot), flag, true);
-	}
+	void finishInsert();
 
-	private int searchAfter(int slot, int flag) {
-		slot++;
-		while (isValidSlot(slot)) {
-			if (tx.getInt(blk, offset(slot)) % 2 == flag)
-				return slot;
-			slot++;
+	/**
+	 * Read the records of the used slots after the specified one into the batch,
+	 * adding a row for each, until the batch is full or the block has no more
+	 * records. Only the specified fields are read. By default, each record is
+	 * found and read as by {@link #nextAfter(int)} and the getters.
+	 * 
+	 * @param slot   the slot to read after
+	 * @param batch  the batch, which must have the specified fields
+	 * @param fields the fields to read
+	 * @return the slot of the last record read, or -1 if the block has no more
+	 *         records
+	 */
+	default int readInto(int slot, ColumnBatch batch, String[] fields) {
+		while (!batch.isFull() && (slot = nextAfter(slot)) >= 0) {
+			int row = batch.addRow();
+			for (String fldname : fields) {
+				if (isNull(slot, fldname))
+					batch.setNull(fldname, row);
+				else if (batch.schema().type(fldname) == INTEGER)
+					batch.setInt(fldname, row, getInt(slot, fldname));
+				else
+					batch.setString(fldname, row, getString(slot, fldname));
+			}
 		}
-		return -1;
-	}
-
-	private int offset(int slot) {
-		return slot * layout.slotSize();
+		return slot;
 	}
 
-	// Assignment 5 Private methods
-	private boolean isValidSlot(int slot) {
-		return -1 < offset(slot) && offset(slot + 1) <= tx.blockSize();
-	}
+	BlockId block();
 
-	private void setIsNull(int slot, String fldname, int isNull) {
-		int bitPos = layout.bitPosition(fldname);
-		int fieldsNullInfo = tx.getInt(blk, offset(slot));
-		fieldsNullInfo = setBitVal(fieldsNullInfo, bitPos, isNull);
-		tx.setInt(blk, offset(slot), fieldsNullInfo, true);
-	}
+	void setNull(int slot, String fldname);
 
-	private int getBitVal(int val, int bitpos) {
-		return (val >> bitpos) % 2;
-	}
+	void setNonNull(int slot, String fldname);
 
-	private int setBitVal(int val, int bitpos, int flag) {
-		int mask = (1 << bitpos);
-		if (flag == 0)
-			return val & ~mask;
-		else
-			return val | mask;
-	}
-	// End of Assignment 5 Private methods
+	boolean isNull(int slot, String fldname);
 }
\ No newline at end of file
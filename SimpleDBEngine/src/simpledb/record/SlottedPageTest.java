@@ -0,0 +1,186 @@
+package simpledb.record;
+
+import java.util.Arrays;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+public class SlottedPageTest {
+	private static SimpleDB db;
+	private static Layout layout;
+
+	public static void main(String[] args) throws Exception {
+		db = new SimpleDB("slottedpagetest", 400, 8);
+		Schema sch = new Schema();
+		sch.addIntField("id");
+		sch.addStringField("name", 60);
+		layout = new Layout(sch, RecordFormat.SLOTTED);
+
+		// short records take only the space they need
+		Transaction tx = db.newTx();
+		TableScan ts = new TableScan(tx, "T", layout);
+		while (ts.next())
+			ts.delete();
+		ts.beforeFirst();
+		for (int id = 0; id < 40; id++) {
+			ts.insert();
+			ts.setInt("id", id);
+			ts.setString("name", "n" + id);
+		}
+		ts.close();
+		tx.commit();
+		int fixed = 40 / (400 / new Layout(sch).slotSize()) + 1;
+		System.out.println("Blocks holding 40 short records (should be fewer than " + fixed + "): " + blocksUsed());
+		RID rid = ridOf(0);
+
+		// records that outgrow their block are moved, but keep their RIDs
+		tx = db.newTx();
+		ts = new TableScan(tx, "T", layout);
+		while (ts.next())
+			if (ts.getInt("id") < 12)
+				ts.setString("name", fill('a', 60));
+		ts.close();
+		tx.commit();
+		System.out.println("After growing ids 0-11 (should be 40 rows, 12 a60): " + describe());
+		System.out.println("RID of id 0 (should be " + rid + "): " + ridOf(0));
+
+		// a moved record can be updated again, and deleted
+		tx = db.newTx();
+		ts = new TableScan(tx, "T", layout);
+		while (ts.next()) {
+			int id = ts.getInt("id");
+			if (id < 3)
+				ts.setString("name", fill('b', 50));
+			else if (id == 5)
+				ts.delete();
+		}
+		ts.close();
+		tx.commit();
+		System.out.println("After updating ids 0-2 and deleting id 5 (should be 39 rows, 8 a60, 3 b50): " + describe());
+
+		// growing records is undone by a rollback
+		tx = db.newTx();
+		ts = new TableScan(tx, "T", layout);
+		while (ts.next())
+			if (ts.getInt("id") > 12)
+				ts.setString("name", fill('c', 60));
+		ts.close();
+		tx.rollback();
+		System.out.println("After rollback (should be 39 rows, 8 a60, 3 b50): " + describe());
+
+		// the null bits of a table with the most fields are kept apart from the forwarding bits
+		Schema wide = new Schema();
+		for (int i = 0; i < SlottedRecordPage.MAX_FIELDS - 1; i++)
+			wide.addIntField("f" + i);
+		wide.addStringField("s", 60);
+		Layout widelayout = new Layout(wide, RecordFormat.SLOTTED);
+		String last = "f" + (SlottedRecordPage.MAX_FIELDS - 2);
+		tx = db.newTx();
+		ts = new TableScan(tx, "W", widelayout);
+		while (ts.next())
+			ts.delete();
+		for (int id = 0; id < 4; id++) {
+			ts.insert();
+			ts.setInt("f0", id);
+			ts.setNull(last);
+			ts.setString("s", "x");
+		}
+		ts.close();
+		tx.commit();
+		System.out.println("Wide table (should be 4 rows, 4 " + last + " null, 0 s null, 0 long): "
+				+ describeWide(widelayout, last));
+		tx = db.newTx();
+		ts = new TableScan(tx, "W", widelayout);
+		while (ts.next())
+			ts.setString("s", fill('a', 60));
+		ts.close();
+		tx.commit();
+		System.out.println("After growing s (should be 4 rows, 4 " + last + " null, 0 s null, 4 long): "
+				+ describeWide(widelayout, last));
+		tx = db.newTx();
+		ts = new TableScan(tx, "W", widelayout);
+		while (ts.next())
+			if (ts.getInt("f0") < 2)
+				ts.setNull("s");
+		ts.close();
+		tx.commit();
+		System.out.println("After nulling s (should be 4 rows, 4 " + last + " null, 2 s null, 2 long): "
+				+ describeWide(widelayout, last));
+
+		wide.addIntField("extra");
+		try {
+			new Layout(wide, RecordFormat.SLOTTED);
+			System.out.println("Slotted table with " + wide.fields().size() + " fields (should be rejected): accepted");
+		}
+		catch (RuntimeException e) {
+			System.out.println("Slotted table with " + wide.fields().size() + " fields (should be rejected): rejected");
+		}
+	}
+
+	private static String describeWide(Layout widelayout, String last) {
+		Transaction tx = db.newTx();
+		TableScan ts = new TableScan(tx, "W", widelayout);
+		int count = 0, lastnulls = 0, snulls = 0, longs = 0;
+		while (ts.next()) {
+			count++;
+			if (ts.isNull(last))
+				lastnulls++;
+			if (ts.isNull("s"))
+				snulls++;
+			else if (ts.getString("s").length() == 60)
+				longs++;
+		}
+		ts.close();
+		tx.commit();
+		return count + " rows, " + lastnulls + " " + last + " null, " + snulls + " s null, " + longs + " long";
+	}
+
+	// Describe the rows by their number and the long names among them.
+	private static String describe() {
+		Transaction tx = db.newTx();
+		TableScan ts = new TableScan(tx, "T", layout);
+		int count = 0;
+		int[] longnames = new int[3];
+		while (ts.next()) {
+			count++;
+			String name = ts.getString("name");
+			if (name.length() >= 50)
+				longnames[name.charAt(0) - 'a']++;
+		}
+		ts.close();
+		tx.commit();
+		String s = count + " rows";
+		for (int i = 0; i < longnames.length; i++)
+			if (longnames[i] > 0)
+				s += ", " + longnames[i] + " " + (char) ('a' + i) + (i == 1 ? 50 : 60);
+		return s;
+	}
+
+	private static RID ridOf(int id) {
+		Transaction tx = db.newTx();
+		TableScan ts = new TableScan(tx, "T", layout);
+		RID rid = null;
+		while (ts.next())
+			if (ts.getInt("id") == id)
+				rid = ts.getRid();
+		ts.close();
+		tx.commit();
+		return rid;
+	}
+
+	private static int blocksUsed() {
+		Transaction tx = db.newTx();
+		TableScan ts = new TableScan(tx, "T", layout);
+		int blocks = 0;
+		while (ts.next())
+			blocks = Math.max(blocks, ts.getRid().blockNumber() + 1);
+		ts.close();
+		tx.commit();
+		return blocks;
+	}
+
+	private static String fill(char c, int n) {
+		char[] chars = new char[n];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+}
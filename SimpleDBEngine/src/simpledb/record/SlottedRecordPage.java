@@ -0,0 +1,565 @@
+package simpledb.record;
+
+import static java.sql.Types.INTEGER;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.tx.SlotUpdate;
+import simpledb.tx.Transaction;
+
+/**
+ * Store variable-length records in a slotted page. The block starts with a
+ * header holding the number of slots and the offset where the record heap
+ * begins, followed by the slot directory. Each directory entry holds the slot's
+ * header (the empty/inuse flag and the null bits, as in {@link FixedRecordPage})
+ * and a length word holding the length of its record. A record holds its fields in schema order: an
+ * integer takes 4 bytes and a string only the bytes of its actual value, not of
+ * its declared maximum length.
+ * <p>
+ * The records are packed at the end of the block in slot order, the record of
+ * slot 0 last, so the heap grows down towards the directory and a record's
+ * position follows from the lengths of the records before it. An empty slot
+ * has a record of length 0. When a record is deleted, shrinks or grows, the
+ * records of the later slots are moved by the difference, which keeps the heap
+ * free of holes without touching their directory entries. A record keeps its
+ * slot while it is moved, so its RID stays valid.
+ * <p>
+ * The change is logged as slot records whose images hold the directory entry,
+ * the page header and the new bytes of the heap. Recovery redoes those images
+ * as they are, so a move is logged as the bytes it writes; a large move is
+ * split into several slot records, each of which fits in a log page. Since a
+ * move changes the records of other transactions, a change to the size of a
+ * record, like an insertion or a deletion, XLocks the block; a change that keeps
+ * the size only XLocks the record.
+ * <p>
+ * An insertion needs room for a record of the layout's maximum size, since the
+ * values of the new record are only known when {@link #finishInsert()} writes
+ * it. As in {@link FixedRecordPage}, the transaction writes a started record
+ * itself when another of its scans works on the block, and at commit.
+ * <p>
+ * A record that grows by more than the free space of its block is moved to
+ * another block of the table, and its slot keeps a forwarding record that holds
+ * the block number and slot of the new location, so the record keeps its RID.
+ * The length word of the forwarding record has the MOVED_OUT bit set, and that
+ * of the moved record the MOVED_IN bit, so that scans of its new block skip it.
+ * The record is read, updated and deleted through its forwarding record, and a
+ * record that outgrows its new block is moved again. These two bits are the
+ * highest bits of the length word below the sign bit, which no record length
+ * reaches; the header only holds the flag and the null bits, which limits a
+ * table to {@link #MAX_FIELDS} fields.
+ * <p>
+ * As in {@link FixedRecordPage}, the values are read straight from the page
+ * returned by {@link Transaction#pageForScan(BlockId)} when there is one.
+ */
+public class SlottedRecordPage implements RecordPage {
+	private static final int NUM_SLOTS = 0, HEAP_START = Integer.BYTES;
+	private static final int DIRECTORY = 2 * Integer.BYTES;
+	private static final int ENTRY_SIZE = 2 * Integer.BYTES;
+	private static final int MOVED_OUT = 1 << 30, MOVED_IN = 1 << 29;
+	private static final int LENGTH_BITS = MOVED_IN - 1;
+	private static final int STATUS_BIT = 1; // the header bit holding the empty/inuse flag
+	private static final int NOT_NULL = 0, IS_NULL = 1;
+
+	/**
+	 * The largest number of fields of a slotted table: one null bit for each of the
+	 * header bits between the empty/inuse flag and the sign bit.
+	 */
+	static final int MAX_FIELDS = Integer.SIZE - 2;
+	private Transaction tx;
+	private BlockId blk;
+	private Layout layout;
+	private Page page;
+	private boolean[] isInt;
+	private Object[] pending;
+	private int pendingflag;
+	private int pendingslot = -1;
+
+	public SlottedRecordPage(Transaction tx, BlockId blk, Layout layout) {
+		this.tx = tx;
+		this.blk = blk;
+		this.layout = layout;
+		List<String> fields = layout.schema().fields();
+		isInt = new boolean[fields.size()];
+		for (int i = 0; i < isInt.length; i++)
+			isInt[i] = layout.schema().type(fields.get(i)) == INTEGER;
+		tx.pin(blk);
+		page = tx.pageForScan(blk);
+	}
+
+	public int getInt(int slot, String fldname) {
+		return (Integer) getVal(slot, fldname);
+	}
+
+	public String getString(int slot, String fldname) {
+		return (String) getVal(slot, fldname);
+	}
+
+	public void setInt(int slot, String fldname, int val) {
+		setVal(slot, fldname, val, NOT_NULL);
+	}
+
+	public void setString(int slot, String fldname, String val) {
+		setVal(slot, fldname, val, NOT_NULL);
+	}
+
+	public void delete(int slot) {
+		finishInserts();
+		tx.xLockRecord(blk, slot);
+		if (isMoved(slot))
+			moved(slot, true, (p, s) -> p.write(s, EMPTY, 0, new byte[0]));
+		write(slot, EMPTY, 0, new byte[0]);
+	}
+
+	/**
+	 * Format a new block with an empty directory and an empty heap. These values
+	 * are not logged, because the old values are meaningless.
+	 */
+	public void format() {
+		tx.setInt(blk, NUM_SLOTS, 0, false);
+		tx.setInt(blk, HEAP_START, tx.blockSize(), false);
+	}
+
+	public int nextAfter(int slot) {
+		finishInserts();
+		while ((slot = searchAfter(slot, USED)) >= 0) {
+			lockRecord(slot);
+			if (status(header(slot)) == USED && (moveBits(slot) & MOVED_IN) == 0)
+				return slot;
+		}
+		return -1;
+	}
+
+	/**
+	 * Find an empty slot after the specified one, or a new slot at the end of the
+	 * directory, and start a new record in it. The free space of the block is
+	 * checked without locking; if it looks large enough for a record of the
+	 * maximum size, the block is XLocked and checked again. The record starts out
+	 * with every field holding its default value, and is only written to the block
+	 * by {@link #finishInsert()}.
+	 *
+	 * @param slot the slot to search after
+	 * @return the new record's slot, or -1 if the block is full
+	 */
+	public int insertAfter(int slot) {
+		finishInserts();
+		int newslot = findSlot(slot, layout.slotSize());
+		if (newslot < 0)
+			return -1;
+		tx.xLockBlock(blk);
+		newslot = findSlot(slot, layout.slotSize());
+		if (newslot >= 0) {
+			pending = new Object[isInt.length];
+			for (int i = 0; i < isInt.length; i++)
+				pending[i] = isInt[i] ? (Object) 0 : "";
+			pendingflag = USED;
+			pendingslot = newslot;
+			tx.deferInsert(blk, newslot, this::finishInsert);
+		}
+		return newslot;
+	}
+
+	public void finishInsert() {
+		if (pending != null) {
+			byte[] rec = encode(pending);
+			int slot = pendingslot;
+			pending = null;
+			pendingslot = -1;
+			if (tx.endInsert(blk, slot) && !write(slot, pendingflag, 0, rec))
+				throw new RuntimeException("no room in " + blk + " for the record in slot " + slot);
+		}
+	}
+
+	public BlockId block() {
+		return blk;
+	}
+
+	public void setNull(int slot, String fldname) {
+		setVal(slot, fldname, null, IS_NULL);
+	}
+
+	public void setNonNull(int slot, String fldname) {
+		if (slot == pendingslot)
+			pendingflag = setBitVal(pendingflag, layout.bitPosition(fldname), NOT_NULL);
+		else {
+			tx.xLockRecord(blk, slot);
+			int flag = setBitVal(flagOf(slot), layout.bitPosition(fldname), NOT_NULL);
+			update(slot, flag, recordOf(slot));
+		}
+	}
+
+	public boolean isNull(int slot, String fldname) {
+		if (slot != pendingslot)
+			lockRecord(slot);
+		return getBitVal(flagOf(slot), layout.bitPosition(fldname)) == IS_NULL;
+	}
+
+	// Private auxiliary methods
+
+	/**
+	 * Write the records that the transaction has started in the block, whether in
+	 * this record page or in another one, so that the block shows them.
+	 */
+	private void finishInserts() {
+		finishInsert();
+		tx.finishInserts(blk);
+	}
+
+	private Object getVal(int slot, String fldname) {
+		int i = layout.fieldIndex(fldname);
+		if (slot == pendingslot)
+			return pending[i];
+		lockRecord(slot);
+		return decode(recordOf(slot), i + 1)[i];
+	}
+
+	/**
+	 * Store the value of a field and set its null bit. A null value leaves the
+	 * field holding its default value, which takes the least space.
+	 */
+	private void setVal(int slot, String fldname, Object val, int isNull) {
+		int i = layout.fieldIndex(fldname);
+		int bitPos = layout.bitPosition(fldname);
+		if (val == null)
+			val = isInt[i] ? (Object) 0 : "";
+		if (slot == pendingslot) {
+			pending[i] = val;
+			pendingflag = setBitVal(pendingflag, bitPos, isNull);
+			return;
+		}
+		tx.xLockRecord(blk, slot);
+		Object[] vals = decode(recordOf(slot), isInt.length);
+		vals[i] = val;
+		update(slot, setBitVal(flagOf(slot), bitPos, isNull), encode(vals));
+	}
+
+	/**
+	 * Write the specified header and record into the slot, wherever its record is
+	 * stored. A record that no longer fits in its block is moved by
+	 * {@link #relocate(int, int, byte[])}. The caller holds an XLock on the slot's
+	 * record.
+	 */
+	private void update(int slot, int flag, byte[] rec) {
+		if (isMoved(slot)) {
+			if (moved(slot, true, (p, s) -> p.write(s, flag, MOVED_IN, rec)))
+				return;
+			moved(slot, true, (p, s) -> p.write(s, EMPTY, 0, new byte[0]));
+		}
+		else if (write(slot, flag, 0, rec))
+			return;
+		relocate(slot, flag, rec);
+	}
+
+	/**
+	 * Move the record of the slot to another block of the table and leave a
+	 * forwarding record in the slot. As for an insertion by {@link TableScan}, the
+	 * table's free-space map gives the blocks that may have room, so the full
+	 * blocks are skipped without being read. A block that looks like it has room
+	 * is XLocked and checked again, and is marked full if it has none, since the
+	 * record is no larger than the records an insertion makes room for. If no
+	 * block has room, a new block is appended.
+	 */
+	private void relocate(int slot, int flag, byte[] rec) {
+		if (DIRECTORY + ENTRY_SIZE + rec.length > tx.blockSize())
+			throw new RuntimeException("the record in slot " + slot + " of " + blk + " is larger than a block");
+		String filename = blk.fileName();
+		String tblname = filename.substring(0, filename.length() - ".tbl".length());
+		FreeSpaceMap freeSpace = new FreeSpaceMap(tx, tblname);
+		int size = tx.size(filename);
+		int blknum = freeSpace.findRoom(0, size);
+		while (true) {
+			if (blknum == blk.number()) {
+				blknum = freeSpace.findRoom(blknum + 1, size);
+				continue;
+			}
+			BlockId target = (blknum >= 0) ? new BlockId(filename, blknum) : tx.append(filename);
+			SlottedRecordPage p = new SlottedRecordPage(tx, target, layout);
+			try {
+				if (blknum < 0)
+					p.format();
+				int newslot = p.claimSlot(rec.length);
+				if (newslot >= 0 && p.write(newslot, flag, MOVED_IN, rec)) {
+					ByteBuffer bb = ByteBuffer.allocate(2 * Integer.BYTES);
+					bb.putInt(target.number()).putInt(newslot);
+					if (!write(slot, USED, MOVED_OUT, bb.array()))
+						throw new RuntimeException("no room in " + blk + " for the record in slot " + slot);
+					return;
+				}
+			}
+			finally {
+				tx.unpin(target);
+			}
+			if (blknum >= 0) {
+				freeSpace.setFull(blknum, true);
+				blknum = freeSpace.findRoom(blknum + 1, size);
+			}
+		}
+	}
+
+	/**
+	 * Return an empty slot, or the next new slot, if the block has room for a
+	 * record of the specified length; otherwise return -1. The records that the
+	 * transaction has started in the block are written first, so that their slots
+	 * are not taken, and the block is XLocked before it is checked again.
+	 */
+	private int claimSlot(int length) {
+		finishInserts();
+		if (findSlot(-1, length) < 0)
+			return -1;
+		tx.xLockBlock(blk);
+		return findSlot(-1, length);
+	}
+
+	/**
+	 * Apply the action to the record page and slot that the record of the
+	 * specified slot was moved to, after SLocking or XLocking that record.
+	 */
+	private <T> T moved(int slot, boolean xlock, BiFunction<SlottedRecordPage, Integer, T> action) {
+		ByteBuffer bb = ByteBuffer.wrap(record(slot));
+		BlockId target = new BlockId(blk.fileName(), bb.getInt());
+		int newslot = bb.getInt();
+		SlottedRecordPage p = new SlottedRecordPage(tx, target, layout);
+		try {
+			if (xlock)
+				tx.xLockRecord(target, newslot);
+			else
+				p.lockRecord(newslot);
+			return action.apply(p, newslot);
+		}
+		finally {
+			tx.unpin(target);
+		}
+	}
+
+	private boolean isMoved(int slot) {
+		return (moveBits(slot) & MOVED_OUT) != 0;
+	}
+
+	/**
+	 * Return the header of the slot's record, wherever the record is stored.
+	 */
+	private int flagOf(int slot) {
+		return isMoved(slot) ? moved(slot, false, (p, s) -> p.header(s)) : header(slot);
+	}
+
+	/**
+	 * Return the bytes of the slot's record, wherever the record is stored.
+	 */
+	private byte[] recordOf(int slot) {
+		return isMoved(slot) ? moved(slot, false, (p, s) -> p.record(s)) : record(slot);
+	}
+
+	/**
+	 * Write the specified header and record into the slot, moving the records of
+	 * the later slots if the record changes size, and log the change. The
+	 * specified MOVED_IN or MOVED_OUT bit is stored in the length word. The caller
+	 * holds an XLock on the slot's record; if the change needs more, the block is
+	 * XLocked before its directory and heap are read. Nothing is written if the
+	 * block has no room for the record.
+	 *
+	 * @return false if the block has no room for the record
+	 */
+	private boolean write(int slot, int flag, int moveBits, byte[] rec) {
+		int numslots = readInt(NUM_SLOTS);
+		boolean isNew = slot >= numslots;
+		if (isNew || recordLength(slot) != rec.length) {
+			tx.xLockBlock(blk);
+			numslots = readInt(NUM_SLOTS);
+			isNew = slot >= numslots;
+		}
+		int heap = readInt(HEAP_START);
+		int oldlen = isNew ? 0 : recordLength(slot);
+		int end = isNew ? heap : recordEnd(slot);
+		int off = end - oldlen;
+		int delta = rec.length - oldlen;
+		int newheap = heap - delta;
+		if (newheap < DIRECTORY + Math.max(numslots, slot + 1) * ENTRY_SIZE)
+			return false;
+
+		SlotUpdate img = new SlotUpdate(entry(slot), flag);
+		img.setInt(entry(slot) + Integer.BYTES, rec.length | moveBits);
+		if (isNew)
+			img.setInt(NUM_SLOTS, slot + 1);
+		if (delta != 0)
+			img.setInt(HEAP_START, newheap);
+		if (isNew || status(header(slot)) == EMPTY)
+			tx.insertSlot(blk, img);
+		else if (status(flag) == EMPTY)
+			tx.deleteSlot(blk, img);
+		else
+			tx.updateSlot(blk, img);
+
+		// the records of the later slots, followed by the new record
+		byte[] bytes = rec;
+		int pos = off;
+		if (delta != 0) {
+			bytes = new byte[end - newheap];
+			System.arraycopy(readRaw(heap, off - heap), 0, bytes, 0, off - heap);
+			System.arraycopy(rec, 0, bytes, off - heap, rec.length);
+			pos = newheap;
+		}
+		int chunk = tx.blockSize() / 4;
+		for (int i = 0; i < bytes.length; i += chunk) {
+			SlotUpdate part = new SlotUpdate(entry(slot), flag);
+			part.setBytes(pos + i, Arrays.copyOfRange(bytes, i, Math.min(i + chunk, bytes.length)));
+			tx.updateSlot(blk, part);
+		}
+		return true;
+	}
+
+	/**
+	 * Return the first slot after the specified one whose header has the
+	 * specified flag. The directory is read in one piece, without locking; a page
+	 * read directly is searched in place.
+	 */
+	private int searchAfter(int slot, int flag) {
+		int numslots = readInt(NUM_SLOTS);
+		if (slot + 1 >= numslots)
+			return -1;
+		if (page != null) {
+			for (slot++; slot < numslots; slot++)
+				if (status(page.getInt(entry(slot))) == flag)
+					return slot;
+			return -1;
+		}
+		ByteBuffer dir = ByteBuffer.wrap(readRaw(DIRECTORY, numslots * ENTRY_SIZE));
+		for (slot++; slot < numslots; slot++)
+			if (status(dir.getInt(slot * ENTRY_SIZE)) == flag)
+				return slot;
+		return -1;
+	}
+
+	/**
+	 * Return an empty slot after the specified one, or the next new slot, if the
+	 * block has room for a record of the specified size in it; otherwise return -1.
+	 */
+	private int findSlot(int slot, int size) {
+		int numslots = readInt(NUM_SLOTS);
+		int free = readInt(HEAP_START) - (DIRECTORY + numslots * ENTRY_SIZE);
+		int newslot = searchAfter(slot, EMPTY);
+		if (newslot < 0) {
+			newslot = numslots;
+			free -= ENTRY_SIZE;
+		}
+		return (free >= size) ? newslot : -1;
+	}
+
+	/**
+	 * Return the bytes of the slot's record. The position and length are kept
+	 * within the block, so that a record read without a lock, by an optimistic
+	 * transaction, never fails even if it is being moved.
+	 */
+	private byte[] record(int slot) {
+		int end = Math.max(0, Math.min(recordEnd(slot), tx.blockSize()));
+		int len = Math.max(0, Math.min(recordLength(slot), end));
+		return readRaw(end - len, len);
+	}
+
+	/**
+	 * Return the offset just past the slot's record, which is where the records
+	 * of the earlier slots begin. The directory entries are read in one piece.
+	 */
+	private int recordEnd(int slot) {
+		ByteBuffer dir = ByteBuffer.wrap(readRaw(DIRECTORY, slot * ENTRY_SIZE));
+		int end = tx.blockSize();
+		for (int s = 0; s < slot; s++)
+			end -= dir.getInt(s * ENTRY_SIZE + Integer.BYTES) & LENGTH_BITS;
+		return end;
+	}
+
+	/**
+	 * Return EMPTY or USED, as the specified header says.
+	 */
+	private int status(int header) {
+		return header & STATUS_BIT;
+	}
+
+	private int header(int slot) {
+		if (slot == pendingslot)
+			return pendingflag;
+		return readInt(entry(slot));
+	}
+
+	private int recordLength(int slot) {
+		return readInt(entry(slot) + Integer.BYTES) & LENGTH_BITS;
+	}
+
+	private int moveBits(int slot) {
+		if (slot == pendingslot)
+			return 0;
+		return readInt(entry(slot) + Integer.BYTES) & ~LENGTH_BITS;
+	}
+
+	private int entry(int slot) {
+		return DIRECTORY + slot * ENTRY_SIZE;
+	}
+
+	private void lockRecord(int slot) {
+		if (page == null)
+			tx.sLockRecord(blk, slot);
+	}
+
+	private int readInt(int offset) {
+		return (page != null) ? page.getInt(offset) : tx.getInt(blk, offset, false);
+	}
+
+	private byte[] readRaw(int offset, int length) {
+		return (page != null) ? page.getRaw(offset, length) : tx.getRaw(blk, offset, length);
+	}
+
+	/**
+	 * Decode the values of the first fields of a record. A string is stored like
+	 * {@link Page#setString(int, String)} stores it. A record cut short yields
+	 * default values instead of failing.
+	 */
+	private Object[] decode(byte[] rec, int count) {
+		Object[] vals = new Object[isInt.length];
+		ByteBuffer bb = ByteBuffer.wrap(rec);
+		for (int i = 0; i < count; i++) {
+			if (isInt[i])
+				vals[i] = (bb.remaining() >= Integer.BYTES) ? bb.getInt() : 0;
+			else {
+				StringBuilder sb = new StringBuilder();
+				char c;
+				while (bb.remaining() >= Character.BYTES && (c = bb.getChar()) != '\0')
+					sb.append(c);
+				vals[i] = sb.toString();
+			}
+		}
+		return vals;
+	}
+
+	private byte[] encode(Object[] vals) {
+		int size = 0;
+		for (int i = 0; i < vals.length; i++)
+			size += isInt[i] ? Integer.BYTES : Page.maxLength(((String) vals[i]).length());
+		ByteBuffer bb = ByteBuffer.allocate(size);
+		for (int i = 0; i < vals.length; i++) {
+			if (isInt[i])
+				bb.putInt((Integer) vals[i]);
+			else {
+				String s = (String) vals[i];
+				for (int j = 0; j < s.length(); j++)
+					bb.putChar(s.charAt(j));
+				bb.putChar('\0');
+			}
+		}
+		return bb.array();
+	}
+
+	private int getBitVal(int val, int bitpos) {
+		return (val >> bitpos) % 2;
+	}
+
+	private int setBitVal(int val, int bitpos, int flag) {
+		int mask = (1 << bitpos);
+		if (flag == 0)
+			return val & ~mask;
+		else
+			return val | mask;
+	}
+}
@@ -14,26 +14,46 @@ public class TableScan implements UpdateScan {
 	private Transaction tx;
 	private Layout layout;
 	private RecordPage rp;
+	private FreeSpaceMap freeSpace;
 	private String filename;
 	private int currentslot;
 
 	public TableScan(Transaction tx, String tblname, Layout layout) {
+		this(tx, tblname, layout, false);
+	}
+
+	/**
+	 * Create a scan of the specified table. A scan that will read the entire table
+	 * can lock the table as a whole, instead of locking each block it reads. An
+	 * empty table is given its first block right away, unless the transaction is
+	 * read-only and cannot write one; the scan then has no current block, and
+	 * finds no records.
+	 * 
+	 * @param locktable whether to SLock the whole table
+	 */
+	public TableScan(Transaction tx, String tblname, Layout layout, boolean locktable) {
 		this.tx = tx;
 		this.layout = layout;
 		filename = tblname + ".tbl";
-		if (tx.size(filename) == 0)
-			moveToNewBlock();
-		else
+		freeSpace = new FreeSpaceMap(tx, tblname);
+		if (locktable)
+			tx.sLockFile(filename);
+		if (tx.size(filename) > 0)
 			moveToBlock(0);
+		else if (!tx.isReadOnly())
+			moveToNewBlock();
 	}
 
 	// Methods that implement Scan
 
 	public void beforeFirst() {
-		moveToBlock(0);
+		if (rp != null)
+			moveToBlock(0);
 	}
 
 	public boolean next() {
+		if (rp == null)
+			return false;
 		currentslot = rp.nextAfter(currentslot);
 		while (currentslot < 0) {
 			if (atLastBlock())
@@ -44,6 +64,30 @@ public class TableScan implements UpdateScan {
 		return true;
 	}
 
+	/**
+	 * Read the next records of the table into the batch, until it is full or the
+	 * table has no more records. Each block's records are read together by its
+	 * record page, so only the specified fields are decoded. As with
+	 * {@link #next()}, the scan must not be read again once it has returned false.
+	 * 
+	 * @param batch  the batch, which must have the specified fields
+	 * @param fields the fields to read
+	 * @return false if the table has no more records
+	 */
+	public boolean readInto(ColumnBatch batch, String[] fields) {
+		if (rp == null)
+			return false;
+		while (!batch.isFull()) {
+			currentslot = rp.readInto(currentslot, batch, fields);
+			if (currentslot < 0) {
+				if (atLastBlock())
+					return false;
+				moveToBlock(rp.block().number() + 1);
+			}
+		}
+		return true;
+	}
+
 	// Assignment 5 methods
 	// Part 2
 	public boolean isNull(String fldname) {
@@ -79,8 +123,11 @@ public class TableScan implements UpdateScan {
 	}
 
 	public void close() {
-		if (rp != null)
+		if (rp != null) {
+			rp.finishInsert();
+			tx.leaveBlock(rp.block());
 			tx.unpin(rp.block());
+		}
 	}
 
 	// Methods that implement UpdateScan
@@ -105,25 +152,56 @@ public class TableScan implements UpdateScan {
 
 	}
 
+	/**
+	 * Insert a new record somewhere after the current record. If the current block
+	 * has no room, the table's free-space map gives the next block that has, or
+	 * else a new block is appended, so the full blocks of the table are skipped
+	 * without being read. A block found to be full is marked so in the map. Since
+	 * a rollback frees the slot of the new record again, the block is then marked
+	 * as having room.
+	 */
 	public void insert() {
-		currentslot = rp.insertAfter(currentslot);
+		if (rp == null)
+			moveToNewBlock(); // rejected, since the transaction is read-only
+		int blknum = rp.block().number();
+		boolean fromStart = currentslot < 0;
+		currentslot = freeSpace.hasRoom(blknum) ? rp.insertAfter(currentslot) : -1;
 		while (currentslot < 0) {
-			if (atLastBlock())
+			if (fromStart)
+				freeSpace.setFull(blknum, true);
+			int size = tx.size(filename);
+			int next = freeSpace.findRoom(blknum + 1, size);
+			if (next < 0)
+				next = freeSpace.findRoom(0, blknum);
+			if (next < 0)
 				moveToNewBlock();
 			else
-				moveToBlock(rp.block().number() + 1);
+				moveToBlock(next);
+			blknum = rp.block().number();
+			fromStart = true;
 			currentslot = rp.insertAfter(currentslot);
 		}
+		BlockId blk = rp.block();
+		tx.onRollback(blk, () -> freeSpace.setFull(blk.number(), false));
 	}
 
+	/**
+	 * Delete the current record, and mark its block in the free-space map as
+	 * having room. The block is marked again at commit, since an insertion that
+	 * found the slot of the deleted record still locked meanwhile may have marked
+	 * the block full.
+	 */
 	public void delete() {
 		rp.delete(currentslot);
+		BlockId blk = rp.block();
+		freeSpace.setFull(blk.number(), false);
+		tx.onCommit(blk, () -> freeSpace.setFull(blk.number(), false));
 	}
 
 	public void moveToRid(RID rid) {
 		close();
 		BlockId blk = new BlockId(filename, rid.blockNumber());
-		rp = new RecordPage(tx, blk, layout);
+		rp = RecordPage.open(tx, blk, layout);
 		currentslot = rid.slot();
 	}
 
@@ -136,14 +214,14 @@ public class TableScan implements UpdateScan {
 	private void moveToBlock(int blknum) {
 		close();
 		BlockId blk = new BlockId(filename, blknum);
-		rp = new RecordPage(tx, blk, layout);
+		rp = RecordPage.open(tx, blk, layout);
 		currentslot = -1;
 	}
 
 	private void moveToNewBlock() {
 		close();
 		BlockId blk = tx.append(filename);
-		rp = new RecordPage(tx, blk, layout);
+		rp = RecordPage.open(tx, blk, layout);
 		rp.format();
 		currentslot = -1;
 	}
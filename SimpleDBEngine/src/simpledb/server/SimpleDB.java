@@ -5,6 +5,8 @@ import simpledb.file.FileMgr;
 import simpledb.log.LogMgr;
 import simpledb.buffer.BufferMgr;
 import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.*;
+import simpledb.tx.recovery.CheckpointScheduler;
 import simpledb.metadata.MetadataMgr;
 import simpledb.plan.*;
 import simpledb.index.planner.IndexUpdatePlanner;
@@ -12,6 +14,15 @@ import simpledb.opt.HeuristicQueryPlanner;
 
 /**
  * The class that configures the system.
+ * <p>
+ * The files of a database are not compatible with those
+ * of the databases created before the log was split into
+ * segments: the log is now kept in the files LOG_FILE.0,
+ * LOG_FILE.1, ..., each record block starts with an
+ * occupancy bitmap, and the catalog records the format of
+ * each table. There is no migration, so opening a database
+ * that still has the single file LOG_FILE fails, instead of
+ * misreading it.
  * 
  * @author Edward Sciore
  */
@@ -19,12 +30,18 @@ public class SimpleDB {
    public static int BLOCK_SIZE = 400;
    public static int BUFFER_SIZE = 8;
    public static String LOG_FILE = "simpledb.log";
+   public static int CHECKPOINT_LOG_RECORDS = 1000;
+   public static long CHECKPOINT_INTERVAL_MS = 60000;
+   public static int RECOVERY_THREADS = Runtime.getRuntime().availableProcessors();
+   public static DeadlockPolicy DEADLOCK_POLICY = DeadlockPolicy.WAIT_DIE;
+   public static int LOCK_ESCALATION_THRESHOLD = 1000;
 
    private  FileMgr     fm;
    private  BufferMgr   bm;
    private  LogMgr      lm;
    private  MetadataMgr mdm;
    private  Planner planner;
+   private  CheckpointScheduler ckptScheduler;
 
    /**
     * A constructor useful for debugging.
@@ -34,14 +51,20 @@ public class SimpleDB {
     */
    public SimpleDB(String dirname, int blocksize, int buffsize) {
       File dbDirectory = new File(dirname);
+      if (new File(dbDirectory, LOG_FILE).exists())
+         throw new RuntimeException("database " + dirname
+               + " was created by an earlier version of SimpleDB and cannot be opened");
       fm = new FileMgr(dbDirectory, blocksize);
       lm = new LogMgr(fm, LOG_FILE);
       bm = new BufferMgr(fm, lm, buffsize); 
+      ConcurrencyMgr.setDeadlockPolicy(DEADLOCK_POLICY);
+      ConcurrencyMgr.setEscalationThreshold(LOCK_ESCALATION_THRESHOLD);
    }
    
    /**
     * A simpler constructor for most situations. Unlike the
-    * 3-arg constructor, it also initializes the metadata tables.
+    * 3-arg constructor, it also initializes the metadata tables
+    * and starts the background checkpoint scheduler.
     * @param dirname the name of the database directory
     */
    public SimpleDB(String dirname) {
@@ -52,7 +75,7 @@ public class SimpleDB {
          System.out.println("creating new database");
       else {
          System.out.println("recovering existing database");
-         tx.recover();
+         tx.recover(RECOVERY_THREADS);
       }
       mdm = new MetadataMgr(isnew, tx);
       QueryPlanner qp = new BasicQueryPlanner(mdm);
@@ -61,6 +84,8 @@ public class SimpleDB {
 //    UpdatePlanner up = new IndexUpdatePlanner(mdm);
       planner = new Planner(qp, up);
       tx.commit();
+      ckptScheduler = new CheckpointScheduler(lm, bm, CHECKPOINT_LOG_RECORDS, CHECKPOINT_INTERVAL_MS);
+      ckptScheduler.start();
    }
    
    /**
@@ -70,6 +95,22 @@ public class SimpleDB {
    public Transaction newTx() {
       return new Transaction(fm, lm, bm);
    }
+
+   /**
+    * Creates an updating transaction that uses the specified
+    * concurrency control scheme.
+    */
+   public Transaction newTx(ConcurrencyControl cc) {
+      return new Transaction(fm, lm, bm, cc);
+   }
+
+   /**
+    * Creates a read-only transaction, which reads a snapshot
+    * of the database as of its creation without taking locks.
+    */
+   public Transaction newReadOnlyTx() {
+      return new Transaction(fm, lm, bm, true);
+   }
    
    public MetadataMgr mdMgr() {
       return mdm;
@@ -6,11 +6,16 @@ import simpledb.buffer.*;
 
 /**
  * Manage the transaction's currently-pinned buffers. 
+ * Each pinned block has one entry, holding its buffer and
+ * the number of times the transaction has pinned it.
+ * Only the first pin of a block goes to the buffer manager,
+ * and only the last unpin releases the buffer, so pinning
+ * a block that the transaction already holds, looking up its
+ * buffer and unpinning it all take constant time.
  * @author Edward Sciore
  */
 class BufferList {
-   private Map<BlockId,Buffer> buffers = new HashMap<>();
-   private List<BlockId> pins = new ArrayList<>();
+   private Map<BlockId,PinnedFrame> frames = new HashMap<>();
    private BufferMgr bm;
   
    public BufferList(BufferMgr bm) {
@@ -25,40 +30,59 @@ class BufferList {
     * @return the buffer pinned to that block
     */
    Buffer getBuffer(BlockId blk) {
-      return buffers.get(blk);
+      PinnedFrame frame = frames.get(blk);
+      return (frame == null) ? null : frame.buff;
    }
    
    /**
     * Pin the block and keep track of the buffer internally.
+    * The buffer manager is only asked for the buffer if the
+    * transaction does not already have the block pinned.
     * @param blk a reference to the disk block
     */
    void pin(BlockId blk) {
-      Buffer buff = bm.pin(blk);
-      buffers.put(blk, buff);
-      pins.add(blk);
+      PinnedFrame frame = frames.get(blk);
+      if (frame == null) {
+         frame = new PinnedFrame(bm.pin(blk));
+         frames.put(blk, frame);
+      }
+      frame.pins++;
    }
    
    /**
-    * Unpin the specified block.
+    * Unpin the specified block. The buffer is returned to
+    * the buffer manager once every pin of the block by this
+    * transaction has been undone.
     * @param blk a reference to the disk block
     */
    void unpin(BlockId blk) {
-      Buffer buff = buffers.get(blk);
-      bm.unpin(buff);
-      pins.remove(blk);
-      if (!pins.contains(blk))
-         buffers.remove(blk);
+      PinnedFrame frame = frames.get(blk);
+      frame.pins--;
+      if (frame.pins == 0) {
+         bm.unpin(frame.buff);
+         frames.remove(blk);
+      }
    }
    
    /**
     * Unpin any buffers still pinned by this transaction.
     */
    void unpinAll() {
-      for (BlockId blk : pins) {
-         Buffer buff = buffers.get(blk);
-         bm.unpin(buff);
+      for (PinnedFrame frame : frames.values())
+         bm.unpin(frame.buff);
+      frames.clear();
+   }
+   
+   /**
+    * A buffer pinned by the transaction, with the number
+    * of pins that the transaction holds on it.
+    */
+   private static class PinnedFrame {
+      private Buffer buff;
+      private int pins = 0;
+      
+      private PinnedFrame(Buffer buff) {
+         this.buff = buff;
       }
-      buffers.clear();
-      pins.clear();
    }
 }
\ No newline at end of file
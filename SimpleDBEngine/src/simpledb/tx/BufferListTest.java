@@ -0,0 +1,39 @@
+package simpledb.tx;
+
+import simpledb.server.SimpleDB;
+import simpledb.buffer.*;
+import simpledb.file.BlockId;
+
+public class BufferListTest {
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("bufferlisttest", 400, 3);
+      BufferMgr bm = db.bufferMgr();
+      BufferList list = new BufferList(bm);
+      BlockId blk1 = new BlockId("testfile", 1);
+      BlockId blk2 = new BlockId("testfile", 2);
+
+      // pinning a block again does not take another buffer
+      list.pin(blk1);
+      list.pin(blk1);
+      list.pin(blk1);
+      System.out.println("Available after pinning one block 3 times (should be 2): " + bm.available());
+
+      // the buffer stays pinned until the last unpin
+      list.unpin(blk1);
+      list.unpin(blk1);
+      Buffer buff = list.getBuffer(blk1);
+      System.out.println("Block 1 still pinned after 2 unpins (should be true): "
+            + (buff != null && buff.isPinned()));
+      list.unpin(blk1);
+      System.out.println("Block 1 buffer after the last unpin (should be null): " + list.getBuffer(blk1));
+      System.out.println("Available after the last unpin (should be 3): " + bm.available());
+
+      // unpinAll releases each buffer once, whatever its pin count
+      list.pin(blk1);
+      list.pin(blk2);
+      list.pin(blk2);
+      System.out.println("Available with two blocks pinned (should be 1): " + bm.available());
+      list.unpinAll();
+      System.out.println("Available after unpinAll (should be 3): " + bm.available());
+   }
+}
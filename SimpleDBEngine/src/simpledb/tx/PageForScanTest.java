@@ -0,0 +1,86 @@
+package simpledb.tx;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.record.*;
+import simpledb.tx.concurrency.ConcurrencyControl;
+
+public class PageForScanTest {
+   private static SimpleDB db;
+   private static BlockId blk;
+
+   public static void main(String[] args) {
+      db = new SimpleDB("pageforscantest", 400, 8);
+      blk = new BlockId("scanfile", 0);
+      Transaction tx = db.newTx();
+      if (tx.size("scanfile") == 0)
+         tx.append("scanfile");
+      tx.pin(blk);
+      tx.setInt(blk, 0, 1, true);
+      tx.commit();
+
+      // an updating transaction reads the buffer's page only under a covering lock
+      Transaction tx1 = db.newTx();
+      tx1.pin(blk);
+      System.out.println("Page without a lock (should be null): " + tx1.pageForScan(blk));
+      tx1.sLockFile("scanfile");
+      Page p = tx1.pageForScan(blk);
+      System.out.println("Value read from the page under a file SLock (should be 1): " + p.getInt(0));
+      tx1.setInt(blk, 0, 2, true);
+      System.out.println("Own write seen in the page (should be 2): " + p.getInt(0));
+      tx1.rollback();
+
+      // a read-only transaction gets a copy as of its snapshot
+      Transaction writer = db.newTx();
+      writer.pin(blk);
+      writer.setInt(blk, 0, 3, true);
+      Transaction rotx = db.newReadOnlyTx();
+      rotx.pin(blk);
+      p = rotx.pageForScan(blk);
+      System.out.println("Read-only page while a writer is active (should be 1): " + p.getInt(0));
+      writer.commit();
+      System.out.println("Read-only page after the writer commits (should be 1): " + p.getInt(0));
+      rotx.commit();
+
+      // an optimistic transaction reads value by value
+      Transaction otx = db.newTx(ConcurrencyControl.OPTIMISTIC);
+      otx.pin(blk);
+      System.out.println("Optimistic page (should be null): " + otx.pageForScan(blk));
+      otx.commit();
+
+      // a table scan gives the same rows whichever way it reads the blocks
+      Schema sch = new Schema();
+      sch.addIntField("a");
+      sch.addStringField("b", 10);
+      Layout layout = new Layout(sch);
+      tx = db.newTx();
+      TableScan ts = new TableScan(tx, "T", layout);
+      while (ts.next())
+         ts.delete();
+      for (int i=0; i<100; i++) {
+         ts.insert();
+         ts.setInt("a", i);
+         ts.setString("b", "rec" + i);
+      }
+      ts.close();
+      tx.commit();
+      System.out.println("Record locks (should be 4950 100): " + scan(db.newTx(), false, layout));
+      System.out.println("File SLock (should be 4950 100): " + scan(db.newTx(), true, layout));
+      System.out.println("Read-only (should be 4950 100): " + scan(db.newReadOnlyTx(), false, layout));
+   }
+
+   private static String scan(Transaction tx, boolean lockFile, Layout layout) {
+      if (lockFile)
+         tx.sLockFile("T.tbl");
+      TableScan ts = new TableScan(tx, "T", layout);
+      int sum = 0, matches = 0;
+      while (ts.next()) {
+         sum += ts.getInt("a");
+         if (ts.getString("b").equals("rec" + ts.getInt("a")))
+            matches++;
+      }
+      ts.close();
+      tx.commit();
+      return sum + " " + matches;
+   }
+}
@@ -0,0 +1,60 @@
+package simpledb.tx;
+
+import java.sql.*;
+import simpledb.server.SimpleDB;
+import simpledb.file.BlockId;
+import simpledb.log.LogMgr;
+import simpledb.jdbc.embedded.EmbeddedDriver;
+
+public class ReadOnlyTest {
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("readonlytest", 400, 8);
+      LogMgr lm = db.logMgr();
+      BlockId blk = new BlockId("rofile", 0);
+      Transaction tx = db.newTx();
+      tx.append("rofile");
+      tx.commit();
+
+      // a read-only transaction writes nothing to the log
+      int before = lm.latestLSN();
+      for (int i=0; i<10; i++) {
+         Transaction rotx = db.newReadOnlyTx();
+         rotx.pin(blk);
+         rotx.getInt(blk, 0);
+         rotx.unpin(blk);
+         rotx.commit();
+      }
+      System.out.println("Log records written by 10 read-only transactions (should be 0): "
+            + (lm.latestLSN() - before));
+
+      // a read-only connection rejects updates until it is made writable again
+      Connection conn = new EmbeddedDriver().connect("jdbc:simpledb:readonlyconntest", null);
+      Statement stmt = conn.createStatement();
+      stmt.executeUpdate("create table T(A int)");
+      stmt.executeUpdate("insert into T(A) values (1)");
+      int rows = count(stmt);
+      conn.setReadOnly(true);
+      System.out.println("Connection is read-only (should be true): " + conn.isReadOnly());
+      try {
+         stmt.executeUpdate("insert into T(A) values (2)");
+         System.out.println("Insert while read-only (should fail): succeeded");
+      }
+      catch (SQLException e) {
+         System.out.println("Insert while read-only (should fail): failed");
+      }
+      System.out.println("Rows seen while read-only (should be " + rows + "): " + count(stmt));
+      conn.setReadOnly(false);
+      stmt.executeUpdate("insert into T(A) values (2)");
+      System.out.println("Rows added by the two inserts (should be 1): " + (count(stmt) - rows));
+      conn.close();
+   }
+
+   private static int count(Statement stmt) throws SQLException {
+      ResultSet rs = stmt.executeQuery("select A from T");
+      int n = 0;
+      while (rs.next())
+         n++;
+      rs.close();
+      return n;
+   }
+}
@@ -0,0 +1,198 @@
+package simpledb.tx;
+
+import java.util.*;
+
+import simpledb.file.Page;
+
+/**
+ * The new contents of a record slot, which a transaction writes to its block
+ * with a single log record. An image consists of the slot's header (the
+ * empty/inuse flag together with the null bits) and the values of some of the
+ * slot's fields, each identified by its offset within the block.
+ * <p>
+ * A value can also be a range of raw bytes. A slotted page uses byte ranges to
+ * write variable-length records, and the other values of its image to update
+ * its slot directory and page header.
+ * <p>
+ * A value can also be a single bit, identified by its bit position in the block
+ * (see {@link Page#getBit(int)}) instead of a byte offset. Only that bit is
+ * written and restored, so transactions that hold locks on different records
+ * can change the bits of the same byte, such as the occupancy bits of their
+ * slots.
+ */
+public class SlotUpdate {
+	private int offset, flag;
+	private List<Integer> fldoffsets = new ArrayList<>();
+	private List<Object> vals = new ArrayList<>();
+
+	/**
+	 * Create an image of the slot at the specified offset that holds the
+	 * specified header and no field values.
+	 *
+	 * @param offset the offset of the slot within its block
+	 * @param flag   the slot's header
+	 */
+	public SlotUpdate(int offset, int flag) {
+		this.offset = offset;
+		this.flag = flag;
+	}
+
+	public int offset() {
+		return offset;
+	}
+
+	public int flag() {
+		return flag;
+	}
+
+	public void setFlag(int flag) {
+		this.flag = flag;
+	}
+
+	/**
+	 * Returns the number of field values in the image.
+	 */
+	public int size() {
+		return vals.size();
+	}
+
+	public int fieldOffset(int i) {
+		return fldoffsets.get(i);
+	}
+
+	public boolean isInt(int i) {
+		return vals.get(i) instanceof Integer;
+	}
+
+	public boolean isBytes(int i) {
+		return vals.get(i) instanceof byte[];
+	}
+
+	public boolean isBit(int i) {
+		return vals.get(i) instanceof Boolean;
+	}
+
+	public int getInt(int i) {
+		return (Integer) vals.get(i);
+	}
+
+	public String getString(int i) {
+		return (String) vals.get(i);
+	}
+
+	public byte[] getBytes(int i) {
+		return (byte[]) vals.get(i);
+	}
+
+	public boolean getBit(int i) {
+		return (Boolean) vals.get(i);
+	}
+
+	/**
+	 * Returns the value at the specified position: an Integer, a String, a byte
+	 * array or a Boolean.
+	 */
+	public Object value(int i) {
+		return vals.get(i);
+	}
+
+	/**
+	 * Returns the position of the value stored for the field at the specified
+	 * offset, or -1 if the image has no value for it.
+	 */
+	public int indexOf(int fldoffset) {
+		return fldoffsets.indexOf(fldoffset);
+	}
+
+	/**
+	 * Store an integer for the field at the specified offset, replacing any value
+	 * the image already holds for it.
+	 */
+	public void setInt(int fldoffset, int val) {
+		set(fldoffset, val);
+	}
+
+	/**
+	 * Store a string for the field at the specified offset, replacing any value
+	 * the image already holds for it.
+	 */
+	public void setString(int fldoffset, String val) {
+		set(fldoffset, val);
+	}
+
+	/**
+	 * Store a range of raw bytes starting at the specified offset, replacing any
+	 * value the image already holds for that offset.
+	 */
+	public void setBytes(int offset, byte[] val) {
+		set(offset, val);
+	}
+
+	/**
+	 * Store the bit at the specified bit position of the block, replacing any
+	 * value the image already holds for that position. The position is kept
+	 * apart from the byte offsets of the other values.
+	 */
+	public void setBit(int bitpos, boolean val) {
+		set(-1 - bitpos, val);
+	}
+
+	/**
+	 * Returns an image of the same slot and fields holding the values that the
+	 * specified page currently contains.
+	 *
+	 * @param p the contents of the slot's block
+	 * @return the current image of the slot
+	 */
+	public SlotUpdate before(Page p) {
+		SlotUpdate img = new SlotUpdate(offset, p.getInt(offset));
+		for (int i = 0; i < size(); i++) {
+			int fldoffset = fldoffsets.get(i);
+			if (isInt(i))
+				img.setInt(fldoffset, p.getInt(fldoffset));
+			else if (isBytes(i))
+				img.setBytes(fldoffset, p.getRaw(fldoffset, getBytes(i).length));
+			else if (isBit(i))
+				img.setBit(bitPosition(i), p.getBit(bitPosition(i)));
+			else
+				img.setString(fldoffset, p.getString(fldoffset));
+		}
+		return img;
+	}
+
+	/**
+	 * Write the header and the field values into the specified page.
+	 *
+	 * @param p the contents of the slot's block
+	 */
+	public void apply(Page p) {
+		p.setInt(offset, flag);
+		for (int i = 0; i < size(); i++) {
+			if (isInt(i))
+				p.setInt(fldoffsets.get(i), getInt(i));
+			else if (isBytes(i))
+				p.setRaw(fldoffsets.get(i), getBytes(i));
+			else if (isBit(i))
+				p.setBit(bitPosition(i), getBit(i));
+			else
+				p.setString(fldoffsets.get(i), getString(i));
+		}
+	}
+
+	/**
+	 * Returns the bit position of the bit value at the specified position.
+	 */
+	public int bitPosition(int i) {
+		return -1 - fldoffsets.get(i);
+	}
+
+	private void set(int fldoffset, Object val) {
+		int i = indexOf(fldoffset);
+		if (i >= 0)
+			vals.set(i, val);
+		else {
+			fldoffsets.add(fldoffset);
+			vals.add(val);
+		}
+	}
+}
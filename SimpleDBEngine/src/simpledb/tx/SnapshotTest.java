@@ -0,0 +1,73 @@
+package simpledb.tx;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.tx.concurrency.LockAbortException;
+
+public class SnapshotTest {
+   private static SimpleDB db;
+   private static BlockId blk;
+
+   public static void main(String[] args) {
+      db = new SimpleDB("snapshottest", 400, 8);
+      blk = new BlockId("snapfile", 0);
+      Transaction tx = db.newTx();
+      if (tx.size("snapfile") == 0)
+         tx.append("snapfile");
+      tx.pin(blk);
+      tx.setInt(blk, 0, 1, true);
+      tx.commit();
+
+      // a reader keeps seeing its snapshot while a younger writer updates and commits
+      Transaction reader = db.newReadOnlyTx();
+      reader.pin(blk);
+      System.out.println("Reader sees (should be 1): " + reader.getInt(blk, 0));
+      Transaction writer = db.newTx();
+      writer.pin(blk);
+      try {
+         writer.setInt(blk, 0, 2, true);
+         System.out.println("Writer updates the block the reader read (should succeed): ok");
+      }
+      catch (LockAbortException e) {
+         System.out.println("Writer updates the block the reader read (should succeed): aborted");
+      }
+      System.out.println("Reader sees while the writer is active (should be 1): " + reader.getInt(blk, 0));
+      writer.commit();
+      System.out.println("Reader sees after the writer commits (should be 1): " + reader.getInt(blk, 0));
+      Transaction later = db.newReadOnlyTx();
+      later.pin(blk);
+      System.out.println("Later reader sees (should be 2): " + later.getInt(blk, 0));
+      later.commit();
+
+      // a read-only transaction cannot write
+      try {
+         reader.setInt(blk, 0, 3, true);
+         System.out.println("Reader writes (should be rejected): ok");
+      }
+      catch (RuntimeException e) {
+         System.out.println("Reader writes (should be rejected): rejected");
+      }
+      reader.commit();
+
+      // a committed version is kept while an older snapshot needs it
+      VersionStore store = new VersionStore();
+      BlockId vblk = new BlockId("versionfile", 0);
+      Page p = new Page(400);
+      p.setInt(0, 20);
+      store.save(1, vblk, 0, 10);
+      long snapshot = store.beginSnapshot();
+      store.commit(1);
+      Page old = store.asOf(vblk, p, snapshot);
+      System.out.println("Snapshot sees the old value (should be 10): " + old.getInt(0));
+      System.out.println("Version purged while the snapshot is active (should be false): "
+            + (store.asOf(vblk, p, snapshot) == p));
+      store.endSnapshot(snapshot);
+      System.out.println("Version purged once the snapshot ends (should be true): "
+            + (store.asOf(vblk, p, snapshot) == p));
+
+      // without an older snapshot, a commit purges its versions right away
+      store.save(2, vblk, 0, 20);
+      store.commit(2);
+      System.out.println("Version purged at commit (should be true): " + (store.asOf(vblk, p, 0) == p));
+   }
+}
@@ -1,30 +1,52 @@
 package simpledb.tx;
 
 import java.util.*;
+
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 import simpledb.buffer.*;
 import simpledb.tx.recovery.*;
-import simpledb.tx.concurrency.ConcurrencyMgr;
+import simpledb.tx.concurrency.ConcurrencyControl;
+import simpledb.tx.concurrency.ConcurrencyStrategy;
+import simpledb.tx.concurrency.IsolationLevel;
 
 /**
  * Provide transaction management for clients, ensuring that all transactions
  * are serializable, recoverable, and in general satisfy the ACID properties.
+ * <p>
+ * A read-only transaction reads a snapshot of the database instead: it sees
+ * the changes of the transactions that committed before it started, and
+ * nothing else. It takes no locks, so it never waits for or aborts an updating
+ * transaction, and the updating transactions never wait for it. Every update
+ * saves the value it overwrites in the shared {@link VersionStore}, from which
+ * the snapshot's view of a block is rebuilt when needed.
+ * <p>
+ * An updating transaction runs at one of the {@link IsolationLevel}s, which is
+ * serializable unless the client chooses otherwise. It is isolated from the
+ * other transactions by a {@link ConcurrencyStrategy}: either it locks what it
+ * reads and writes, or it runs optimistically, keeping its writes private and
+ * making them only once it has been validated at commit.
  * 
  * @author Edward Sciore
  */
 public class Transaction {
-	private static int nextTxNum = 0;
+	private static TransactionTable txTable = new TransactionTable();
 	private static final int END_OF_FILE = -1;
+	private static VersionStore versions = new VersionStore();
 	private RecoveryMgr recoveryMgr;
-	private ConcurrencyMgr concurMgr;
+	private ConcurrencyStrategy concurMgr;
+	private WriteBuffer pending;
 	private BufferMgr bm;
 	private FileMgr fm;
 	private int txnum;
+	private TransactionTable.Entry entry;
 	private BufferList mybuffers;
-
-	private static final int CKPT_PERIOD = 5; // for hw 3
-	private static List<Integer> txs = new ArrayList<>(); // for hw 3
+	private boolean readOnly;
+	private long snapshot;
+	private IsolationLevel isolation = IsolationLevel.SERIALIZABLE;
+	private Map<BlockId, Map<Integer, Runnable>> deferredInserts = new HashMap<>();
+	private Map<Object, Runnable> commitActions = new HashMap<>();
+	private Map<Object, Runnable> rollbackActions = new HashMap<>();
 
 	/**
 	 * Create a new transaction and its associated recovery and concurrency
@@ -36,36 +58,74 @@ public class Transaction {
 	 * first.
 	 */
 	public Transaction(FileMgr fm, LogMgr lm, BufferMgr bm) {
-		this.fm = fm;
-		this.bm = bm;
-		txnum = nextTxNumber();
-		recoveryMgr = new RecoveryMgr(this, txnum, lm, bm);
-		concurMgr = new ConcurrencyMgr();
-		mybuffers = new BufferList(bm);
+		this(fm, lm, bm, false, ConcurrencyControl.LOCKING);
+	}
+
+	/**
+	 * Create a new transaction, which reads a snapshot of the database without
+	 * locking and rejects any update if it is read-only. A read-only transaction
+	 * has no recovery manager: it writes nothing to the log, neither when it starts
+	 * nor when it commits, so it never waits for a log flush.
+	 * 
+	 * @param readOnly whether the transaction is read-only
+	 */
+	public Transaction(FileMgr fm, LogMgr lm, BufferMgr bm, boolean readOnly) {
+		this(fm, lm, bm, readOnly, ConcurrencyControl.LOCKING);
+	}
 
-		checkpointIfNeeded(txnum); // added for hw3
-		txs.add(new Integer(txnum)); // added for hw3
-		System.out.println("new transaction: " + nextTxNum);
+	/**
+	 * Create a new updating transaction that uses the specified concurrency
+	 * control scheme.
+	 * 
+	 * @param cc the concurrency control scheme
+	 */
+	public Transaction(FileMgr fm, LogMgr lm, BufferMgr bm, ConcurrencyControl cc) {
+		this(fm, lm, bm, false, cc);
 	}
 
-	// New method for hw3. It is synchronized so that
-	// new txs must wait until the checkpoint is finished.
-	private synchronized void checkpointIfNeeded(int txnum) {
-		if (txnum % CKPT_PERIOD == 0)
-			recoveryMgr.checkpoint(txs);
+	private Transaction(FileMgr fm, LogMgr lm, BufferMgr bm, boolean readOnly, ConcurrencyControl cc) {
+		this.fm = fm;
+		this.bm = bm;
+		this.readOnly = readOnly;
+		if (readOnly)
+			snapshot = versions.beginSnapshot();
+		entry = txTable.begin(readOnly);
+		txnum = entry.txnum();
+		if (!readOnly)
+			recoveryMgr = new RecoveryMgr(this, txnum, lm, bm);
+		concurMgr = cc.newStrategy(txnum);
+		if (concurMgr.defersWrites())
+			pending = new WriteBuffer();
+		mybuffers = new BufferList(bm);
+		System.out.println("new transaction: " + txnum);
 	}
 
 	/**
-	 * Commit the current transaction. Flush all modified buffers (and their log
-	 * records), write and flush a commit record to the log, release all locks, and
-	 * unpin any pinned buffers.
+	 * Commit the current transaction. Write and flush a commit record to the log,
+	 * release all locks, and unpin any pinned buffers. Modified buffers are only
+	 * flushed if the transaction made unlogged changes; the others are written
+	 * whenever the buffer manager replaces them, and redone by recovery if needed.
+	 * A read-only transaction just ends its snapshot and unpins its buffers.
+	 * <p>
+	 * An optimistic transaction is first validated, and then makes its pending
+	 * writes as a locking transaction would have made them. If the validation
+	 * fails, the transaction is rolled back and the exception is rethrown.
 	 */
 	public void commit() {
-		recoveryMgr.commit();
+		for (BlockId blk : new ArrayList<>(deferredInserts.keySet()))
+			finishInserts(blk);
+		entry.setState(TransactionTable.State.COMMITTING);
+		if (pending != null)
+			install();
+		if (!readOnly)
+			recoveryMgr.commit();
+		for (Runnable action : commitActions.values())
+			action.run();
 		System.out.println("transaction " + txnum + " committed");
+		endVersions(false);
 		concurMgr.release();
 		mybuffers.unpinAll();
-		txs.remove(new Integer(txnum)); // added for hw3
+		txTable.end(txnum);
 	}
 
 	/**
@@ -74,11 +134,19 @@ public class Transaction {
 	 * unpin any pinned buffers.
 	 */
 	public void rollback() {
-		recoveryMgr.rollback();
+		deferredInserts.clear();
+		entry.setState(TransactionTable.State.ROLLING_BACK);
+		if (pending != null)
+			pending.clear();
+		if (!readOnly)
+			recoveryMgr.rollback();
+		for (Runnable action : rollbackActions.values())
+			action.run();
 		System.out.println("transaction " + txnum + " rolled back");
+		endVersions(true);
 		concurMgr.release();
 		mybuffers.unpinAll();
-		txs.remove(new Integer(txnum)); // added for hw3
+		txTable.end(txnum);
 	}
 
 	/**
@@ -88,8 +156,19 @@ public class Transaction {
 	 * begin.
 	 */
 	public void recover() {
+		recover(1);
+	}
+
+	/**
+	 * Recover the database as {@link #recover()} does, but replay the logged
+	 * changes on the specified number of threads, each handling its own blocks.
+	 * 
+	 * @param nthreads the number of recovery threads
+	 */
+	public void recover(int nthreads) {
+		checkWritable();
 		bm.flushAll(txnum);
-		recoveryMgr.recover();
+		recoveryMgr.recover(nthreads);
 	}
 
 	/**
@@ -121,9 +200,36 @@ public class Transaction {
 	 * @return the integer stored at that offset
 	 */
 	public int getInt(BlockId blk, int offset) {
-		concurMgr.sLock(blk, txnum);
+		return getInt(blk, offset, true);
+	}
+
+	/**
+	 * Return the integer value stored at the specified offset of the specified
+	 * block, locking the block only if asked to. A caller that does not lock the
+	 * block must already hold a lock that covers the value, such as a lock on the
+	 * record that contains it, or be prepared to check the value again once it
+	 * has one. The value is read while holding the buffer's shared latch, so a
+	 * concurrent write to another part of the block never leaves it half changed,
+	 * while other readers of the block are not held up.
+	 * 
+	 * @param blk       a reference to a disk block
+	 * @param offset    the byte offset within the block
+	 * @param lockBlock whether to obtain an SLock on the block first
+	 * @return the integer stored at that offset
+	 */
+	public int getInt(BlockId blk, int offset, boolean lockBlock) {
+		if (!readOnly) {
+			if (lockBlock)
+				concurMgr.sLock(blk, txnum);
+			concurMgr.noteRead(blk);
+		}
 		Buffer buff = mybuffers.getBuffer(blk);
-		return buff.contents().getInt(offset);
+		buff.latchShared();
+		try {
+			return contents(buff).getInt(offset);
+		} finally {
+			buff.unlatchShared();
+		}
 	}
 
 	/**
@@ -136,9 +242,156 @@ public class Transaction {
 	 * @return the string stored at that offset
 	 */
 	public String getString(BlockId blk, int offset) {
-		concurMgr.sLock(blk, txnum);
+		return getString(blk, offset, true);
+	}
+
+	/**
+	 * Return the string value stored at the specified offset of the specified
+	 * block, locking the block only if asked to, as
+	 * {@link #getInt(BlockId, int, boolean)} does.
+	 * 
+	 * @param blk       a reference to a disk block
+	 * @param offset    the byte offset within the block
+	 * @param lockBlock whether to obtain an SLock on the block first
+	 * @return the string stored at that offset
+	 */
+	public String getString(BlockId blk, int offset, boolean lockBlock) {
+		if (!readOnly) {
+			if (lockBlock)
+				concurMgr.sLock(blk, txnum);
+			concurMgr.noteRead(blk);
+		}
+		Buffer buff = mybuffers.getBuffer(blk);
+		buff.latchShared();
+		try {
+			return contents(buff).getString(offset);
+		} finally {
+			buff.unlatchShared();
+		}
+	}
+
+	/**
+	 * Return the specified number of bytes stored from the specified offset of the
+	 * specified block. The block is not locked: as with
+	 * {@link #getInt(BlockId, int, boolean)} without a block lock, the caller must
+	 * hold a lock that covers the bytes.
+	 * 
+	 * @param blk    a reference to a disk block
+	 * @param offset the byte offset within the block
+	 * @param length the number of bytes
+	 * @return the bytes stored at that offset
+	 */
+	public byte[] getRaw(BlockId blk, int offset, int length) {
+		if (!readOnly)
+			concurMgr.noteRead(blk);
+		Buffer buff = mybuffers.getBuffer(blk);
+		buff.latchShared();
+		try {
+			return contents(buff).getRaw(offset, length);
+		} finally {
+			buff.unlatchShared();
+		}
+	}
+
+	/**
+	 * Return a page that a scan can read the specified pinned block from directly,
+	 * without locking, latching or looking up the buffer for each value, or null
+	 * if the block must be read value by value. A read-only transaction gets a
+	 * private copy of the block as its snapshot sees it. An updating transaction
+	 * gets the buffer's page itself if it holds a lock that keeps the other
+	 * transactions from writing the block, such as the SLock on the file taken by
+	 * a full scan; its own writes to the block then show up in the page. The page
+	 * may be read until the block is unpinned.
+	 * 
+	 * @param blk a reference to the pinned block
+	 * @return the block's contents, or null
+	 */
+	public Page pageForScan(BlockId blk) {
 		Buffer buff = mybuffers.getBuffer(blk);
-		return buff.contents().getString(offset);
+		if (readOnly) {
+			buff.latchShared();
+			try {
+				Page p = contents(buff);
+				Page copy = new Page(new byte[p.size()]);
+				p.copyTo(copy);
+				return copy;
+			} finally {
+				buff.unlatchShared();
+			}
+		}
+		if (pending == null && concurMgr.coversReads(blk))
+			return buff.contents();
+		return null;
+	}
+
+	/**
+	 * Store the specified bytes from the specified offset of the specified block,
+	 * without logging them and without locking the block. Byte ranges are logged
+	 * as part of slot images; this method is only used to undo and redo them.
+	 * 
+	 * @param blk    a reference to the disk block
+	 * @param offset a byte offset within that block
+	 * @param val    the bytes to be stored
+	 */
+	public void setRaw(BlockId blk, int offset, byte[] val) {
+		checkWritable();
+		Buffer buff = mybuffers.getBuffer(blk);
+		buff.latchExclusive();
+		try {
+			recoveryMgr.unloggedUpdate(buff);
+			buff.contents().setRaw(offset, val);
+			buff.setModified(txnum, -1);
+		} finally {
+			buff.unlatchExclusive();
+		}
+	}
+
+	/**
+	 * Store a hint byte at the specified offset of the specified block, without
+	 * logging it and without locking the block. A hint, such as an entry of a
+	 * table's free-space map, may be lost or left out of date by a crash or a
+	 * rollback, and its readers cope with that. Unlike the unlogged writes of
+	 * {@link #setRaw(BlockId, int, byte[])}, it is therefore neither undone nor
+	 * flushed at commit; the buffer is written out whenever it is replaced.
+	 * 
+	 * @param blk    a reference to the disk block
+	 * @param offset a byte offset within that block
+	 * @param val    the byte to be stored
+	 */
+	public void setHint(BlockId blk, int offset, byte val) {
+		checkWritable();
+		Buffer buff = mybuffers.getBuffer(blk);
+		buff.latchExclusive();
+		try {
+			buff.contents().setRaw(offset, new byte[] { val });
+			buff.setModified(txnum, -1);
+		} finally {
+			buff.unlatchExclusive();
+		}
+	}
+
+	/**
+	 * Store the bit at the specified bit position of the specified block, without
+	 * logging it and without locking the block. Like
+	 * {@link #setRaw(BlockId, int, byte[])}, this method is only used to undo and
+	 * redo the bits of slot images. The bit's byte is read and written under the
+	 * buffer's latch, so the other bits of the byte are left as they are.
+	 * 
+	 * @param blk    a reference to the disk block
+	 * @param bitpos the bit position within that block
+	 * @param val    the bit to be stored
+	 */
+	public void setBit(BlockId blk, int bitpos, boolean val) {
+		checkWritable();
+		Buffer buff = mybuffers.getBuffer(blk);
+		buff.latchExclusive();
+		try {
+			recoveryMgr.unloggedUpdate(buff);
+			buff.contents().setBit(bitpos, val);
+			buff.setModified(txnum, -1);
+		} finally {
+			buff.unlatchExclusive();
+		}
 	}
 
 	/**
@@ -147,20 +400,30 @@ public class Transaction {
 	 * offset, puts it into an update log record, and writes that record to the log.
 	 * Finally, it calls the buffer to store the value, passing in the LSN of the
 	 * log record and the transaction's id.
+	 * <p>
+	 * An unlogged write takes no lock. It is only used to undo the transaction's
+	 * own changes, which are still covered by the locks taken to make them, and to
+	 * format a block that the transaction has appended and no other transaction
+	 * can see yet.
 	 * 
 	 * @param blk    a reference to the disk block
 	 * @param offset a byte offset within that block
 	 * @param val    the value to be stored
 	 */
 	public void setInt(BlockId blk, int offset, int val, boolean okToLog) {
-		concurMgr.xLock(blk, txnum);
-		Buffer buff = mybuffers.getBuffer(blk);
-		int lsn = -1;
+		checkWritable();
 		if (okToLog)
-			lsn = recoveryMgr.setInt(buff, offset, val);
-		Page p = buff.contents();
-		p.setInt(offset, val);
-		buff.setModified(txnum, lsn);
+			concurMgr.xLock(blk, txnum);
+		Buffer buff = mybuffers.getBuffer(blk);
+		if (okToLog && pending != null) {
+			buff.latchShared();
+			try {
+				pending.setInt(blk, buff.contents(), offset, val);
+			} finally {
+				buff.unlatchShared();
+			}
+		} else
+			writeInt(buff, offset, val, okToLog);
 	}
 
 	/**
@@ -168,34 +431,243 @@ public class Transaction {
 	 * first obtains an XLock on the block. It then reads the current value at that
 	 * offset, puts it into an update log record, and writes that record to the log.
 	 * Finally, it calls the buffer to store the value, passing in the LSN of the
-	 * log record and the transaction's id.
+	 * log record and the transaction's id. As with
+	 * {@link #setInt(BlockId, int, int, boolean)}, an unlogged write takes no lock.
 	 * 
 	 * @param blk    a reference to the disk block
 	 * @param offset a byte offset within that block
 	 * @param val    the value to be stored
 	 */
 	public void setString(BlockId blk, int offset, String val, boolean okToLog) {
-		concurMgr.xLock(blk, txnum);
-		Buffer buff = mybuffers.getBuffer(blk);
-		int lsn = -1;
+		checkWritable();
 		if (okToLog)
-			lsn = recoveryMgr.setString(buff, offset, val);
-		Page p = buff.contents();
-		p.setString(offset, val);
-		buff.setModified(txnum, lsn);
+			concurMgr.xLock(blk, txnum);
+		Buffer buff = mybuffers.getBuffer(blk);
+		if (okToLog && pending != null) {
+			buff.latchShared();
+			try {
+				pending.setString(blk, buff.contents(), offset, val);
+			} finally {
+				buff.unlatchShared();
+			}
+		} else
+			writeString(buff, offset, val, okToLog);
+	}
+
+	/**
+	 * Write a new record into the empty slot described by the specified image. The
+	 * header and all the field values are logged in one INSERTSLOT record.
+	 * <p>
+	 * The slot methods do not lock the block. The caller must hold an XLock on the
+	 * slot's record, or on its block or file, and the change is made while
+	 * holding the buffer's exclusive latch, so that other transactions can change
+	 * other slots of the same block at the same time.
+	 * 
+	 * @param blk a reference to the disk block
+	 * @param img the new contents of the slot
+	 */
+	public void insertSlot(BlockId blk, SlotUpdate img) {
+		setSlot(LogRecord.INSERTSLOT, blk, img);
+	}
+
+	/**
+	 * Note that a record page has started a new record in the specified slot, and
+	 * will only write it to the block later, by running the specified action.
+	 * Until then the slot is still empty in the block. So that another scan of
+	 * this transaction does not claim the slot or miss the record, and so that the
+	 * record is not lost if the scan is never closed, the transaction runs the
+	 * action itself from {@link #finishInserts(BlockId)} and at commit. The
+	 * started record is dropped at rollback.
+	 * 
+	 * @param blk    a reference to the disk block
+	 * @param slot   the slot of the new record
+	 * @param finish the action that writes the record
+	 */
+	public void deferInsert(BlockId blk, int slot, Runnable finish) {
+		deferredInserts.computeIfAbsent(blk, b -> new HashMap<>()).put(slot, finish);
+	}
+
+	/**
+	 * Run the specified action when the transaction commits, once its changes are
+	 * durable and before its locks are released. An action registered under the
+	 * key of an earlier one replaces it, so that a caller can register one action
+	 * per block however many records it changes there.
+	 * 
+	 * @param key    the key of the action
+	 * @param action the action to run
+	 */
+	public void onCommit(Object key, Runnable action) {
+		commitActions.put(key, action);
+	}
+
+	/**
+	 * Run the specified action when the transaction rolls back, once its changes
+	 * are undone and before its locks are released. As with
+	 * {@link #onCommit(Object, Runnable)}, a later action replaces an earlier one
+	 * with the same key.
+	 * 
+	 * @param key    the key of the action
+	 * @param action the action to run
+	 */
+	public void onRollback(Object key, Runnable action) {
+		rollbackActions.put(key, action);
+	}
+
+	/**
+	 * Note that the record started in the specified slot is about to be written,
+	 * which the caller must then do with {@link #insertSlot(BlockId, SlotUpdate)}.
+	 * 
+	 * @param blk  a reference to the disk block
+	 * @param slot the slot of the new record
+	 * @return false if the record must not be written, because the transaction
+	 *         has already written it or has ended
+	 */
+	public boolean endInsert(BlockId blk, int slot) {
+		Map<Integer, Runnable> inserts = deferredInserts.get(blk);
+		if (inserts == null || inserts.remove(slot) == null)
+			return false;
+		if (inserts.isEmpty())
+			deferredInserts.remove(blk);
+		return true;
+	}
+
+	/**
+	 * Write the records that the transaction has started in the specified block
+	 * and not yet written, whichever of its record pages started them.
+	 * 
+	 * @param blk a reference to the disk block
+	 */
+	public void finishInserts(BlockId blk) {
+		Map<Integer, Runnable> inserts = deferredInserts.get(blk);
+		if (inserts != null)
+			for (Runnable finish : new ArrayList<>(inserts.values()))
+				finish.run();
+	}
+
+	/**
+	 * Change the header of a slot and the field values held in the specified
+	 * image, logging the change in one UPDATESLOT record.
+	 * 
+	 * @param blk a reference to the disk block
+	 * @param img the changed part of the slot
+	 */
+	public void updateSlot(BlockId blk, SlotUpdate img) {
+		setSlot(LogRecord.UPDATESLOT, blk, img);
+	}
+
+	/**
+	 * Mark a slot as empty by writing the header held in the specified image,
+	 * logging the change in one DELETESLOT record.
+	 * 
+	 * @param blk a reference to the disk block
+	 * @param img the new header of the slot
+	 */
+	public void deleteSlot(BlockId blk, SlotUpdate img) {
+		setSlot(LogRecord.DELETESLOT, blk, img);
+	}
+
+	/**
+	 * Lock the whole specified file for reading. The transaction can then read any
+	 * block of the file without locking the block, and a later update of a block
+	 * locks the file in SIX mode. This is meant for scans that read every block.
+	 * The file is only locked at the serializable level; at the other levels the
+	 * scan locks the records it reads instead.
+	 * 
+	 * @param filename the name of the file
+	 */
+	public void sLockFile(String filename) {
+		if (!readOnly && isolation == IsolationLevel.SERIALIZABLE)
+			concurMgr.sLockFile(filename);
+	}
+
+	/**
+	 * Lock the whole specified file for reading and writing, so that none of its
+	 * blocks need to be locked individually.
+	 * 
+	 * @param filename the name of the file
+	 */
+	public void xLockFile(String filename) {
+		checkWritable();
+		concurMgr.xLockFile(filename);
+	}
+
+	/**
+	 * Obtain an SLock on the record in the specified slot of the specified block.
+	 * The block and its file are locked in IS mode, so other transactions can
+	 * still lock other records of the block.
+	 * 
+	 * @param blk  a reference to the disk block
+	 * @param slot the record's slot
+	 */
+	public void sLockRecord(BlockId blk, int slot) {
+		if (!readOnly)
+			concurMgr.sLockRecord(blk, slot);
+	}
+
+	/**
+	 * Obtain an XLock on the record in the specified slot of the specified block.
+	 * The block and its file are locked in IX mode, so other transactions can
+	 * still lock other records of the block.
+	 * 
+	 * @param blk  a reference to the disk block
+	 * @param slot the record's slot
+	 */
+	public void xLockRecord(BlockId blk, int slot) {
+		checkWritable();
+		concurMgr.xLockRecord(blk, slot);
+	}
+
+	/**
+	 * Obtain an XLock on the specified block, which covers every record in it. A
+	 * slotted page takes it before moving records within the block.
+	 * 
+	 * @param blk a reference to the disk block
+	 */
+	public void xLockBlock(BlockId blk) {
+		checkWritable();
+		concurMgr.xLock(blk, txnum);
+	}
+
+	/**
+	 * Obtain an XLock on the record in the specified slot of the specified block
+	 * if no other transaction holds a lock on it.
+	 * 
+	 * @param blk  a reference to the disk block
+	 * @param slot the record's slot
+	 * @return whether the record is now XLocked
+	 */
+	public boolean tryXLockRecord(BlockId blk, int slot) {
+		checkWritable();
+		return concurMgr.tryXLockRecord(blk, slot);
 	}
 
 	/**
 	 * Return the number of blocks in the specified file. This method first obtains
 	 * an SLock on the "end of the file", before asking the file manager to return
-	 * the file size.
+	 * the file size. Below the serializable level, the size is read without a
+	 * lock, since those levels allow other transactions to add rows meanwhile.
 	 * 
 	 * @param filename the name of the file
 	 * @return the number of blocks in the file
 	 */
 	public int size(String filename) {
-		BlockId dummyblk = new BlockId(filename, END_OF_FILE);
-		concurMgr.sLock(dummyblk, txnum);
+		return size(filename, true);
+	}
+
+	/**
+	 * Return the number of blocks in the specified file, locking the end of the
+	 * file only if asked to. The end of a file is not locked when no transaction
+	 * needs a stable size for it, as for a table's free-space map.
+	 * 
+	 * @param filename the name of the file
+	 * @param lockEnd  whether to obtain an SLock on the end of the file first
+	 * @return the number of blocks in the file
+	 */
+	public int size(String filename, boolean lockEnd) {
+		if (lockEnd && !readOnly && isolation == IsolationLevel.SERIALIZABLE) {
+			BlockId dummyblk = new BlockId(filename, END_OF_FILE);
+			concurMgr.sLock(dummyblk, txnum);
+		}
 		return fm.length(filename);
 	}
 
@@ -208,11 +680,37 @@ public class Transaction {
 	 * @return a reference to the newly-created disk block
 	 */
 	public BlockId append(String filename) {
-		BlockId dummyblk = new BlockId(filename, END_OF_FILE);
-		concurMgr.xLock(dummyblk, txnum);
+		return append(filename, true);
+	}
+
+	/**
+	 * Append a new block to the end of the specified file, locking the end of the
+	 * file only if asked to. A caller that does not lock it must keep concurrent
+	 * appends from interfering some other way.
+	 * 
+	 * @param filename the name of the file
+	 * @param lockEnd  whether to obtain an XLock on the end of the file first
+	 * @return a reference to the newly-created disk block
+	 */
+	public BlockId append(String filename, boolean lockEnd) {
+		checkWritable();
+		if (lockEnd) {
+			BlockId dummyblk = new BlockId(filename, END_OF_FILE);
+			concurMgr.xLock(dummyblk, txnum);
+		}
 		return fm.append(filename);
 	}
 
+	/**
+	 * Returns the number of times the transaction's block and record locks on a
+	 * file have been escalated to a lock on the whole file.
+	 * 
+	 * @return the number of lock escalations
+	 */
+	public int lockEscalations() {
+		return concurMgr.escalationCount();
+	}
+
 	public int blockSize() {
 		return fm.blockSize();
 	}
@@ -221,8 +719,162 @@ public class Transaction {
 		return bm.available();
 	}
 
-	private static synchronized int nextTxNumber() {
-		nextTxNum++;
-		return nextTxNum;
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	/**
+	 * Returns the table of the active transactions.
+	 */
+	public static TransactionTable transactionTable() {
+		return txTable;
+	}
+
+	/**
+	 * Set the isolation level of the transaction. The new level applies to the
+	 * locks that the transaction obtains from now on.
+	 * 
+	 * @param isolation the isolation level
+	 */
+	public void setIsolationLevel(IsolationLevel isolation) {
+		this.isolation = isolation;
+	}
+
+	public IsolationLevel isolationLevel() {
+		return isolation;
+	}
+
+	/**
+	 * Note that a scan has finished reading the specified block. Under read
+	 * committed, the transaction's read locks on the block and its records are
+	 * released; under the other levels they are kept until the transaction ends.
+	 * 
+	 * @param blk a reference to the disk block
+	 */
+	public void leaveBlock(BlockId blk) {
+		if (!readOnly && isolation == IsolationLevel.READ_COMMITTED)
+			concurMgr.releaseReadLocks(blk);
+	}
+
+	private void setSlot(int op, BlockId blk, SlotUpdate img) {
+		checkWritable();
+		Buffer buff = mybuffers.getBuffer(blk);
+		if (pending != null) {
+			buff.latchShared();
+			try {
+				pending.setSlot(op, blk, buff.contents(), img);
+			} finally {
+				buff.unlatchShared();
+			}
+		} else
+			writeSlot(op, buff, img);
+	}
+
+	private void writeInt(Buffer buff, int offset, int val, boolean okToLog) {
+		buff.latchExclusive();
+		try {
+			int lsn = -1;
+			Page p = buff.contents();
+			if (okToLog) {
+				versions.save(txnum, buff.block(), offset, p.getInt(offset));
+				lsn = recoveryMgr.setInt(buff, offset, val);
+			} else
+				recoveryMgr.unloggedUpdate(buff);
+			p.setInt(offset, val);
+			buff.setModified(txnum, lsn);
+		} finally {
+			buff.unlatchExclusive();
+		}
+	}
+
+	private void writeString(Buffer buff, int offset, String val, boolean okToLog) {
+		buff.latchExclusive();
+		try {
+			int lsn = -1;
+			Page p = buff.contents();
+			if (okToLog) {
+				versions.save(txnum, buff.block(), offset, p.getString(offset));
+				lsn = recoveryMgr.setString(buff, offset, val);
+			} else
+				recoveryMgr.unloggedUpdate(buff);
+			p.setString(offset, val);
+			buff.setModified(txnum, lsn);
+		} finally {
+			buff.unlatchExclusive();
+		}
+	}
+
+	private void writeSlot(int op, Buffer buff, SlotUpdate img) {
+		BlockId blk = buff.block();
+		buff.latchExclusive();
+		try {
+			Page p = buff.contents();
+			SlotUpdate before = img.before(p);
+			versions.save(txnum, blk, before.offset(), before);
+			int lsn = recoveryMgr.setSlot(op, buff, img);
+			img.apply(p);
+			buff.setModified(txnum, lsn);
+		} finally {
+			buff.unlatchExclusive();
+		}
+	}
+
+	/**
+	 * Validate an optimistic transaction, and then make its pending writes to the
+	 * buffers, logging each of them. The strategy has XLocked the written blocks
+	 * during validation, so the writes need no further locking.
+	 */
+	private void install() {
+		try {
+			concurMgr.validate();
+			for (WriteBuffer.Write w : pending.writes()) {
+				mybuffers.pin(w.blk);
+				Buffer buff = mybuffers.getBuffer(w.blk);
+				if (w.op == LogRecord.SETINT)
+					writeInt(buff, w.offset, (Integer) w.val, true);
+				else if (w.op == LogRecord.SETSTRING)
+					writeString(buff, w.offset, (String) w.val, true);
+				else
+					writeSlot(w.op, buff, (SlotUpdate) w.val);
+				mybuffers.unpin(w.blk);
+			}
+			pending.clear();
+		} catch (RuntimeException e) {
+			rollback();
+			throw e;
+		}
+	}
+
+	/**
+	 * Return the contents of the buffer as the transaction sees them: the current
+	 * page, the page as of the snapshot for a read-only transaction, or the
+	 * private copy of the page for an optimistic transaction that has written it.
+	 */
+	private Page contents(Buffer buff) {
+		Page p = buff.contents();
+		if (readOnly)
+			return versions.asOf(buff.block(), p, snapshot);
+		if (pending != null && pending.page(buff.block()) != null)
+			return pending.page(buff.block());
+		return p;
+	}
+
+	/**
+	 * End the snapshot of a read-only transaction. For an updating transaction,
+	 * make its changes visible to later snapshots if it committed, or discard its
+	 * saved versions if it rolled back.
+	 */
+	private void endVersions(boolean rolledBack) {
+		if (readOnly)
+			versions.endSnapshot(snapshot);
+		else if (rolledBack)
+			versions.discard(txnum);
+		else
+			versions.commit(txnum);
+	}
+
+	private void checkWritable() {
+		if (readOnly)
+			throw new RuntimeException("transaction " + txnum + " is read-only");
 	}
 }
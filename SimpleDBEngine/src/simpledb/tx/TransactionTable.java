@@ -0,0 +1,146 @@
+package simpledb.tx;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The table of active transactions. It hands out transaction IDs and keeps an
+ * entry for each transaction from the time it starts until it has committed or
+ * rolled back. The IDs come from an atomic counter and the entries are kept in
+ * a lock-free map ordered by ID, so transactions can start and finish on many
+ * threads at once without contending for a monitor.
+ * <p>
+ * The checkpoint code reads the table to find the active transactions and the
+ * LSNs of their START records; each read is a snapshot taken without stopping
+ * the transactions.
+ */
+public class TransactionTable {
+	/**
+	 * The states of an active transaction.
+	 */
+	public enum State {
+		ACTIVE, COMMITTING, ROLLING_BACK
+	}
+
+	private AtomicInteger nextTxNum = new AtomicInteger();
+	private ConcurrentSkipListMap<Integer, Entry> entries = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Allocate the next transaction ID and add an entry for the transaction.
+	 *
+	 * @param readOnly whether the transaction is read-only
+	 * @return the new entry
+	 */
+	Entry begin(boolean readOnly) {
+		Entry e = new Entry(nextTxNum.incrementAndGet(), readOnly);
+		entries.put(e.txnum, e);
+		return e;
+	}
+
+	/**
+	 * Remove the entry of the specified transaction, which has finished.
+	 *
+	 * @param txnum the ID of the transaction
+	 */
+	void end(int txnum) {
+		entries.remove(txnum);
+	}
+
+	/**
+	 * Returns the entry of the specified transaction, or null if it is not
+	 * active.
+	 *
+	 * @param txnum the ID of the transaction
+	 * @return the transaction's entry
+	 */
+	public Entry get(int txnum) {
+		return entries.get(txnum);
+	}
+
+	/**
+	 * Returns the IDs of the active transactions, in increasing order.
+	 */
+	public List<Integer> activeIds() {
+		return new ArrayList<>(entries.keySet());
+	}
+
+	/**
+	 * Returns the LSN of the START record of each active transaction that has
+	 * written one, by transaction ID.
+	 */
+	public Map<Integer, Integer> startLSNs() {
+		Map<Integer, Integer> result = new HashMap<>();
+		for (Entry e : entries.values()) {
+			int lsn = e.startLSN;
+			if (lsn >= 0)
+				result.put(e.txnum, lsn);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of active transactions.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * The state of one active transaction.
+	 */
+	public static class Entry {
+		private final int txnum;
+		private final boolean readOnly;
+		private final long startTime = System.currentTimeMillis();
+		private volatile State state = State.ACTIVE;
+		private volatile int startLSN = -1;
+
+		private Entry(int txnum, boolean readOnly) {
+			this.txnum = txnum;
+			this.readOnly = readOnly;
+		}
+
+		public int txnum() {
+			return txnum;
+		}
+
+		public boolean isReadOnly() {
+			return readOnly;
+		}
+
+		/**
+		 * Returns the time the transaction started, in milliseconds since the
+		 * epoch.
+		 */
+		public long startTime() {
+			return startTime;
+		}
+
+		public State state() {
+			return state;
+		}
+
+		void setState(State state) {
+			this.state = state;
+		}
+
+		/**
+		 * Returns the LSN of the transaction's START record, or -1 if it has not
+		 * written one.
+		 */
+		public int startLSN() {
+			return startLSN;
+		}
+
+		/**
+		 * Record the LSN of the transaction's START record, or -1 once the
+		 * transaction's outcome is on disk and recovery no longer needs it.
+		 *
+		 * @param lsn the LSN
+		 */
+		public void setStartLSN(int lsn) {
+			startLSN = lsn;
+		}
+	}
+}
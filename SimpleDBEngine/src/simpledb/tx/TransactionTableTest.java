@@ -0,0 +1,86 @@
+package simpledb.tx;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import simpledb.server.SimpleDB;
+
+public class TransactionTableTest {
+   private static final int THREADS = 8;
+   private static final int PER_THREAD = 1000;
+
+   public static void main(String[] args) throws Exception {
+      // entries begun on many threads at once get distinct IDs and keep their LSNs
+      TransactionTable table = new TransactionTable();
+      List<TransactionTable.Entry> begun = Collections.synchronizedList(new ArrayList<>());
+      runThreads(() -> {
+         for (int i=0; i<PER_THREAD; i++) {
+            TransactionTable.Entry e = table.begin(false);
+            e.setStartLSN(10 * e.txnum());
+            begun.add(e);
+         }
+      });
+      Set<Integer> ids = new HashSet<>();
+      for (TransactionTable.Entry e : begun)
+         ids.add(e.txnum());
+      System.out.println("Distinct IDs (should be " + THREADS*PER_THREAD + "): " + ids.size());
+      System.out.println("IDs run from 1 to " + THREADS*PER_THREAD + " (should be true): "
+            + (Collections.min(ids) == 1 && Collections.max(ids) == THREADS*PER_THREAD));
+      boolean lsnsKept = table.activeIds().equals(new ArrayList<>(new TreeSet<>(ids)));
+      for (Map.Entry<Integer, Integer> e : table.startLSNs().entrySet())
+         if (e.getValue() != 10 * e.getKey())
+            lsnsKept = false;
+      System.out.println("Active IDs and start LSNs match (should be true): " + lsnsKept);
+      runThreads(() -> {
+         for (int i=0; i<PER_THREAD; i++) {
+            TransactionTable.Entry e;
+            synchronized (begun) {
+               e = begun.remove(begun.size()-1);
+            }
+            table.end(e.txnum());
+         }
+      });
+      System.out.println("Entries after ending them all (should be 0): " + table.size());
+
+      // the table stays consistent while transactions start and finish on many threads
+      SimpleDB db = new SimpleDB("transactiontabletest", 400, 8);
+      TransactionTable txTable = Transaction.transactionTable();
+      int first = db.logMgr().latestLSN();
+      AtomicInteger bad = new AtomicInteger();
+      Thread reader = new Thread(() -> {
+         for (int i=0; i<1000; i++) {
+            Map<Integer, Integer> lsns = txTable.startLSNs();
+            int last = db.logMgr().latestLSN();
+            for (int lsn : lsns.values())
+               if (lsn <= first || lsn > last)
+                  bad.incrementAndGet();
+         }
+      });
+      reader.start();
+      runThreads(() -> {
+         for (int i=0; i<100; i++)
+            db.newTx().commit();
+      });
+      reader.join();
+      System.out.println("Start LSNs outside the log written (should be 0): " + bad.get());
+      System.out.println("Active transactions at the end (should be 0): " + txTable.size());
+
+      int before = db.logMgr().latestLSN();
+      Transaction tx = db.newTx();
+      List<Integer> active = txTable.activeIds();
+      TransactionTable.Entry e = txTable.get(active.get(active.size()-1));
+      System.out.println("New transaction's start LSN is after the previous end of the log (should be true): "
+            + (e.startLSN() > before));
+      tx.commit();
+   }
+
+   private static void runThreads(Runnable r) throws InterruptedException {
+      List<Thread> threads = new ArrayList<>();
+      for (int i=0; i<THREADS; i++) {
+         Thread t = new Thread(r);
+         t.start();
+         threads.add(t);
+      }
+      for (Thread t : threads)
+         t.join();
+   }
+}
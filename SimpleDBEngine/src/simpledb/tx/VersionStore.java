@@ -0,0 +1,209 @@
+package simpledb.tx;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import simpledb.file.*;
+
+/**
+ * The prior versions of the values that transactions have overwritten, which
+ * let a read-only transaction see the database as it was when the transaction
+ * started. Before a transaction changes a value, it saves the old value here,
+ * just as the recovery manager saves it in an update log record. A committed
+ * transaction receives a commit timestamp, and a read-only transaction receives
+ * a snapshot timestamp, which is the latest commit timestamp at the time it
+ * starts. The snapshot sees the changes of the transactions that committed at
+ * or before its timestamp; all other changes are undone on a copy of the page
+ * when it reads the block.
+ * <p>
+ * Since an update XLocks what it changes, a value overwritten by a change that
+ * the snapshot does not see is never overwritten again by a change that it
+ * does see. Undoing the invisible changes of a block from the most recent to
+ * the earliest therefore leaves the visible ones in place.
+ * <p>
+ * The versions saved by a transaction are discarded once no active snapshot can
+ * need them: right away if it rolls back, since rollback restores the old
+ * values itself, and after its commit once every active snapshot is at least as
+ * recent as the commit.
+ * <p>
+ * Saving a version and reading a block as of a snapshot only latch the
+ * versions of that block, so that transactions working on different blocks do
+ * not wait for each other; the clock and the snapshots are kept under the
+ * store's monitor, which only commits, snapshots and purges take. A change to a
+ * slot is saved as one version holding the slot's whole before-image.
+ */
+class VersionStore {
+	private long clock = 0;
+	private ConcurrentMap<BlockId, List<Version>> versions = new ConcurrentHashMap<>();
+	private ConcurrentMap<Integer, Set<BlockId>> written = new ConcurrentHashMap<>();
+	private ConcurrentMap<Integer, Long> commitTimes = new ConcurrentHashMap<>();
+	private Deque<Integer> commitOrder = new ArrayDeque<>();
+	private TreeMap<Long, Integer> snapshots = new TreeMap<>();
+
+	/**
+	 * Save the value that the specified transaction is about to overwrite at the
+	 * specified offset of the specified block.
+	 *
+	 * @param txnum  the id of the writing transaction
+	 * @param blk    a reference to the disk block
+	 * @param offset the offset of the value, or the bit position of a bit
+	 * @param oldval the current value, an Integer, a String, a byte array, a
+	 *               Boolean for a bit, or the before-image of a slot
+	 */
+	void save(int txnum, BlockId blk, int offset, Object oldval) {
+		written.computeIfAbsent(txnum, t -> new HashSet<>()).add(blk);
+		Version v = new Version(txnum, offset, oldval);
+		while (true) {
+			List<Version> vs = versions.computeIfAbsent(blk, b -> new ArrayList<>());
+			synchronized (vs) {
+				if (versions.get(blk) == vs) {
+					vs.add(v);
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Start a snapshot, which sees every transaction that has committed so far.
+	 *
+	 * @return the snapshot's timestamp
+	 */
+	synchronized long beginSnapshot() {
+		snapshots.merge(clock, 1, Integer::sum);
+		return clock;
+	}
+
+	/**
+	 * End the snapshot having the specified timestamp, and discard the versions
+	 * that no remaining snapshot needs.
+	 *
+	 * @param snapshot the snapshot's timestamp
+	 */
+	synchronized void endSnapshot(long snapshot) {
+		if (snapshots.merge(snapshot, -1, Integer::sum) == 0)
+			snapshots.remove(snapshot);
+		purge();
+	}
+
+	/**
+	 * Give the specified transaction the next commit timestamp, which makes its
+	 * changes visible to the snapshots that start from now on.
+	 *
+	 * @param txnum the id of the committing transaction
+	 */
+	synchronized void commit(int txnum) {
+		clock++;
+		if (written.containsKey(txnum)) {
+			commitTimes.put(txnum, clock);
+			commitOrder.addLast(txnum);
+			purge();
+		}
+	}
+
+	/**
+	 * Discard the versions saved by the specified transaction, which has restored
+	 * the old values by rolling back.
+	 *
+	 * @param txnum the id of the transaction
+	 */
+	void discard(int txnum) {
+		remove(txnum);
+	}
+
+	/**
+	 * Return the contents of the specified block as the snapshot having the
+	 * specified timestamp sees them. If some change to the block is invisible to
+	 * the snapshot, the changes are undone on a copy of the page; otherwise the
+	 * page itself is returned. The caller must hold the buffer's latch. A commit
+	 * timestamp that is not visible yet belongs to a commit after the snapshot
+	 * began, whose changes the snapshot must not see anyway.
+	 *
+	 * @param blk      a reference to the disk block
+	 * @param p        the current contents of the block
+	 * @param snapshot the snapshot's timestamp
+	 * @return the block's contents as of the snapshot
+	 */
+	Page asOf(BlockId blk, Page p, long snapshot) {
+		List<Version> vs = versions.get(blk);
+		if (vs == null)
+			return p;
+		Page copy = null;
+		synchronized (vs) {
+			for (int i = vs.size() - 1; i >= 0; i--) {
+				Version v = vs.get(i);
+				Long committed = commitTimes.get(v.txnum);
+				if (committed != null && committed <= snapshot)
+					continue;
+				if (copy == null)
+					copy = copyOf(p);
+				if (v.oldval instanceof Integer)
+					copy.setInt(v.offset, (Integer) v.oldval);
+				else if (v.oldval instanceof byte[])
+					copy.setRaw(v.offset, (byte[]) v.oldval);
+				else if (v.oldval instanceof Boolean)
+					copy.setBit(v.offset, (Boolean) v.oldval);
+				else if (v.oldval instanceof SlotUpdate)
+					((SlotUpdate) v.oldval).apply(copy);
+				else
+					copy.setString(v.offset, (String) v.oldval);
+			}
+		}
+		return (copy == null) ? p : copy;
+	}
+
+	/**
+	 * Discard the versions of the committed transactions that every active
+	 * snapshot sees, in commit order.
+	 */
+	private void purge() {
+		long oldest = snapshots.isEmpty() ? clock : snapshots.firstKey();
+		while (!commitOrder.isEmpty() && commitTimes.get(commitOrder.peekFirst()) <= oldest) {
+			int txnum = commitOrder.pollFirst();
+			remove(txnum);
+			commitTimes.remove(txnum);
+		}
+	}
+
+	/**
+	 * Discard the versions saved by the specified transaction. A block's list of
+	 * versions is only dropped from the map while latched, and a save only adds
+	 * to a list that is still in the map, so a concurrent save to the block
+	 * either lands in the list before it is dropped or creates a new one.
+	 */
+	private void remove(int txnum) {
+		Set<BlockId> blks = written.remove(txnum);
+		if (blks == null)
+			return;
+		for (BlockId blk : blks) {
+			List<Version> vs = versions.get(blk);
+			synchronized (vs) {
+				vs.removeIf(v -> v.txnum == txnum);
+				if (vs.isEmpty())
+					versions.remove(blk, vs);
+			}
+		}
+	}
+
+	private static Page copyOf(Page p) {
+		byte[] b = new byte[p.size()];
+		Page copy = new Page(b);
+		p.copyTo(copy);
+		return copy;
+	}
+
+	/**
+	 * An overwritten value, together with the transaction that overwrote it.
+	 */
+	private static class Version {
+		private int txnum;
+		private int offset;
+		private Object oldval;
+
+		private Version(int txnum, int offset, Object oldval) {
+			this.txnum = txnum;
+			this.offset = offset;
+			this.oldval = oldval;
+		}
+	}
+}
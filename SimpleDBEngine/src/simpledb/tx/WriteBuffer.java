@@ -0,0 +1,107 @@
+package simpledb.tx;
+
+import java.util.*;
+
+import simpledb.file.*;
+import simpledb.tx.recovery.LogRecord;
+
+/**
+ * The writes of an optimistic transaction that have not been made to the
+ * buffers yet. Each written block gets a private copy of its page, taken when
+ * the transaction first writes it, which the transaction then reads instead of
+ * the buffer. The writes are also kept in order, so that they can be made to
+ * the buffers, and logged, once the transaction has been validated.
+ */
+class WriteBuffer {
+	private Map<BlockId, Page> pages = new HashMap<>();
+	private List<Write> writes = new ArrayList<>();
+
+	/**
+	 * Return the private copy of the specified block, or null if the transaction
+	 * has not written the block.
+	 *
+	 * @param blk a reference to the disk block
+	 * @return the private page, or null
+	 */
+	Page page(BlockId blk) {
+		return pages.get(blk);
+	}
+
+	/**
+	 * Write an integer to the private copy of the specified block.
+	 *
+	 * @param blk     a reference to the disk block
+	 * @param current the block's current contents, copied on the first write
+	 * @param offset  a byte offset within that block
+	 * @param val     the value to be stored
+	 */
+	void setInt(BlockId blk, Page current, int offset, int val) {
+		pageFor(blk, current).setInt(offset, val);
+		writes.add(new Write(LogRecord.SETINT, blk, offset, val));
+	}
+
+	/**
+	 * Write a string to the private copy of the specified block.
+	 *
+	 * @param blk     a reference to the disk block
+	 * @param current the block's current contents, copied on the first write
+	 * @param offset  a byte offset within that block
+	 * @param val     the value to be stored
+	 */
+	void setString(BlockId blk, Page current, int offset, String val) {
+		pageFor(blk, current).setString(offset, val);
+		writes.add(new Write(LogRecord.SETSTRING, blk, offset, val));
+	}
+
+	/**
+	 * Write a slot image to the private copy of the specified block.
+	 *
+	 * @param op      the slot operation, as a log record type
+	 * @param blk     a reference to the disk block
+	 * @param current the block's current contents, copied on the first write
+	 * @param img     the new contents of the slot
+	 */
+	void setSlot(int op, BlockId blk, Page current, SlotUpdate img) {
+		img.apply(pageFor(blk, current));
+		writes.add(new Write(op, blk, img.offset(), img));
+	}
+
+	/**
+	 * Returns the pending writes, in the order they were made.
+	 */
+	List<Write> writes() {
+		return writes;
+	}
+
+	void clear() {
+		pages.clear();
+		writes.clear();
+	}
+
+	private Page pageFor(BlockId blk, Page current) {
+		Page p = pages.get(blk);
+		if (p == null) {
+			p = new Page(new byte[current.size()]);
+			current.copyTo(p);
+			pages.put(blk, p);
+		}
+		return p;
+	}
+
+	/**
+	 * A pending write: an integer, a string, or a slot image.
+	 */
+	static class Write {
+		final int op;
+		final BlockId blk;
+		final int offset;
+		final Object val;
+
+		private Write(int op, BlockId blk, int offset, Object val) {
+			this.op = op;
+			this.blk = blk;
+			this.offset = offset;
+			this.val = val;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package simpledb.tx.concurrency;
+
+/**
+ * The concurrency control schemes that an updating transaction can use.
+ * LOCKING uses strict two-phase locking, through {@link ConcurrencyMgr}.
+ * OPTIMISTIC reads without locking and validates the transaction when it
+ * commits, through {@link OptimisticConcurrencyMgr}; it suits transactions that
+ * rarely touch the same blocks as others.
+ */
+public enum ConcurrencyControl {
+	LOCKING, OPTIMISTIC;
+
+	/**
+	 * Create the strategy that implements this scheme for the specified
+	 * transaction.
+	 *
+	 * @param txnum the ID of the transaction
+	 * @return the transaction's concurrency strategy
+	 */
+	public ConcurrencyStrategy newStrategy(int txnum) {
+		if (this == OPTIMISTIC)
+			return new OptimisticConcurrencyMgr(txnum);
+		return new ConcurrencyMgr(txnum);
+	}
+}
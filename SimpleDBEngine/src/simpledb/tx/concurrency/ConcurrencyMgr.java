@@ -8,57 +8,383 @@ import simpledb.file.BlockId;
  * concurrency manager. The concurrency manager keeps track of which locks the
  * transaction currently has, and interacts with the global lock table as
  * needed.
+ * <p>
+ * Locks are taken at two levels of granularity. Before locking a block, the
+ * transaction locks the block's file in the matching intention mode. A
+ * transaction that locks a whole file in S or X mode needs no further locks on
+ * its blocks for the access that mode grants, which keeps a full scan from
+ * creating a lock entry per block. The file lock is held on a dummy block of
+ * the file numbered {@link #FILE_LOCK}.
+ * <p>
+ * Records can also be locked one at a time, below their block. Before locking
+ * a record, the transaction locks the file and then the block in the matching
+ * intention mode, so that transactions reading and updating different records
+ * of the same block do not wait for each other. A lock on the block or the file
+ * that grants the access covers all of its records.
+ * <p>
+ * Once a transaction holds the escalation threshold's worth of block and
+ * record locks on one file, the next such lock it needs on that file is taken
+ * by escalating to a lock on the whole file instead: an SLock if the
+ * transaction has only read the file, and an XLock if it has written it. The
+ * intention locks on blocks are not counted, since each only serves the record
+ * locks under it, which are counted themselves. The block and record locks are
+ * then released, since the file lock covers them. Escalation only happens if
+ * the file lock can be granted without waiting; otherwise the transaction
+ * keeps locking blocks and tries again on its next block lock.
+ * <p>
+ * While optimistic transactions are running, a transaction that ends reports
+ * the blocks it wrote, as given by its write locks, so that they can be
+ * validated against them.
  * 
  * @author Edward Sciore
  */
-public class ConcurrencyMgr {
+public class ConcurrencyMgr implements ConcurrencyStrategy {
 
 	/**
 	 * The global lock table. This variable is static because all transactions share
 	 * the same table.
 	 */
 	private static LockTable locktbl = new LockTable();
-	private Map<BlockId, String> locks = new HashMap<BlockId, String>();
+	static final int FILE_LOCK = -2;
+	private static volatile int escalationThreshold = 1000;
+	private Map<Object, LockMode> locks = new HashMap<Object, LockMode>();
+	private Map<String, Integer> lockCounts = new HashMap<>();
+	private int escalations = 0;
+	private int txnum;
 
 	/**
-	 * Obtain an SLock on the block, if necessary. The method will ask the lock
-	 * table for an SLock if the transaction currently has no locks on that block.
+	 * Create a concurrency manager for the specified transaction.
+	 * 
+	 * @param txnum the ID of the transaction
+	 */
+	public ConcurrencyMgr(int txnum) {
+		this.txnum = txnum;
+	}
+
+	/**
+	 * Change the way the lock table handles deadlocks.
+	 * 
+	 * @param policy the new policy
+	 */
+	public static void setDeadlockPolicy(DeadlockPolicy policy) {
+		locktbl.setPolicy(policy);
+	}
+
+	public static DeadlockPolicy deadlockPolicy() {
+		return locktbl.policy();
+	}
+
+	/**
+	 * Set the number of block and record locks that a transaction may hold on one
+	 * file before they are escalated to a file lock.
+	 * 
+	 * @param threshold the number of locks
+	 */
+	public static void setEscalationThreshold(int threshold) {
+		escalationThreshold = threshold;
+	}
+
+	/**
+	 * Returns the number of lock requests that have been aborted under the
+	 * specified deadlock policy, since the server started.
+	 * 
+	 * @param policy a deadlock policy
+	 * @return the number of aborts
+	 */
+	public static long abortCount(DeadlockPolicy policy) {
+		return locktbl.abortCount(policy);
+	}
+
+	/**
+	 * Obtain an SLock on the block, if necessary. The method does nothing if the
+	 * transaction already holds a lock on the block or its file that allows
+	 * reading it. Otherwise it locks the file in IS mode and then asks the lock
+	 * table for an SLock on the block.
 	 * 
 	 * @param blk a reference to the disk block
 	 */
 	public void sLock(BlockId blk, int txid) {
-		if (locks.get(blk) == null) {
-			locktbl.sLock(blk, txid);
-			locks.put(blk, "S");
-		}
+		BlockId file = fileLock(blk.fileName());
+		if (holds(file, LockMode.S) || holds(blk, LockMode.S))
+			return;
+		lock(file, LockMode.IS);
+		if (!locks.containsKey(blk) && escalate(file, LockMode.S))
+			return;
+		lock(blk, LockMode.S);
 	}
 
 	/**
-	 * Obtain an XLock on the block, if necessary. If the transaction does not have
-	 * an XLock on that block, then the method first gets an SLock on that block (if
-	 * necessary), and then upgrades it to an XLock.
+	 * Obtain an XLock on the block, if necessary. The method does nothing if the
+	 * transaction already holds an XLock on the block or its file. Otherwise it
+	 * locks the file in IX mode, which becomes SIX if the transaction holds an
+	 * SLock on the file, and then asks the lock table for an XLock on the block,
+	 * upgrading any SLock the transaction has on it.
 	 * 
 	 * @param blk a reference to the disk block
 	 */
 	public void xLock(BlockId blk, int txid) {
-		if (!hasXLock(blk)) {
-			sLock(blk, txid);
-			locktbl.xLock(blk, txid);
-			locks.put(blk, "X");
-		}
+		BlockId file = fileLock(blk.fileName());
+		if (holds(file, LockMode.X) || holds(blk, LockMode.X))
+			return;
+		lock(file, LockMode.IX);
+		if (!locks.containsKey(blk) && escalate(file, LockMode.X))
+			return;
+		lock(blk, LockMode.X);
+	}
+
+	/**
+	 * Obtain an SLock on the specified record, if necessary. The method does
+	 * nothing if the transaction already holds a lock on the record, its block or
+	 * its file that allows reading it. Otherwise it locks the file and the block
+	 * in IS mode and then asks the lock table for an SLock on the record.
+	 * 
+	 * @param blk  a reference to the record's block
+	 * @param slot the record's slot in the block
+	 */
+	public void sLockRecord(BlockId blk, int slot) {
+		BlockId file = fileLock(blk.fileName());
+		RecordId rec = new RecordId(blk, slot);
+		if (holds(file, LockMode.S) || holds(blk, LockMode.S) || holds(rec, LockMode.S))
+			return;
+		lock(file, LockMode.IS);
+		if (!locks.containsKey(rec) && escalate(file, LockMode.S))
+			return;
+		lock(blk, LockMode.IS);
+		lock(rec, LockMode.S);
+	}
+
+	/**
+	 * Obtain an XLock on the specified record, if necessary. The method does
+	 * nothing if the transaction already holds an XLock on the record, its block or
+	 * its file. Otherwise it locks the file and the block in IX mode and then asks
+	 * the lock table for an XLock on the record.
+	 * 
+	 * @param blk  a reference to the record's block
+	 * @param slot the record's slot in the block
+	 */
+	public void xLockRecord(BlockId blk, int slot) {
+		BlockId file = fileLock(blk.fileName());
+		RecordId rec = new RecordId(blk, slot);
+		if (holds(file, LockMode.X) || holds(blk, LockMode.X) || holds(rec, LockMode.X))
+			return;
+		lock(file, LockMode.IX);
+		if (!locks.containsKey(rec) && escalate(file, LockMode.X))
+			return;
+		lock(blk, LockMode.IX);
+		lock(rec, LockMode.X);
+	}
+
+	/**
+	 * Obtain an XLock on the specified record as {@link #xLockRecord(BlockId, int)}
+	 * does, but only if the record itself can be locked without waiting. This lets
+	 * a transaction looking for a free slot pass over a slot that another
+	 * transaction is working on.
+	 * 
+	 * @param blk  a reference to the record's block
+	 * @param slot the record's slot in the block
+	 * @return whether the transaction now holds an XLock on the record
+	 */
+	public boolean tryXLockRecord(BlockId blk, int slot) {
+		BlockId file = fileLock(blk.fileName());
+		RecordId rec = new RecordId(blk, slot);
+		if (holds(file, LockMode.X) || holds(blk, LockMode.X) || holds(rec, LockMode.X))
+			return true;
+		lock(file, LockMode.IX);
+		if (!locks.containsKey(rec) && escalate(file, LockMode.X))
+			return true;
+		lock(blk, LockMode.IX);
+		LockMode held = locks.get(rec);
+		LockMode mode = (held == null) ? LockMode.X : held.combine(LockMode.X);
+		if (!locktbl.tryLock(rec, txnum, mode))
+			return false;
+		record(rec, held, mode);
+		return true;
+	}
+
+	/**
+	 * Determine whether the transaction holds an SLock, or a stronger lock, on the
+	 * block or its file. No other transaction can then write the block.
+	 * 
+	 * @param blk a reference to the disk block
+	 * @return whether the block's reads are covered
+	 */
+	public boolean coversReads(BlockId blk) {
+		return holds(fileLock(blk.fileName()), LockMode.S) || holds(blk, LockMode.S);
+	}
+
+	/**
+	 * Obtain an SLock on the whole file, which lets the transaction read any of
+	 * its blocks without locking them individually.
+	 * 
+	 * @param filename the name of the file
+	 */
+	public void sLockFile(String filename) {
+		lock(fileLock(filename), LockMode.S);
+	}
+
+	/**
+	 * Obtain an XLock on the whole file, which lets the transaction read and
+	 * write any of its blocks without locking them individually.
+	 * 
+	 * @param filename the name of the file
+	 */
+	public void xLockFile(String filename) {
+		lock(fileLock(filename), LockMode.X);
 	}
 
 	/**
 	 * Release all locks by asking the lock table to unlock each one.
 	 */
 	public void release() {
-		for (BlockId blk : locks.keySet())
-			locktbl.unlock(blk);
+		if (OptimisticConcurrencyMgr.isActive())
+			OptimisticConcurrencyMgr.recordWrites(writtenBlocks());
+		for (Object item : locks.keySet())
+			locktbl.unlock(item, txnum);
 		locks.clear();
+		lockCounts.clear();
+	}
+
+	/**
+	 * Release the transaction's SLocks on the specified block and its records,
+	 * together with the intention locks on them that only serve those SLocks.
+	 * Locks that allow writing are kept.
+	 * 
+	 * @param blk a reference to the disk block
+	 */
+	public void releaseReadLocks(BlockId blk) {
+		Iterator<Map.Entry<Object, LockMode>> iter = locks.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<Object, LockMode> e = iter.next();
+			Object item = e.getKey();
+			LockMode held = e.getValue();
+			boolean onBlock = item.equals(blk) || (item instanceof RecordId && ((RecordId) item).block().equals(blk));
+			if (onBlock && (held == LockMode.S || held == LockMode.IS)) {
+				locktbl.unlock(item, txnum);
+				iter.remove();
+				if (counted(item, held))
+					lockCounts.merge(blk.fileName(), -1, Integer::sum);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of times the transaction has escalated its block and
+	 * record locks on a file to a file lock.
+	 * 
+	 * @return the number of escalations
+	 */
+	public int escalationCount() {
+		return escalations;
+	}
+
+	private void lock(Object item, LockMode mode) {
+		LockMode held = locks.get(item);
+		if (held != null && held.covers(mode))
+			return;
+		locktbl.lock(item, txnum, mode);
+		record(item, held, (held == null) ? mode : held.combine(mode));
+	}
+
+	/**
+	 * Note that the lock table has granted the specified mode on the item, which
+	 * was previously held in the specified mode or not at all.
+	 */
+	private void record(Object item, LockMode held, LockMode mode) {
+		locks.put(item, mode);
+		boolean wasCounted = (held != null) && counted(item, held);
+		if (!wasCounted && counted(item, mode))
+			lockCounts.merge(fileName(item), 1, Integer::sum);
+	}
+
+	/**
+	 * Determine whether a lock held in the specified mode counts towards
+	 * escalating the locks on its file: a lock on a record, or a lock on a block
+	 * that is not just an intention lock.
+	 */
+	private static boolean counted(Object item, LockMode mode) {
+		if (item instanceof RecordId)
+			return true;
+		return !isFileLock(item) && mode != LockMode.IS && mode != LockMode.IX;
+	}
+
+	/**
+	 * Escalate the transaction's block and record locks on the specified file to a
+	 * file lock that grants the specified mode, if the transaction holds enough of
+	 * them and the file lock can be granted right away. The file is XLocked if the
+	 * mode or any of the covered locks is exclusive or an intention to write, and
+	 * SLocked otherwise.
+	 * 
+	 * @return whether the locks were escalated
+	 */
+	private boolean escalate(BlockId file, LockMode mode) {
+		String filename = file.fileName();
+		if (lockCounts.getOrDefault(filename, 0) < escalationThreshold)
+			return false;
+		List<Object> covered = new ArrayList<>();
+		LockMode target = mode;
+		for (Map.Entry<Object, LockMode> e : locks.entrySet()) {
+			Object item = e.getKey();
+			if (!isFileLock(item) && fileName(item).equals(filename)) {
+				covered.add(item);
+				LockMode held = e.getValue();
+				boolean writes = (held == LockMode.IX || held == LockMode.SIX);
+				target = target.combine(writes ? LockMode.X : held);
+			}
+		}
+		if (!locktbl.tryLock(file, txnum, target))
+			return false;
+		locks.put(file, locks.get(file).combine(target));
+		for (Object item : covered) {
+			locktbl.unlock(item, txnum);
+			locks.remove(item);
+		}
+		lockCounts.remove(filename);
+		escalations++;
+		return true;
+	}
+
+	/**
+	 * Determine whether a transaction other than the specified one holds a lock on
+	 * the specified block or file dummy block in one of the specified modes.
+	 */
+	static boolean heldByOthers(BlockId blk, int txid, Set<LockMode> modes) {
+		return locktbl.heldByOthers(blk, txid, modes);
+	}
+
+	/**
+	 * Return the blocks that the transaction may have written, according to its
+	 * locks. A file that the transaction has XLocked as a whole is represented by
+	 * its dummy block.
+	 */
+	private Set<BlockId> writtenBlocks() {
+		Set<BlockId> blks = new HashSet<>();
+		for (Map.Entry<Object, LockMode> e : locks.entrySet()) {
+			Object item = e.getKey();
+			LockMode held = e.getValue();
+			if (item instanceof RecordId) {
+				if (held == LockMode.X)
+					blks.add(((RecordId) item).block());
+			} else if (held == LockMode.X || (!isFileLock(item) && (held == LockMode.IX || held == LockMode.SIX)))
+				blks.add((BlockId) item);
+		}
+		return blks;
+	}
+
+	private boolean holds(Object item, LockMode mode) {
+		LockMode held = locks.get(item);
+		return held != null && held.covers(mode);
+	}
+
+	private static boolean isFileLock(Object item) {
+		return item instanceof BlockId && ((BlockId) item).number() == FILE_LOCK;
+	}
+
+	private static String fileName(Object item) {
+		BlockId blk = (item instanceof RecordId) ? ((RecordId) item).block() : (BlockId) item;
+		return blk.fileName();
 	}
 
-	private boolean hasXLock(BlockId blk) {
-		String locktype = locks.get(blk);
-		return locktype != null && locktype.equals("X");
+	private static BlockId fileLock(String filename) {
+		return new BlockId(filename, FILE_LOCK);
 	}
 }
@@ -0,0 +1,131 @@
+package simpledb.tx.concurrency;
+
+import simpledb.file.BlockId;
+
+/**
+ * The way a transaction is isolated from the other transactions. The
+ * transaction tells its strategy what it is about to read and write, in the
+ * form of lock requests, and the strategy either locks what is requested, as
+ * {@link ConcurrencyMgr} does, or just remembers it and checks for conflicts
+ * when the transaction commits, as {@link OptimisticConcurrencyMgr} does.
+ *
+ * @see ConcurrencyControl
+ */
+public interface ConcurrencyStrategy {
+
+	/**
+	 * Prepare to read the specified block.
+	 *
+	 * @param blk  a reference to the disk block
+	 * @param txid id of the transaction
+	 */
+	void sLock(BlockId blk, int txid);
+
+	/**
+	 * Prepare to write the specified block.
+	 *
+	 * @param blk  a reference to the disk block
+	 * @param txid id of the transaction
+	 */
+	void xLock(BlockId blk, int txid);
+
+	/**
+	 * Prepare to read any block of the specified file.
+	 *
+	 * @param filename the name of the file
+	 */
+	void sLockFile(String filename);
+
+	/**
+	 * Prepare to read and write any block of the specified file.
+	 *
+	 * @param filename the name of the file
+	 */
+	void xLockFile(String filename);
+
+	/**
+	 * Prepare to read the record in the specified slot of the specified block.
+	 *
+	 * @param blk  a reference to the record's block
+	 * @param slot the record's slot in the block
+	 */
+	void sLockRecord(BlockId blk, int slot);
+
+	/**
+	 * Prepare to write the record in the specified slot of the specified block.
+	 *
+	 * @param blk  a reference to the record's block
+	 * @param slot the record's slot in the block
+	 */
+	void xLockRecord(BlockId blk, int slot);
+
+	/**
+	 * Prepare to write the record in the specified slot of the specified block,
+	 * unless that would mean waiting for another transaction.
+	 *
+	 * @param blk  a reference to the record's block
+	 * @param slot the record's slot in the block
+	 * @return whether the transaction may write the record
+	 */
+	boolean tryXLockRecord(BlockId blk, int slot);
+
+	/**
+	 * Note that the transaction has read the specified block, whether or not it
+	 * asked to lock it first.
+	 *
+	 * @param blk a reference to the disk block
+	 */
+	default void noteRead(BlockId blk) {
+	}
+
+	/**
+	 * Determine whether the transaction can read every record of the specified
+	 * block without asking for further locks, because what it already holds
+	 * keeps other transactions from writing the block.
+	 *
+	 * @param blk a reference to the disk block
+	 * @return whether the block's reads are covered
+	 */
+	default boolean coversReads(BlockId blk) {
+		return false;
+	}
+
+	/**
+	 * Determine whether the transaction's logged writes must be kept private
+	 * until it commits, instead of being made to the buffers right away.
+	 *
+	 * @return whether writes are deferred to commit time
+	 */
+	default boolean defersWrites() {
+		return false;
+	}
+
+	/**
+	 * Check, as the transaction commits, that the values it read are still
+	 * current, and get ready to make its deferred writes. The method throws an
+	 * exception if the transaction must roll back instead.
+	 */
+	default void validate() {
+	}
+
+	/**
+	 * Give up the read locks on the specified block and its records, if the
+	 * strategy holds any.
+	 *
+	 * @param blk a reference to the disk block
+	 */
+	void releaseReadLocks(BlockId blk);
+
+	/**
+	 * Release everything held for the transaction when it ends.
+	 */
+	void release();
+
+	/**
+	 * Returns the number of times the transaction's block and record locks on a
+	 * file have been escalated to a file lock.
+	 *
+	 * @return the number of escalations
+	 */
+	int escalationCount();
+}
@@ -0,0 +1,19 @@
+package simpledb.tx.concurrency;
+
+/**
+ * The ways in which the lock table can keep transactions from deadlocking.
+ */
+public enum DeadlockPolicy {
+	/**
+	 * A transaction that would wait for an older transaction aborts instead, so
+	 * no deadlock can form. Aborts happen whether or not a deadlock would have.
+	 */
+	WAIT_DIE,
+
+	/**
+	 * Transactions always wait. A background thread searches the waits-for graph
+	 * for cycles, and breaks each one by aborting the transaction in it that holds
+	 * the fewest locks.
+	 */
+	DETECT
+}
@@ -0,0 +1,119 @@
+package simpledb.tx.concurrency;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import simpledb.server.SimpleDB;
+import simpledb.file.BlockId;
+import simpledb.tx.Transaction;
+
+public class DeadlockTest {
+   private static final int BLOCKS = 4;
+   private static SimpleDB db;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("deadlocktest", 400, 64);
+      if (db.fileMgr().isNew()) {
+         Transaction tx = db.newTx();
+         for (int i=0; i<BLOCKS; i++)
+            tx.append("deadlockfile");
+         tx.commit();
+      }
+
+      // Two transactions that lock the same two blocks in opposite orders.
+      for (DeadlockPolicy policy : DeadlockPolicy.values()) {
+         ConcurrencyMgr.setDeadlockPolicy(policy);
+         System.out.println(policy + ": cycle of two transactions");
+         Thread a = new Thread(new Crossing("A", 0, 1));
+         Thread b = new Thread(new Crossing("B", 1, 0));
+         a.start(); b.start();
+         a.join(); b.join();
+      }
+
+      // Many transactions that increment random blocks.
+      for (DeadlockPolicy policy : DeadlockPolicy.values()) {
+         ConcurrencyMgr.setDeadlockPolicy(policy);
+         stress(policy);
+      }
+   }
+
+   static class Crossing implements Runnable {
+      private String name;
+      private BlockId first, second;
+
+      Crossing(String name, int first, int second) {
+         this.name = name;
+         this.first = new BlockId("deadlockfile", first);
+         this.second = new BlockId("deadlockfile", second);
+      }
+
+      public void run() {
+         Transaction tx = db.newTx();
+         try {
+            tx.pin(first);
+            tx.pin(second);
+            tx.setInt(first, 0, tx.getInt(first, 0), true);
+            System.out.println("Tx " + name + ": receive xlock " + first.number());
+            Thread.sleep(500);
+            System.out.println("Tx " + name + ": request xlock " + second.number());
+            tx.setInt(second, 0, tx.getInt(second, 0), true);
+            System.out.println("Tx " + name + ": receive xlock " + second.number());
+            tx.commit();
+            System.out.println("Tx " + name + ": commit");
+         }
+         catch (LockAbortException e) {
+            tx.rollback();
+            System.out.println("Tx " + name + ": abort (one of A and B should abort)");
+         }
+         catch (InterruptedException e) {}
+      }
+   }
+
+   private static void stress(DeadlockPolicy policy) throws InterruptedException {
+      int start = sum();
+      long abortsBefore = ConcurrencyMgr.abortCount(policy);
+      AtomicInteger commits = new AtomicInteger();
+      Thread[] threads = new Thread[8];
+      for (int i=0; i<threads.length; i++) {
+         threads[i] = new Thread(() -> {
+            Random rand = new Random();
+            for (int k=0; k<200; k++) {
+               BlockId b1 = new BlockId("deadlockfile", rand.nextInt(BLOCKS));
+               BlockId b2 = new BlockId("deadlockfile", rand.nextInt(BLOCKS));
+               Transaction tx = db.newTx();
+               try {
+                  tx.pin(b1);
+                  tx.pin(b2);
+                  int val = tx.getInt(b1, 0);
+                  tx.getInt(b2, 0);
+                  tx.setInt(b1, 0, val+1, true);
+                  tx.commit();
+                  commits.incrementAndGet();
+               }
+               catch (LockAbortException e) {
+                  tx.rollback();
+               }
+            }
+         });
+         threads[i].start();
+      }
+      for (Thread t : threads)
+         t.join();
+      int end = sum();
+      System.out.println(policy + ": " + commits + " commits, "
+            + (ConcurrencyMgr.abortCount(policy) - abortsBefore) + " aborts");
+      System.out.println(policy + ": no update was lost: " + (end - start == commits.get()));
+   }
+
+   private static int sum() {
+      Transaction tx = db.newTx();
+      int sum = 0;
+      for (int i=0; i<BLOCKS; i++) {
+         BlockId blk = new BlockId("deadlockfile", i);
+         tx.pin(blk);
+         sum += tx.getInt(blk, 0);
+         tx.unpin(blk);
+      }
+      tx.commit();
+      return sum;
+   }
+}
@@ -0,0 +1,54 @@
+package simpledb.tx.concurrency;
+
+import java.sql.Connection;
+
+/**
+ * The isolation levels that an updating transaction can run at.
+ * <ul>
+ * <li>SERIALIZABLE holds every lock until the transaction ends, and a scan of
+ * a whole table SLocks the table's file, so no other transaction can insert
+ * into it meanwhile.</li>
+ * <li>REPEATABLE_READ also holds every lock until the transaction ends, but
+ * locks only the records that it reads, so rows inserted by other transactions
+ * can appear when a table is scanned again.</li>
+ * <li>READ_COMMITTED still reads only committed values, but releases the
+ * read locks on a block once the scan reading it moves to another block, and
+ * those on the pages of an index once the index scan leaves them.</li>
+ * </ul>
+ * The XLocks of an update are always held until the transaction ends.
+ */
+public enum IsolationLevel {
+	READ_COMMITTED(Connection.TRANSACTION_READ_COMMITTED),
+	REPEATABLE_READ(Connection.TRANSACTION_REPEATABLE_READ),
+	SERIALIZABLE(Connection.TRANSACTION_SERIALIZABLE);
+
+	private int jdbcLevel;
+
+	private IsolationLevel(int jdbcLevel) {
+		this.jdbcLevel = jdbcLevel;
+	}
+
+	/**
+	 * Returns the JDBC constant for this level, as used by
+	 * {@link Connection#getTransactionIsolation()}.
+	 */
+	public int jdbcLevel() {
+		return jdbcLevel;
+	}
+
+	/**
+	 * Returns the level for the specified JDBC constant. Read uncommitted is not
+	 * supported, so it is raised to read committed.
+	 *
+	 * @param jdbcLevel one of the TRANSACTION_ constants of {@link Connection}
+	 * @return the corresponding isolation level
+	 */
+	public static IsolationLevel forJdbcLevel(int jdbcLevel) {
+		if (jdbcLevel == Connection.TRANSACTION_READ_UNCOMMITTED)
+			return READ_COMMITTED;
+		for (IsolationLevel level : values())
+			if (level.jdbcLevel == jdbcLevel)
+				return level;
+		throw new IllegalArgumentException("unknown isolation level " + jdbcLevel);
+	}
+}
@@ -0,0 +1,72 @@
+package simpledb.tx.concurrency;
+
+import java.util.function.Consumer;
+import simpledb.server.SimpleDB;
+import simpledb.record.*;
+import simpledb.tx.Transaction;
+
+public class IsolationLevelTest {
+   private static SimpleDB db;
+   private static Layout layout;
+
+   public static void main(String[] args) {
+      db = new SimpleDB("isolationleveltest", 400, 8);
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      layout = new Layout(sch);
+      if (db.fileMgr().isNew()) {
+         Transaction tx = db.newTx();
+         TableScan ts = new TableScan(tx, "T", layout);
+         for (int i=0; i<200; i++) {
+            ts.insert();
+            ts.setInt("A", i);
+         }
+         ts.close();
+         tx.commit();
+      }
+
+      // A reader scans the whole table at each level, and then two writers
+      // try to update a row it read and to insert a new row.
+      System.out.println("READ_COMMITTED should allow both, REPEATABLE_READ only the insert,");
+      System.out.println("and SERIALIZABLE neither.");
+      for (IsolationLevel level : IsolationLevel.values()) {
+         Transaction reader = db.newTx();
+         reader.setIsolationLevel(level);
+         TableScan ts = new TableScan(reader, "T", layout, true);
+         int count = 0;
+         while (ts.next())
+            count++;
+         ts.close();
+
+         String update = write(tx -> {
+            TableScan ws = new TableScan(tx, "T", layout);
+            ws.moveToRid(new RID(0, 0));
+            ws.setInt("A", -1);
+            ws.close();
+         });
+         String insert = write(tx -> {
+            TableScan ws = new TableScan(tx, "T", layout);
+            ws.insert();
+            ws.setInt("A", -1);
+            ws.close();
+         });
+         reader.commit();
+         System.out.println(level + ": read " + count + " rows, update " + update + ", insert " + insert);
+      }
+   }
+
+   // Run the update in a new transaction, which then rolls back.
+   private static String write(Consumer<Transaction> update) {
+      Transaction tx = db.newTx();
+      String result;
+      try {
+         update.accept(tx);
+         result = "ok";
+      }
+      catch (LockAbortException e) {
+         result = "aborted";
+      }
+      tx.rollback();
+      return result;
+   }
+}
@@ -0,0 +1,105 @@
+package simpledb.tx.concurrency;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.BlockId;
+import simpledb.tx.Transaction;
+
+public class LockGranularityTest {
+   private static final int BLOCKS = 10;
+   private static SimpleDB db;
+
+   public static void main(String[] args) {
+      SimpleDB.LOCK_ESCALATION_THRESHOLD = 3;
+      db = new SimpleDB("lockgranularitytest", 400, 8);
+      if (db.fileMgr().isNew()) {
+         Transaction tx = db.newTx();
+         for (int i=0; i<BLOCKS; i++)
+            tx.append("mglfile");
+         tx.commit();
+      }
+      intentionLocks();
+      escalation();
+   }
+
+   private static void intentionLocks() {
+      BlockId blk0 = new BlockId("mglfile", 0);
+      BlockId blk1 = new BlockId("mglfile", 1);
+
+      // tx1 reads the whole file and writes one block, so it holds SIX on the file
+      Transaction tx1 = db.newTx();
+      Transaction tx2 = db.newTx();
+      tx1.sLockFile("mglfile");
+      tx1.pin(blk0);
+      tx1.setInt(blk0, 0, tx1.getInt(blk0, 0), true);
+      tx2.pin(blk1);
+      tx2.getInt(blk1, 0);
+      System.out.println("Tx 2: read under SIX (should succeed): ok");
+      try {
+         tx2.setInt(blk1, 0, 0, true);
+         System.out.println("Tx 2: write under SIX (should abort): ok");
+      }
+      catch (LockAbortException e) {
+         System.out.println("Tx 2: write under SIX (should abort): aborted");
+         tx2.rollback();
+      }
+      tx1.commit();
+
+      // IX is compatible with IX
+      Transaction tx3 = db.newTx();
+      Transaction tx4 = db.newTx();
+      tx3.pin(blk0);
+      tx3.setInt(blk0, 0, 0, true);
+      tx4.pin(blk1);
+      tx4.setInt(blk1, 0, 0, true);
+      System.out.println("Tx 4: write beside another writer (should succeed): ok");
+      tx3.commit();
+      tx4.commit();
+   }
+
+   private static void escalation() {
+      // tx1 reads every block, which escalates its block locks to an SLock on the file
+      Transaction tx1 = db.newTx();
+      for (int i=0; i<BLOCKS; i++) {
+         BlockId blk = new BlockId("mglfile", i);
+         tx1.pin(blk);
+         tx1.getInt(blk, 0);
+         tx1.unpin(blk);
+      }
+      System.out.println("Escalations after reading (should be 1): " + tx1.lockEscalations());
+
+      Transaction tx2 = db.newTx();
+      BlockId blk5 = new BlockId("mglfile", 5);
+      tx2.pin(blk5);
+      tx2.getInt(blk5, 0);
+      System.out.println("Tx 2: read under the file SLock (should succeed): ok");
+      try {
+         tx2.setInt(blk5, 0, 0, true);
+         System.out.println("Tx 2: write under the file SLock (should abort): ok");
+      }
+      catch (LockAbortException e) {
+         System.out.println("Tx 2: write under the file SLock (should abort): aborted");
+         tx2.rollback();
+      }
+
+      // writing every block escalates again, to an XLock on the file
+      for (int i=0; i<BLOCKS; i++) {
+         BlockId blk = new BlockId("mglfile", i);
+         tx1.pin(blk);
+         tx1.setInt(blk, 0, i, true);
+         tx1.unpin(blk);
+      }
+      System.out.println("Escalations after writing (should be 2): " + tx1.lockEscalations());
+      tx1.commit();
+
+      Transaction tx3 = db.newTx();
+      int sum = 0;
+      for (int i=0; i<BLOCKS; i++) {
+         BlockId blk = new BlockId("mglfile", i);
+         tx3.pin(blk);
+         sum += tx3.getInt(blk, 0);
+         tx3.unpin(blk);
+      }
+      tx3.commit();
+      System.out.println("Sum of the blocks (should be 45): " + sum);
+   }
+}
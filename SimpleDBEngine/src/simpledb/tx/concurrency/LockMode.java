@@ -0,0 +1,53 @@
+package simpledb.tx.concurrency;
+
+/**
+ * The lock modes of multi-granularity locking. A transaction locks a file in
+ * one of the intention modes before locking blocks of it: IS before SLocking a
+ * block, and IX before XLocking one. Blocks are locked the same way before
+ * locking records of them. A transaction that reads the whole file can lock it
+ * in S mode instead, and one that also updates some of its blocks holds it in
+ * SIX mode.
+ */
+enum LockMode {
+	IS, IX, S, SIX, X;
+
+	private static final boolean[][] COMPATIBLE = {
+			// IS     IX     S      SIX    X
+			{ true,  true,  true,  true,  false }, // IS
+			{ true,  true,  false, false, false }, // IX
+			{ true,  false, true,  false, false }, // S
+			{ true,  false, false, false, false }, // SIX
+			{ false, false, false, false, false }  // X
+	};
+
+	/**
+	 * Determine whether a lock in this mode can be held at the same time as a
+	 * lock in the specified mode held by another transaction.
+	 */
+	boolean compatible(LockMode other) {
+		return COMPATIBLE[ordinal()][other.ordinal()];
+	}
+
+	/**
+	 * Return the weakest mode that grants everything this mode and the specified
+	 * mode grant.
+	 */
+	LockMode combine(LockMode other) {
+		if (this == other)
+			return this;
+		if (this == X || other == X)
+			return X;
+		if (this == SIX || other == SIX)
+			return SIX;
+		if ((this == S && other == IX) || (this == IX && other == S))
+			return SIX;
+		return (this == IS) ? other : this;
+	}
+
+	/**
+	 * Determine whether holding this mode already grants the specified mode.
+	 */
+	boolean covers(LockMode other) {
+		return combine(other) == this;
+	}
+}
@@ -1,179 +1,477 @@
 package simpledb.tx.concurrency;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
 import simpledb.file.BlockId;
 
 /**
- * The lock table, which provides methods to lock and unlock blocks. If a
- * transaction requests a lock that causes a conflict with an existing lock,
- * then that transaction is placed on a wait list. There is only one wait list
- * for all blocks. When the last lock on a block is unlocked, then all
- * transactions are removed from the wait list and rescheduled. If one of those
- * transactions discovers that the lock it is waiting for is still locked, it
- * will place itself back on the wait list.
- * 
+ * The lock table, which provides methods to lock and unlock blocks, files
+ * represented by a dummy block, and records identified by a {@link RecordId},
+ * in any {@link LockMode}. The table is divided into stripes by the hash of
+ * the locked item, and each stripe has its own latch, so requests for items in
+ * different stripes never wait for each other. Each locked item has an entry
+ * holding the mode held by each transaction and a FIFO queue of the requests
+ * waiting for it. A request is granted right away if it is compatible with the
+ * modes held by the other transactions and nobody is waiting; otherwise it
+ * joins the queue. A transaction that already holds the lock and asks for a
+ * stronger mode is upgraded to the combination of both modes, and its request
+ * goes ahead of the others in the queue. When a lock is released, the requests
+ * at the head of the item's queue are granted as long as they are compatible,
+ * and only those requests are woken up.
+ * <p>
+ * Deadlocks are handled according to the table's {@link DeadlockPolicy}. Under
+ * the wait-die policy, a transaction that would have to wait for an older
+ * transaction, whether it holds the lock or is ahead of it in the queue, is
+ * aborted instead. Under the detection policy every request waits, and a
+ * detector thread periodically latches all the stripes, builds the waits-for
+ * graph from the queues, and aborts one waiting transaction in each cycle,
+ * choosing the one that holds the fewest S, SIX and X locks; intention locks
+ * are not counted, since they only lead to the locks below them. The requests
+ * that an abort lets through are taken out of the graph before the next cycle
+ * is looked for. The number of aborts is counted separately for each policy.
+ *
  * @author Edward Sciore
  */
 class LockTable {
+	private static final int STRIPES = 64;
+	private static final long DETECT_INTERVAL_MS = 50;
+	private Stripe[] stripes = new Stripe[STRIPES];
+	private volatile DeadlockPolicy policy = DeadlockPolicy.WAIT_DIE;
+	private Map<DeadlockPolicy, AtomicLong> aborts = new EnumMap<>(DeadlockPolicy.class);
+	private AtomicInteger waiting = new AtomicInteger();
+	private Thread detector;
 
-	private Map<BlockId, List<Integer>> locks = new HashMap<BlockId, List<Integer>>();
+	LockTable() {
+		for (int i = 0; i < STRIPES; i++)
+			stripes[i] = new Stripe();
+		for (DeadlockPolicy p : DeadlockPolicy.values())
+			aborts.put(p, new AtomicLong());
+	}
 
 	/**
-	 * Grant an SLock on the specified block. If an XLock exists when the method is
-	 * called, if the calling thread is younger than the thread has XLock on the
-	 * block then an exception will be thrown. The calling thread (older) will wait
-	 * until the lock is released.
-	 * 
-	 * @param blk  a reference to the disk block
-	 * @param txid id of the transaction
+	 * Change the way deadlocks are handled. Switching to the detection policy
+	 * starts the detector thread, which stops once the policy changes again. The
+	 * detector decides to stop while holding this table's monitor, so a switch
+	 * back to detection either finds it still running or starts a new one.
+	 *
+	 * @param policy the new policy
 	 */
-	public synchronized void sLock(BlockId blk, int txid) {
+	synchronized void setPolicy(DeadlockPolicy policy) {
+		this.policy = policy;
+		if (policy == DeadlockPolicy.DETECT && detector == null) {
+			detector = new Thread(this::runDetector, "deadlock-detector");
+			detector.setDaemon(true);
+			detector.start();
+		}
+	}
 
-		if (shouldAbortThreadForSLock(blk, txid))
-			throw new LockAbortException();
+	DeadlockPolicy policy() {
+		return policy;
+	}
 
-		try {
-			while (hasXlock(blk))
-				wait(Long.MAX_VALUE);
-		} catch (InterruptedException e) {
-			throw new LockAbortException();
-		}
-		addLock(blk, txid);
+	/**
+	 * Returns the number of transactions aborted under the specified policy.
+	 *
+	 * @param policy a deadlock policy
+	 * @return the number of lock requests it has aborted
+	 */
+	long abortCount(DeadlockPolicy policy) {
+		return aborts.get(policy).get();
 	}
 
 	/**
-	 * Grant an XLock on the specified block. If a lock of any type exists when the
-	 * method is called, if the calling thread is younger than the thread has XLock
-	 * on the block then an exception will be thrown. The calling thread (older)
-	 * will wait until the lock is released.
-	 * 
+	 * Grant an SLock on the specified block.
+	 *
 	 * @param blk  a reference to the disk block
 	 * @param txid id of the transaction
-	 * 
 	 */
-	synchronized void xLock(BlockId blk, int txid) {
-		if (shouldAbortThreadForXLock(blk, txid))
-			throw new LockAbortException();
-
-		try {
-			while (hasXlock(blk))
-				wait(Long.MAX_VALUE);
-		} catch (InterruptedException e) {
-			throw new LockAbortException();
-		}
-
-		addLock(blk, txid * -1);
+	void sLock(BlockId blk, int txid) {
+		lock(blk, txid, LockMode.S);
 	}
 
 	/**
-	 * Release a lock on the specified block. If this lock is the last lock on that
-	 * block, then the waiting transactions are notified.
-	 * 
+	 * Grant an XLock on the specified block.
+	 *
 	 * @param blk  a reference to the disk block
 	 * @param txid id of the transaction
 	 */
-	synchronized void unlock(BlockId blk, int txid) {
-		if (removeLock(blk, txid)) {
-			notifyAll();
-		}
+	void xLock(BlockId blk, int txid) {
+		lock(blk, txid, LockMode.X);
 	}
 
 	/**
-	 * Release a lock on the specified block. If this lock is the last lock on that
-	 * block, then the waiting transactions are notified. Overloading the original
-	 * method for back compatibility.
-	 * 
-	 * @param blk a reference to the disk block
+	 * Grant a lock in the specified mode on the specified item. If the mode
+	 * conflicts with a lock held by another transaction, or other requests are
+	 * already waiting for the item, the calling thread waits its turn. Under
+	 * wait-die, an exception is thrown instead if one of those transactions is
+	 * older; under detection, it is thrown if the transaction is chosen to break a
+	 * deadlock. If the transaction already holds a lock on the item, the lock is
+	 * upgraded to the combination of the two modes.
+	 *
+	 * @param res  the block, file or record to lock
+	 * @param txid id of the transaction
+	 * @param mode the requested mode
 	 */
-	synchronized void unlock(BlockId blk) {
-		if (removeLock(blk)) {
-			notifyAll();
+	void lock(Object res, int txid, LockMode mode) {
+		Stripe stripe = stripe(res);
+		stripe.latch.lock();
+		try {
+			LockEntry entry = stripe.entries.computeIfAbsent(res, k -> new LockEntry());
+			LockMode held = entry.holders.get(txid);
+			boolean upgrade = (held != null);
+			if (upgrade)
+				mode = held.combine(mode);
+			if ((upgrade || entry.waiters.isEmpty()) && entry.compatible(txid, mode)) {
+				entry.holders.put(txid, mode);
+				return;
+			}
+			LockRequest req = new LockRequest(txid, mode, upgrade, stripe.latch.newCondition());
+			if (policy == DeadlockPolicy.WAIT_DIE && entry.mustDie(req)) {
+				if (entry.isUnused())
+					stripe.entries.remove(res);
+				aborts.get(DeadlockPolicy.WAIT_DIE).incrementAndGet();
+				throw new LockAbortException();
+			}
+			if (upgrade)
+				entry.waiters.addFirst(req);
+			else
+				entry.waiters.addLast(req);
+			waiting.incrementAndGet();
+			try {
+				while (!req.granted && !req.aborted)
+					req.ready.await();
+			} catch (InterruptedException e) {
+				if (!req.granted && !req.aborted) {
+					entry.waiters.remove(req);
+					entry.grantWaiters();
+					if (entry.isUnused())
+						stripe.entries.remove(res);
+					throw new LockAbortException();
+				}
+			} finally {
+				waiting.decrementAndGet();
+			}
+			if (req.aborted)
+				throw new LockAbortException();
+		} finally {
+			stripe.latch.unlock();
 		}
 	}
 
 	/**
-	 * Private helper method to add locks on blocks. If txid is negative, it is
-	 * xLock.
-	 * 
-	 * @param blk  a reference to the disk block
+	 * Grant a lock in the specified mode on the specified item if that can be done
+	 * without waiting, as {@link #lock(Object, int, LockMode)} would. Otherwise
+	 * the method returns false, leaving the table unchanged.
+	 *
+	 * @param res  the block, file or record to lock
 	 * @param txid id of the transaction
+	 * @param mode the requested mode
+	 * @return whether the lock was granted
 	 */
-	private void addLock(BlockId blk, int txid) {
-		List<Integer> blkLockList = locks.get(blk);
-		if (blkLockList == null) {
-			blkLockList = new ArrayList<Integer>();
-			locks.put(blk, blkLockList);
+	boolean tryLock(Object res, int txid, LockMode mode) {
+		Stripe stripe = stripe(res);
+		stripe.latch.lock();
+		try {
+			LockEntry entry = stripe.entries.computeIfAbsent(res, k -> new LockEntry());
+			LockMode held = entry.holders.get(txid);
+			if (held != null)
+				mode = held.combine(mode);
+			if ((held != null || entry.waiters.isEmpty()) && entry.compatible(txid, mode)) {
+				entry.holders.put(txid, mode);
+				return true;
+			}
+			if (entry.isUnused())
+				stripe.entries.remove(res);
+			return false;
+		} finally {
+			stripe.latch.unlock();
 		}
-		blkLockList.add(txid);
 	}
 
 	/**
-	 * Private helper method to remove locks from blocks.
-	 * 
-	 * @param blk  a reference to the disk block
+	 * Release the specified transaction's lock on the specified item, and grant
+	 * the waiting requests that have become compatible.
+	 *
+	 * @param res  the locked block, file or record
 	 * @param txid id of the transaction
 	 */
-	private boolean removeLock(BlockId blk, int txid) {
-		List<Integer> blkLockList = locks.get(blk);
-		if (blkLockList != null) {
-			blkLockList.remove(txid);
+	void unlock(Object res, int txid) {
+		Stripe stripe = stripe(res);
+		stripe.latch.lock();
+		try {
+			LockEntry entry = stripe.entries.get(res);
+			if (entry == null)
+				return;
+			entry.holders.remove(txid);
+			entry.grantWaiters();
+			if (entry.isUnused())
+				stripe.entries.remove(res);
+		} finally {
+			stripe.latch.unlock();
 		}
+	}
 
-		if (blkLockList == null || blkLockList.isEmpty()) {
-			return removeLock(blk);
+	/**
+	 * Determine whether a transaction other than the specified one holds a lock on
+	 * the specified item in one of the specified modes.
+	 *
+	 * @param res   the block, file or record
+	 * @param txid  id of the transaction to disregard
+	 * @param modes the modes of interest
+	 * @return whether another transaction holds such a lock
+	 */
+	boolean heldByOthers(Object res, int txid, Set<LockMode> modes) {
+		Stripe stripe = stripe(res);
+		stripe.latch.lock();
+		try {
+			LockEntry entry = stripe.entries.get(res);
+			if (entry == null)
+				return false;
+			for (Map.Entry<Integer, LockMode> e : entry.holders.entrySet()) {
+				if (e.getKey() != txid && modes.contains(e.getValue()))
+					return true;
+			}
+			return false;
+		} finally {
+			stripe.latch.unlock();
 		}
+	}
 
-		return false;
+	private void runDetector() {
+		try {
+			while (stillDetecting()) {
+				Thread.sleep(DETECT_INTERVAL_MS);
+				if (waiting.get() > 0)
+					detectDeadlocks();
+			}
+		} catch (InterruptedException e) {
+			synchronized (this) {
+				detector = null;
+			}
+		}
 	}
 
 	/**
-	 * Private helper method to remove locks from blocks. Overloading the original
-	 * method for back compatibility.
-	 * 
-	 * @param blk a reference to the disk block
+	 * Determine whether the detector thread should keep running, and forget the
+	 * thread if not.
 	 */
-	private boolean removeLock(BlockId blk) {
-		locks.remove(blk);
-		return true;
+	private synchronized boolean stillDetecting() {
+		if (policy == DeadlockPolicy.DETECT)
+			return true;
+		detector = null;
+		return false;
 	}
 
-	private boolean hasXlock(BlockId blk) {
-		List<Integer> blkLockList = locks.get(blk);
-
-		if (blkLockList == null) {
-			return false;
+	/**
+	 * Latch every stripe, in order, and break each cycle of the waits-for graph. A
+	 * waiting request has an edge to each transaction that holds a conflicting lock
+	 * on its block and, unless it is an upgrade, to each request ahead of it in the
+	 * queue. Since a transaction waits for one lock at a time, aborting the victim's
+	 * request removes all of its outgoing edges. The requests that the abort lets
+	 * through lose theirs too, and the edges of the requests still queued for the
+	 * same item are computed again.
+	 */
+	private void detectDeadlocks() {
+		for (Stripe stripe : stripes)
+			stripe.latch.lock();
+		try {
+			Map<Integer, List<Integer>> waitsFor = new HashMap<>();
+			Map<Integer, LockEntry> waitingIn = new HashMap<>();
+			Map<Integer, Integer> locksHeld = new HashMap<>();
+			for (Stripe stripe : stripes) {
+				for (LockEntry entry : stripe.entries.values()) {
+					for (Map.Entry<Integer, LockMode> e : entry.holders.entrySet())
+						if (e.getValue() != LockMode.IS && e.getValue() != LockMode.IX)
+							locksHeld.merge(e.getKey(), 1, Integer::sum);
+					for (LockRequest req : entry.waiters) {
+						waitsFor.put(req.txid, entry.blockers(req));
+						waitingIn.put(req.txid, entry);
+					}
+				}
+			}
+			List<Integer> cycle;
+			while ((cycle = findCycle(waitsFor)) != null) {
+				int victim = cycle.get(0);
+				for (int txid : cycle) {
+					int held = locksHeld.getOrDefault(txid, 0);
+					int victimHeld = locksHeld.getOrDefault(victim, 0);
+					if (held < victimHeld || (held == victimHeld && txid > victim))
+						victim = txid;
+				}
+				LockEntry entry = waitingIn.remove(victim);
+				waitsFor.remove(victim);
+				for (int txid : entry.abortWaiter(victim)) {
+					waitsFor.remove(txid);
+					waitingIn.remove(txid);
+				}
+				for (LockRequest req : entry.waiters)
+					waitsFor.put(req.txid, entry.blockers(req));
+				aborts.get(DeadlockPolicy.DETECT).incrementAndGet();
+			}
+			for (Stripe stripe : stripes)
+				stripe.entries.values().removeIf(LockEntry::isUnused);
+		} finally {
+			for (int i = stripes.length - 1; i >= 0; i--)
+				stripes[i].latch.unlock();
 		}
+	}
 
-		for (Integer lock : blkLockList) {
-			if (lock < 0) {
-				return true;
-			}
+	/**
+	 * Return the transactions of some cycle in the waits-for graph, or null if the
+	 * graph has no cycle.
+	 */
+	private static List<Integer> findCycle(Map<Integer, List<Integer>> waitsFor) {
+		Set<Integer> done = new HashSet<>();
+		for (int start : waitsFor.keySet()) {
+			List<Integer> path = new ArrayList<>();
+			List<Integer> cycle = findCycle(waitsFor, start, path, new HashSet<>(), done);
+			if (cycle != null)
+				return cycle;
 		}
+		return null;
+	}
 
-		return false;
+	private static List<Integer> findCycle(Map<Integer, List<Integer>> waitsFor, int txid, List<Integer> path,
+			Set<Integer> onPath, Set<Integer> done) {
+		if (onPath.contains(txid))
+			return new ArrayList<>(path.subList(path.indexOf(txid), path.size()));
+		if (done.contains(txid))
+			return null;
+		path.add(txid);
+		onPath.add(txid);
+		for (int next : waitsFor.getOrDefault(txid, Collections.emptyList())) {
+			List<Integer> cycle = findCycle(waitsFor, next, path, onPath, done);
+			if (cycle != null)
+				return cycle;
+		}
+		path.remove(path.size() - 1);
+		onPath.remove(txid);
+		done.add(txid);
+		return null;
 	}
 
-	private boolean shouldAbortThreadForSLock(BlockId blk, int txid) {
-		return shouldAbortThread(blk, txid, false);
+	private Stripe stripe(Object res) {
+		return stripes[Math.floorMod(res.hashCode(), STRIPES)];
 	}
 
-	private boolean shouldAbortThreadForXLock(BlockId blk, int txid) {
-		return shouldAbortThread(blk, txid, true);
+	/**
+	 * A partition of the lock table, with the latch that protects its entries.
+	 */
+	private static class Stripe {
+		private ReentrantLock latch = new ReentrantLock();
+		private Map<Object, LockEntry> entries = new HashMap<>();
 	}
 
-	private boolean shouldAbortThread(BlockId blk, int txid, boolean xLock) {
-		List<Integer> blkLockList = locks.get(blk);
-		if (blkLockList == null) {
+	/**
+	 * The locks held on one item, and the requests waiting for them in arrival
+	 * order.
+	 */
+	private static class LockEntry {
+		private Map<Integer, LockMode> holders = new HashMap<>();
+		private Deque<LockRequest> waiters = new ArrayDeque<>();
+
+		/**
+		 * Determine whether the specified transaction can hold the specified mode
+		 * alongside the locks of the other holders.
+		 */
+		private boolean compatible(int txid, LockMode mode) {
+			for (Map.Entry<Integer, LockMode> e : holders.entrySet())
+				if (e.getKey() != txid && !mode.compatible(e.getValue()))
+					return false;
+			return true;
+		}
+
+		/**
+		 * Grant the requests at the head of the queue, for as long as they are
+		 * compatible with the current holders.
+		 *
+		 * @return the transactions whose requests were granted
+		 */
+		private List<Integer> grantWaiters() {
+			List<Integer> granted = new ArrayList<>();
+			while (!waiters.isEmpty()) {
+				LockRequest req = waiters.peekFirst();
+				if (!compatible(req.txid, req.mode))
+					break;
+				waiters.pollFirst();
+				holders.put(req.txid, req.mode);
+				req.granted = true;
+				req.ready.signal();
+				granted.add(req.txid);
+			}
+			return granted;
+		}
+
+		/**
+		 * Determine whether the request would wait for an older transaction.
+		 */
+		private boolean mustDie(LockRequest req) {
+			for (int blocker : blockers(req))
+				if (blocker < req.txid)
+					return true;
 			return false;
 		}
 
-		txid = Math.abs(txid);
-		for (Integer lockedTxid : blkLockList) {
-			if (((!xLock && lockedTxid < 0) || xLock) && Math.abs(lockedTxid) < txid) {
-				return true;
+		/**
+		 * Return the transactions that the specified request waits for: the holders
+		 * of conflicting locks and, unless it is an upgrade, the transactions whose
+		 * requests are ahead of it in the queue.
+		 */
+		private List<Integer> blockers(LockRequest req) {
+			List<Integer> result = new ArrayList<>();
+			for (Map.Entry<Integer, LockMode> e : holders.entrySet())
+				if (e.getKey() != req.txid && !req.mode.compatible(e.getValue()))
+					result.add(e.getKey());
+			if (!req.upgrade) {
+				for (LockRequest ahead : waiters) {
+					if (ahead == req)
+						break;
+					result.add(ahead.txid);
+				}
 			}
+			return result;
 		}
 
-		return false;
+		/**
+		 * Remove the specified transaction's request from the queue and wake it up,
+		 * telling it that it has been aborted.
+		 *
+		 * @return the transactions whose requests were granted as a result
+		 */
+		private List<Integer> abortWaiter(int txid) {
+			for (LockRequest req : waiters) {
+				if (req.txid == txid) {
+					waiters.remove(req);
+					req.aborted = true;
+					req.ready.signal();
+					break;
+				}
+			}
+			return grantWaiters();
+		}
+
+		private boolean isUnused() {
+			return holders.isEmpty() && waiters.isEmpty();
+		}
+	}
+
+	/**
+	 * A request waiting in a block's queue, with the condition it waits on.
+	 */
+	private static class LockRequest {
+		private int txid;
+		private LockMode mode;
+		private boolean upgrade;
+		private boolean granted = false;
+		private boolean aborted = false;
+		private Condition ready;
+
+		private LockRequest(int txid, LockMode mode, boolean upgrade, Condition ready) {
+			this.txid = txid;
+			this.mode = mode;
+			this.upgrade = upgrade;
+			this.ready = ready;
+		}
 	}
 }
@@ -0,0 +1,65 @@
+package simpledb.tx.concurrency;
+
+import java.util.*;
+import simpledb.file.BlockId;
+
+public class LockTableTest {
+   private static LockTable locktbl = new LockTable();
+   private static BlockId blk1 = new BlockId("testfile", 1);
+   private static BlockId blk2 = new BlockId("testfile", 2);
+   private static List<Integer> granted = Collections.synchronizedList(new ArrayList<>());
+
+   public static void main(String[] args) throws Exception {
+      // a young transaction holds blk1; three older ones queue up for it
+      locktbl.sLock(blk1, 10);
+      locktbl.xLock(blk1, 10);
+      List<Thread> threads = new ArrayList<>();
+      for (int txid=3; txid>=1; txid--) {
+         Thread t = new Thread(new Waiter(txid));
+         t.start();
+         threads.add(t);
+         Thread.sleep(100);
+      }
+
+      // the queue on blk1 does not hold up other blocks
+      long start = System.currentTimeMillis();
+      locktbl.xLock(blk2, 20);
+      locktbl.unlock(blk2, 20);
+      System.out.println("Other block locked without waiting (should be true): "
+            + (System.currentTimeMillis() - start < 100));
+
+      // a transaction younger than the holder dies instead of waiting
+      boolean aborted = false;
+      try {
+         locktbl.sLock(blk1, 30);
+      }
+      catch (LockAbortException e) {
+         aborted = true;
+      }
+      System.out.println("Younger transaction aborted (should be true): " + aborted);
+
+      System.out.println("Granted while held (should be []): " + granted);
+      locktbl.unlock(blk1, 10);
+      for (Thread t : threads)
+         t.join();
+      System.out.println("Grant order (should be [3, 2, 1]): " + granted);
+   }
+
+   static class Waiter implements Runnable {
+      private int txid;
+
+      Waiter(int txid) {
+         this.txid = txid;
+      }
+
+      public void run() {
+         try {
+            locktbl.xLock(blk1, txid);
+            granted.add(txid);
+            Thread.sleep(50);
+            locktbl.unlock(blk1, txid);
+         }
+         catch (InterruptedException e) {}
+      }
+   }
+}
@@ -0,0 +1,184 @@
+package simpledb.tx.concurrency;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import simpledb.file.BlockId;
+
+/**
+ * The concurrency strategy of an optimistic transaction. The transaction takes
+ * no locks while it runs: the strategy only records the blocks it reads and
+ * the blocks it writes, and the transaction keeps its writes private. When the
+ * transaction commits, it is validated against the transactions that ended
+ * after it started (backward validation). The blocks it is about to write are
+ * XLocked first, so that locking transactions are not disturbed. Then, if one of
+ * the ended transactions wrote a block that this transaction read, or if
+ * another transaction still holds a write lock on such a block, the
+ * transaction is aborted. Otherwise it makes its writes and commits as usual.
+ * <p>
+ * The XLocks are taken before the read set is checked, because a transaction
+ * could otherwise write a block of the read set while this one waits for them.
+ * A transaction that has been validated holds the XLocks on its write set until
+ * it ends, which lets the validations that follow see its writes before they
+ * are recorded as ended.
+ */
+public class OptimisticConcurrencyMgr implements ConcurrencyStrategy {
+	private static AtomicLong clock = new AtomicLong();
+	private static ConcurrentSkipListMap<Long, Set<BlockId>> endedWrites = new ConcurrentSkipListMap<>();
+	private static TreeMap<Long, Integer> starts = new TreeMap<>();
+	private static volatile int active = 0;
+	private static final Set<LockMode> WRITE_MODES = EnumSet.of(LockMode.IX, LockMode.SIX, LockMode.X);
+	private static final Set<LockMode> EXCLUSIVE = EnumSet.of(LockMode.X);
+
+	private int txnum;
+	private long start;
+	private Set<BlockId> readSet = new HashSet<>();
+	private Set<BlockId> writeSet = new HashSet<>();
+	private ConcurrencyMgr installLocks;
+
+	/**
+	 * Create the strategy for the specified transaction, which starts now.
+	 *
+	 * @param txnum the ID of the transaction
+	 */
+	public OptimisticConcurrencyMgr(int txnum) {
+		this.txnum = txnum;
+		installLocks = new ConcurrencyMgr(txnum);
+		start = begin();
+	}
+
+	public void sLock(BlockId blk, int txid) {
+		readSet.add(blk);
+	}
+
+	public void xLock(BlockId blk, int txid) {
+		writeSet.add(blk);
+	}
+
+	public void sLockFile(String filename) {
+		readSet.add(fileBlock(filename));
+	}
+
+	public void xLockFile(String filename) {
+		readSet.add(fileBlock(filename));
+		writeSet.add(fileBlock(filename));
+	}
+
+	public void sLockRecord(BlockId blk, int slot) {
+		readSet.add(blk);
+	}
+
+	public void xLockRecord(BlockId blk, int slot) {
+		writeSet.add(blk);
+	}
+
+	public boolean tryXLockRecord(BlockId blk, int slot) {
+		writeSet.add(blk);
+		return true;
+	}
+
+	public void noteRead(BlockId blk) {
+		readSet.add(blk);
+	}
+
+	public boolean defersWrites() {
+		return true;
+	}
+
+	/**
+	 * XLock the transaction's write set and validate the transaction. The method
+	 * throws a {@link LockAbortException} if a block of the write set cannot be
+	 * locked, and a {@link ValidationAbortException} if the transaction read a
+	 * block that another transaction has written since this one started, or may
+	 * be writing now.
+	 */
+	public void validate() {
+		for (BlockId blk : writeSet)
+			installLocks.xLock(blk, txnum);
+		Set<String> filesRead = new HashSet<>();
+		for (BlockId blk : readSet)
+			filesRead.add(blk.fileName());
+		for (Set<BlockId> written : endedWrites.tailMap(start, false).values())
+			for (BlockId blk : written)
+				if (conflicts(blk, filesRead))
+					throw new ValidationAbortException();
+		for (BlockId blk : readSet) {
+			Set<LockMode> fileModes = isFileBlock(blk) ? WRITE_MODES : EXCLUSIVE;
+			if (ConcurrencyMgr.heldByOthers(blk, txnum, WRITE_MODES)
+					|| ConcurrencyMgr.heldByOthers(fileBlock(blk.fileName()), txnum, fileModes))
+				throw new ValidationAbortException();
+		}
+	}
+
+	public void releaseReadLocks(BlockId blk) {
+	}
+
+	/**
+	 * Release the locks taken to install the transaction's writes, which records
+	 * its write set for the validation of the other optimistic transactions, and
+	 * end the transaction.
+	 */
+	public void release() {
+		installLocks.release();
+		end(start);
+	}
+
+	public int escalationCount() {
+		return 0;
+	}
+
+	/**
+	 * Determine whether some optimistic transaction is running, in which case the
+	 * transactions that end must record their writes.
+	 */
+	static boolean isActive() {
+		return active > 0;
+	}
+
+	/**
+	 * Record the blocks written by a transaction that is ending.
+	 *
+	 * @param blks the blocks, and the dummy blocks of the files written as a whole
+	 */
+	static void recordWrites(Set<BlockId> blks) {
+		if (!blks.isEmpty())
+			endedWrites.put(clock.incrementAndGet(), blks);
+	}
+
+	/**
+	 * Determine whether a block written by another transaction is one that this
+	 * transaction read, or belongs to a file that it read as a whole.
+	 */
+	private boolean conflicts(BlockId written, Set<String> filesRead) {
+		if (isFileBlock(written))
+			return filesRead.contains(written.fileName());
+		return readSet.contains(written) || readSet.contains(fileBlock(written.fileName()));
+	}
+
+	private static synchronized long begin() {
+		active++;
+		long now = clock.get();
+		starts.merge(now, 1, Integer::sum);
+		return now;
+	}
+
+	/**
+	 * End the transaction that started at the specified time, and drop the write
+	 * sets that no running optimistic transaction needs to be validated against.
+	 */
+	private static synchronized void end(long start) {
+		if (starts.merge(start, -1, Integer::sum) == 0)
+			starts.remove(start);
+		active--;
+		long oldest = starts.isEmpty() ? clock.get() : starts.firstKey();
+		endedWrites.headMap(oldest, true).clear();
+	}
+
+	private static BlockId fileBlock(String filename) {
+		return new BlockId(filename, ConcurrencyMgr.FILE_LOCK);
+	}
+
+	private static boolean isFileBlock(BlockId blk) {
+		return blk.number() == ConcurrencyMgr.FILE_LOCK;
+	}
+}
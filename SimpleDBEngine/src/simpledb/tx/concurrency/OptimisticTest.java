@@ -0,0 +1,95 @@
+package simpledb.tx.concurrency;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import simpledb.server.SimpleDB;
+import simpledb.record.*;
+import simpledb.tx.Transaction;
+
+public class OptimisticTest {
+   private static SimpleDB db;
+   private static Layout layout;
+   private static AtomicInteger commits = new AtomicInteger();
+   private static AtomicInteger aborts = new AtomicInteger();
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("optimistictest", 400, 8);
+      Schema sch = new Schema();
+      sch.addIntField("count");
+      layout = new Layout(sch);
+
+      Transaction tx = db.newTx();
+      if (db.fileMgr().isNew()) {
+         TableScan ts = new TableScan(tx, "counter", layout);
+         ts.insert();
+         ts.setInt("count", 0);
+         ts.close();
+      }
+      else
+         tx.recover();
+      int start = read(tx);
+      tx.commit();
+
+      // Half of the threads increment the counter optimistically,
+      // the other half under locking.
+      Thread[] threads = new Thread[8];
+      for (int i=0; i<threads.length; i++) {
+         ConcurrencyControl cc = (i%2 == 0) ? ConcurrencyControl.OPTIMISTIC
+                                            : ConcurrencyControl.LOCKING;
+         threads[i] = new Thread(new Incrementer(cc));
+         threads[i].start();
+      }
+      for (Thread t : threads)
+         t.join();
+
+      tx = db.newTx();
+      int end = read(tx);
+      tx.commit();
+      System.out.println("commits: " + commits + ", aborts: " + aborts);
+      System.out.println("counter went from " + start + " to " + end);
+      System.out.println("no update was lost: " + (end - start == commits.get()));
+   }
+
+   private static int read(Transaction tx) {
+      TableScan ts = new TableScan(tx, "counter", layout);
+      ts.next();
+      int val = ts.getInt("count");
+      ts.close();
+      return val;
+   }
+
+   private static void write(Transaction tx, int val) {
+      TableScan ts = new TableScan(tx, "counter", layout);
+      ts.next();
+      ts.setInt("count", val);
+      ts.close();
+   }
+
+   static class Incrementer implements Runnable {
+      private ConcurrencyControl cc;
+
+      Incrementer(ConcurrencyControl cc) {
+         this.cc = cc;
+      }
+
+      public void run() {
+         for (int i=0; i<50; i++) {
+            Transaction tx = db.newTx(cc);
+            try {
+               int val = read(tx);
+               write(tx, val+1);
+               tx.commit();
+               commits.incrementAndGet();
+            }
+            catch (ValidationAbortException e) {
+               // the transaction has already been rolled back
+               aborts.incrementAndGet();
+            }
+            catch (LockAbortException e) {
+               if (cc == ConcurrencyControl.LOCKING)
+                  tx.rollback();
+               aborts.incrementAndGet();
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,36 @@
+package simpledb.tx.concurrency;
+
+import simpledb.file.BlockId;
+
+/**
+ * The identifier of a record that is locked on its own: the record's block
+ * together with the number of its slot in that block.
+ */
+class RecordId {
+	private BlockId blk;
+	private int slot;
+
+	RecordId(BlockId blk, int slot) {
+		this.blk = blk;
+		this.slot = slot;
+	}
+
+	BlockId block() {
+		return blk;
+	}
+
+	public boolean equals(Object obj) {
+		if (!(obj instanceof RecordId))
+			return false;
+		RecordId r = (RecordId) obj;
+		return blk.equals(r.blk) && slot == r.slot;
+	}
+
+	public String toString() {
+		return "[" + blk + ", slot " + slot + "]";
+	}
+
+	public int hashCode() {
+		return 31 * blk.hashCode() + slot;
+	}
+}
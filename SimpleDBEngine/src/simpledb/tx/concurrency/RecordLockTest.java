@@ -0,0 +1,55 @@
+package simpledb.tx.concurrency;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.BlockId;
+import simpledb.tx.Transaction;
+
+public class RecordLockTest {
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("recordlocktest", 400, 8);
+      BlockId blk0 = new BlockId("recfile", 0);
+      BlockId blk1 = new BlockId("recfile", 1);
+
+      // records of the same block can be locked by different transactions
+      Transaction tx1 = db.newTx();
+      Transaction tx2 = db.newTx();
+      Transaction tx3 = db.newTx();
+      tx1.xLockRecord(blk0, 0);
+      tx2.xLockRecord(blk0, 1);
+      tx3.sLockRecord(blk0, 2);
+      System.out.println("Tx 1, 2, 3: lock records 0, 1, 2 of one block (should succeed): ok");
+      tryLock("Tx 2: xlock record 0 (should abort)", tx2, () -> tx2.xLockRecord(blk0, 0));
+      tryLock("Tx 3: xlock the block (should abort)", tx3, () -> tx3.xLockBlock(blk0));
+      tx1.commit();
+
+      // a lock on the block covers its records
+      Transaction tx4 = db.newTx();
+      Transaction tx5 = db.newTx();
+      tx4.xLockBlock(blk1);
+      tx4.xLockRecord(blk1, 3);
+      tryLock("Tx 5: slock a record of tx 4's block (should abort)", tx5, () -> tx5.sLockRecord(blk1, 3));
+      tx4.commit();
+
+      // record locks count towards escalation, the intention locks on their blocks do not
+      ConcurrencyMgr.setEscalationThreshold(4);
+      Transaction tx6 = db.newTx();
+      for (int slot=0; slot<4; slot++)
+         tx6.sLockRecord(blk0, slot);
+      System.out.println("Escalations after 4 record locks (should be 0): " + tx6.lockEscalations());
+      tx6.sLockRecord(blk1, 0);
+      System.out.println("Escalations after 5 record locks (should be 1): " + tx6.lockEscalations());
+      tx6.commit();
+   }
+
+   // Request a lock for the transaction, which then ends without writing.
+   private static void tryLock(String msg, Transaction tx, Runnable request) {
+      try {
+         request.run();
+         System.out.println(msg + ": granted");
+      }
+      catch (LockAbortException e) {
+         System.out.println(msg + ": aborted");
+      }
+      tx.rollback();
+   }
+}
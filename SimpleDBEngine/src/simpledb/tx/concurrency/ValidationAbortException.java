@@ -0,0 +1,11 @@
+package simpledb.tx.concurrency;
+
+/**
+ * A runtime exception indicating that an optimistic transaction
+ * needs to abort because it failed validation at commit time.
+ */
+@SuppressWarnings("serial")
+public class ValidationAbortException extends RuntimeException {
+   public ValidationAbortException() {
+   }
+}
@@ -0,0 +1,91 @@
+package simpledb.tx.concurrency;
+
+import simpledb.server.SimpleDB;
+import simpledb.record.*;
+import simpledb.tx.Transaction;
+
+public class ValidationTest {
+   private static SimpleDB db;
+   private static Layout layout;
+
+   public static void main(String[] args) {
+      db = new SimpleDB("validationtest", 400, 8);
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      layout = new Layout(sch);
+      if (db.fileMgr().isNew()) {
+         // fill three blocks
+         Transaction tx = db.newTx();
+         TableScan ts = new TableScan(tx, "T", layout);
+         for (int i=0; i<3*(400/layout.slotSize()); i++) {
+            ts.insert();
+            ts.setInt("A", 0);
+         }
+         ts.close();
+         tx.commit();
+      }
+      else {
+         Transaction tx = db.newTx();
+         tx.recover();
+         tx.commit();
+      }
+
+      // optimistic transactions that write different blocks both commit
+      Transaction o1 = db.newTx(ConcurrencyControl.OPTIMISTIC);
+      Transaction o2 = db.newTx(ConcurrencyControl.OPTIMISTIC);
+      set(o1, 0, 0, 1);
+      set(o2, 1, 0, 2);
+      System.out.println("o1 reads its own write (should be 1): " + get(o1, 0, 0));
+      System.out.println("o2 reads its own write (should be 2): " + get(o2, 1, 0));
+      commit("o1 (should commit)", o1);
+      commit("o2 (should commit)", o2);
+
+      // o4 read a block that o3 wrote and committed first
+      Transaction o3 = db.newTx(ConcurrencyControl.OPTIMISTIC);
+      Transaction o4 = db.newTx(ConcurrencyControl.OPTIMISTIC);
+      int seen = get(o4, 2, 0);
+      set(o3, 2, 0, seen+1);
+      set(o4, 2, 0, seen+1);
+      commit("o3 (should commit)", o3);
+      commit("o4 (should abort)", o4);
+
+      // o5 read a block that an active locking transaction has written
+      Transaction tx = db.newTx();
+      Transaction o5 = db.newTx(ConcurrencyControl.OPTIMISTIC);
+      set(tx, 1, 1, 7);
+      get(o5, 1, 1);
+      set(o5, 0, 1, 5);
+      commit("o5 (should abort)", o5);
+      tx.commit();
+
+      tx = db.newTx();
+      System.out.println("Values (should be 1 2 " + (seen+1) + " 7 0): " + get(tx, 0, 0) + " "
+            + get(tx, 1, 0) + " " + get(tx, 2, 0) + " " + get(tx, 1, 1) + " " + get(tx, 0, 1));
+      tx.commit();
+   }
+
+   private static void commit(String name, Transaction tx) {
+      try {
+         tx.commit();
+         System.out.println(name + ": committed");
+      }
+      catch (ValidationAbortException e) {
+         System.out.println(name + ": aborted");
+      }
+   }
+
+   private static int get(Transaction tx, int blknum, int slot) {
+      TableScan ts = new TableScan(tx, "T", layout);
+      ts.moveToRid(new RID(blknum, slot));
+      int val = ts.getInt("A");
+      ts.close();
+      return val;
+   }
+
+   private static void set(Transaction tx, int blknum, int slot, int val) {
+      TableScan ts = new TableScan(tx, "T", layout);
+      ts.moveToRid(new RID(blknum, slot));
+      ts.setInt("A", val);
+      ts.close();
+   }
+}
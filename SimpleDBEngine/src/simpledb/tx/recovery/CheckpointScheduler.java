@@ -0,0 +1,70 @@
+package simpledb.tx.recovery;
+
+import simpledb.buffer.BufferMgr;
+import simpledb.log.LogMgr;
+
+/**
+ * A background thread that writes fuzzy checkpoints. A checkpoint is taken once
+ * enough log records have been written since the previous one, or once enough
+ * time has passed and at least one record has been written. Transactions never
+ * wait for it.
+ */
+public class CheckpointScheduler extends Thread {
+	private static final long POLL_MILLIS = 100;
+	private LogMgr lm;
+	private BufferMgr bm;
+	private int logRecords;
+	private long intervalMillis;
+	private int lastCkptLSN;
+	private long lastCkptTime;
+	private volatile boolean running = true;
+
+	/**
+	 * Create a scheduler for the specified log and buffer managers.
+	 *
+	 * @param lm             the log manager
+	 * @param bm             the buffer manager
+	 * @param logRecords     the number of log records that triggers a checkpoint
+	 * @param intervalMillis the longest time between checkpoints, in milliseconds
+	 */
+	public CheckpointScheduler(LogMgr lm, BufferMgr bm, int logRecords, long intervalMillis) {
+		super("checkpoint-scheduler");
+		this.lm = lm;
+		this.bm = bm;
+		this.logRecords = logRecords;
+		this.intervalMillis = intervalMillis;
+		lastCkptLSN = lm.latestLSN();
+		lastCkptTime = System.currentTimeMillis();
+		setDaemon(true);
+	}
+
+	public void run() {
+		try {
+			while (running) {
+				Thread.sleep(POLL_MILLIS);
+				if (checkpointDue())
+					checkpoint();
+			}
+		} catch (InterruptedException e) {
+		}
+	}
+
+	/**
+	 * Stop the scheduler. The thread is not interrupted, because an interrupt
+	 * would close the file channel of a checkpoint that is under way.
+	 */
+	public void shutdown() {
+		running = false;
+	}
+
+	private boolean checkpointDue() {
+		int written = lm.latestLSN() - lastCkptLSN;
+		long elapsed = System.currentTimeMillis() - lastCkptTime;
+		return written >= logRecords || (written > 0 && elapsed >= intervalMillis);
+	}
+
+	private void checkpoint() {
+		lastCkptLSN = RecoveryMgr.fuzzyCheckpoint(lm, bm);
+		lastCkptTime = System.currentTimeMillis();
+	}
+}
@@ -0,0 +1,54 @@
+package simpledb.tx.recovery;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.BlockId;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+public class CheckpointSchedulerTest {
+   private static SimpleDB db;
+   private static LogMgr lm;
+   private static BlockId blk;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("checkpointschedulertest", 400, 8);
+      lm = db.logMgr();
+      blk = new BlockId("ckptfile", 0);
+      if (db.fileMgr().length("ckptfile") == 0)
+         db.fileMgr().append("ckptfile");
+
+      // a checkpoint every 100 log records, or every second
+      CheckpointScheduler scheduler = new CheckpointScheduler(lm, db.bufferMgr(), 100, 1000);
+      scheduler.start();
+
+      // each transaction writes three log records
+      int before = lm.latestLSN();
+      for (int i=0; i<120; i++)
+         update(i);
+      Thread.sleep(300);
+      int ckpts = lm.latestLSN() - before - 360;
+      System.out.println("Checkpoints after 360 log records (should be 1 to 3): " + ckpts);
+
+      // the records since the last checkpoint are checkpointed once the interval
+      // has passed, and nothing more is written while the log is idle
+      Thread.sleep(1500);
+      System.out.println("Last record is a checkpoint (should be true): " + lastIsCheckpoint());
+      before = lm.latestLSN();
+      Thread.sleep(1500);
+      System.out.println("Records written while idle (should be 0): " + (lm.latestLSN() - before));
+      scheduler.shutdown();
+   }
+
+   private static void update(int val) {
+      Transaction tx = db.newTx();
+      tx.pin(blk);
+      tx.setInt(blk, 0, val, true);
+      tx.unpin(blk);
+      tx.commit();
+   }
+
+   private static boolean lastIsCheckpoint() {
+      byte[] bytes = lm.iterator().next();
+      return LogRecord.createLogRecord(bytes).op() == LogRecord.FUZZYCKPT;
+   }
+}
@@ -30,6 +30,12 @@ public class CommitRecord implements LogRecord {
     */
    public void undo(Transaction tx) {}
 
+   /**
+    * Does nothing, because a commit record
+    * contains no redo information.
+    */
+   public void redo(Transaction tx) {}
+
    public String toString() {
       return "<COMMIT " + txnum + ">";
    }
@@ -0,0 +1,163 @@
+package simpledb.tx.recovery;
+
+import java.util.*;
+
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The FUZZYCKPT log record. It is written while transactions keep running, and
+ * records the transactions that were active and the dirty page table, along
+ * with the LSN from which recovery has to redo updates and the LSN of the
+ * earliest START record of an active transaction. Recovery only relies on the
+ * two LSNs, so the lists are cut short if the record would not fit in a block.
+ */
+public class FuzzyCheckpointRecord implements LogRecord {
+	private int redoLSN, undoLSN;
+	private List<Integer> txs = new ArrayList<>();
+	private Map<BlockId, Integer> dirtyPages = new LinkedHashMap<>();
+
+	public FuzzyCheckpointRecord(Page p) {
+		int pos = Integer.BYTES;
+		redoLSN = p.getInt(pos);
+		pos += Integer.BYTES;
+		undoLSN = p.getInt(pos);
+		pos += Integer.BYTES;
+		int txCount = p.getInt(pos);
+		pos += Integer.BYTES;
+		for (int i = 0; i < txCount; i++) {
+			txs.add(p.getInt(pos));
+			pos += Integer.BYTES;
+		}
+		int pageCount = p.getInt(pos);
+		pos += Integer.BYTES;
+		for (int i = 0; i < pageCount; i++) {
+			String filename = p.getString(pos);
+			pos += Page.maxLength(filename.length());
+			int blknum = p.getInt(pos);
+			pos += Integer.BYTES;
+			dirtyPages.put(new BlockId(filename, blknum), p.getInt(pos));
+			pos += Integer.BYTES;
+		}
+	}
+
+	public int op() {
+		return FUZZYCKPT;
+	}
+
+	/**
+	 * Checkpoint records have no associated transaction, and so the method returns
+	 * a "dummy", negative txid.
+	 */
+	public int txNumber() {
+		return -1; // dummy value
+	}
+
+	public void undo(Transaction tx) {
+	}
+
+	public void redo(Transaction tx) {
+	}
+
+	/**
+	 * Returns the LSN of the earliest log record whose change may not be on disk.
+	 */
+	public int redoLSN() {
+		return redoLSN;
+	}
+
+	/**
+	 * Returns the LSN of the earliest START record of a transaction that was
+	 * active at the checkpoint.
+	 */
+	public int undoLSN() {
+		return undoLSN;
+	}
+
+	public List<Integer> getTxs() {
+		return txs;
+	}
+
+	public Map<BlockId, Integer> dirtyPages() {
+		return dirtyPages;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<FUZZYCKPT ");
+		sb.append(redoLSN);
+		sb.append(" ");
+		sb.append(undoLSN);
+		sb.append(" (");
+		for (Integer tx : txs) {
+			sb.append(" ");
+			sb.append(tx);
+		}
+		sb.append(" ) (");
+		for (Map.Entry<BlockId, Integer> e : dirtyPages.entrySet()) {
+			sb.append(" ");
+			sb.append(e.getKey());
+			sb.append("=");
+			sb.append(e.getValue());
+		}
+		sb.append(" )>");
+		return sb.toString();
+	}
+
+	/**
+	 * A static method to write a fuzzy checkpoint record to the log. This log record
+	 * contains the FUZZYCKPT operator, the redo and undo LSNs, the number of active
+	 * transactions followed by their ids, and the number of dirty pages followed by
+	 * the filename, block number and recovery LSN of each one. Transactions and
+	 * pages that would make the record too large for a log block are left out.
+	 *
+	 * @return the LSN of the last log value
+	 */
+	public static int writeToLog(LogMgr lm, int redoLSN, int undoLSN, Collection<Integer> txs,
+			Map<BlockId, Integer> dirtyPages) {
+		int maxlen = lm.maxRecordSize();
+		int reclen = 5 * Integer.BYTES;
+		List<Integer> txlist = new ArrayList<>();
+		for (int txnum : txs) {
+			if (reclen + Integer.BYTES > maxlen)
+				break;
+			txlist.add(txnum);
+			reclen += Integer.BYTES;
+		}
+		Map<BlockId, Integer> dpt = new LinkedHashMap<>();
+		for (Map.Entry<BlockId, Integer> e : dirtyPages.entrySet()) {
+			int entrylen = Page.maxLength(e.getKey().fileName().length()) + 2 * Integer.BYTES;
+			if (reclen + entrylen > maxlen)
+				break;
+			dpt.put(e.getKey(), e.getValue());
+			reclen += entrylen;
+		}
+		byte[] rec = new byte[reclen];
+		Page p = new Page(rec);
+		p.setInt(0, FUZZYCKPT);
+		int pos = Integer.BYTES;
+		p.setInt(pos, redoLSN);
+		pos += Integer.BYTES;
+		p.setInt(pos, undoLSN);
+		pos += Integer.BYTES;
+		p.setInt(pos, txlist.size());
+		pos += Integer.BYTES;
+		for (int txnum : txlist) {
+			p.setInt(pos, txnum);
+			pos += Integer.BYTES;
+		}
+		p.setInt(pos, dpt.size());
+		pos += Integer.BYTES;
+		for (Map.Entry<BlockId, Integer> e : dpt.entrySet()) {
+			BlockId blk = e.getKey();
+			p.setString(pos, blk.fileName());
+			pos += Page.maxLength(blk.fileName().length());
+			p.setInt(pos, blk.number());
+			pos += Integer.BYTES;
+			p.setInt(pos, e.getValue());
+			pos += Integer.BYTES;
+		}
+		return lm.append(rec);
+	}
+}
@@ -0,0 +1,78 @@
+package simpledb.tx.recovery;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.tx.Transaction;
+
+public class FuzzyCheckpointTest {
+   private static SimpleDB db;
+   private static FileMgr fm;
+   private static BlockId blk0, blk1;
+
+   public static void main(String[] args) {
+      db = new SimpleDB("fuzzycheckpointtest", 400, 8);
+      fm = db.fileMgr();
+      blk0 = new BlockId("fuzzyfile", 0);
+      blk1 = new BlockId("fuzzyfile", 1);
+
+      if (fm.length("fuzzyfile") == 0) {
+         fm.append("fuzzyfile");
+         fm.append("fuzzyfile");
+         crash();
+      }
+      else {
+         recover();
+      }
+   }
+
+   private static void crash() {
+      Transaction txA = db.newTx();
+      txA.pin(blk0);
+      txA.setInt(blk0, 0, 11, true);
+      txA.commit();
+
+      // txB is active across both checkpoints, and never finishes
+      Transaction txB = db.newTx();
+      txB.pin(blk1);
+      txB.setInt(blk1, 0, 22, true);
+
+      // enough committed transactions to fill several log segments
+      for (int i=0; i<300; i++) {
+         Transaction tx = db.newTx();
+         tx.pin(blk0);
+         tx.setInt(blk0, 40, i, true);
+         tx.commit();
+      }
+      RecoveryMgr.fuzzyCheckpoint(db.logMgr(), db.bufferMgr());
+      System.out.println("log segments after the first checkpoint: " + db.logMgr().segmentCount());
+
+      txB.setInt(blk1, 4, 33, true);
+      db.bufferMgr().flushAll();
+
+      // txC commits after the last checkpoint; its change is only in the log
+      Transaction txC = db.newTx();
+      txC.pin(blk0);
+      txC.setInt(blk0, 8, 44, true);
+      txC.commit();
+      RecoveryMgr.fuzzyCheckpoint(db.logMgr(), db.bufferMgr());
+      System.out.println("log segments after the second checkpoint: " + db.logMgr().segmentCount());
+      printValues("Before crash:");
+   }
+
+   private static void recover() {
+      Transaction tx = db.newTx();
+      tx.recover();
+      printValues("After recovery (should be 11 44 299 | 0 0):");
+   }
+
+   // Print the values that made it to disk.
+   private static void printValues(String msg) {
+      System.out.println(msg);
+      Page p0 = new Page(fm.blockSize());
+      Page p1 = new Page(fm.blockSize());
+      fm.read(blk0, p0);
+      fm.read(blk1, p1);
+      System.out.print(p0.getInt(0) + " " + p0.getInt(8) + " " + p0.getInt(40) + " | ");
+      System.out.println(p1.getInt(0) + " " + p1.getInt(4));
+   }
+}
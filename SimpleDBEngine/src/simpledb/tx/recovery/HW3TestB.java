@@ -14,7 +14,6 @@ public class HW3TestB {
 		BufferMgr bm = db.bufferMgr();
 		Transaction tx = new Transaction(fm, lm, bm);
 		System.out.println("Initiating Recovery");
-		System.out.println("Here are the visited log records");
 		tx.recover();
 	}
 }
@@ -9,7 +9,8 @@ import simpledb.tx.Transaction;
  * @author Edward Sciore
  */
 public interface LogRecord {
-	static final int CHECKPOINT = 0, START = 1, COMMIT = 2, ROLLBACK = 3, SETINT = 4, SETSTRING = 5, NQCKPT = 6;
+	static final int CHECKPOINT = 0, START = 1, COMMIT = 2, ROLLBACK = 3, SETINT = 4, SETSTRING = 5, NQCKPT = 6,
+			FUZZYCKPT = 7, INSERTSLOT = 8, DELETESLOT = 9, UPDATESLOT = 10;
 
 	/**
 	 * Returns the log record's type.
@@ -27,12 +28,21 @@ public interface LogRecord {
 
 	/**
 	 * Undoes the operation encoded by this log record. The only log record types
-	 * for which this method does anything interesting are SETINT and SETSTRING.
+	 * for which this method does anything interesting are SETINT, SETSTRING and
+	 * the slot records.
 	 * 
 	 * @param txnum the id of the transaction that is performing the undo.
 	 */
 	void undo(Transaction tx);
 
+	/**
+	 * Redoes the operation encoded by this log record, using the after-image that
+	 * the record saved. As with undo, only the records that change a block do anything.
+	 * 
+	 * @param tx the transaction that is performing the redo.
+	 */
+	void redo(Transaction tx);
+
 	/**
 	 * Interpret the bytes returned by the log iterator.
 	 * 
@@ -56,6 +66,12 @@ public interface LogRecord {
 			return new SetStringRecord(p);
 		case NQCKPT:
 			return new NQCheckpoint(p);
+		case FUZZYCKPT:
+			return new FuzzyCheckpointRecord(p);
+		case INSERTSLOT:
+		case DELETESLOT:
+		case UPDATESLOT:
+			return new SlotRecord(p);
 		default:
 			return null;
 		}
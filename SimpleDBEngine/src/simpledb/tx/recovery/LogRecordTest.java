@@ -0,0 +1,67 @@
+package simpledb.tx.recovery;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.log.*;
+
+public class LogRecordTest {
+   private static final int COUNT = 300;
+
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("logrecordtest", 400, 8);
+      LogMgr lm = db.logMgr();
+
+      // write enough records to fill many log blocks
+      List<String> expected = new ArrayList<>();
+      for (int i=0; i<COUNT; i++) {
+         BlockId blk = new BlockId("logfile" + (i%3), i);
+         StartRecord.writeToLog(lm, i);
+         expected.add("<START " + i + ">");
+         SetIntRecord.writeToLog(lm, i, blk, 4*(i%50), i, -i);
+         expected.add("<SETINT " + i + " " + blk + " " + 4*(i%50) + " " + i + " " + -i + ">");
+         SetStringRecord.writeToLog(lm, i, blk, 200, "old" + i, "new" + i);
+         expected.add("<SETSTRING " + i + " " + blk + " 200 old" + i + " new" + i + ">");
+         CommitRecord.writeToLog(lm, i);
+         expected.add("<COMMIT " + i + ">");
+      }
+
+      // read them back, most recent first, through the view and through the iterator
+      LogCursor cursor = lm.cursor();
+      LogRecordView view = new LogRecordView(cursor);
+      Iterator<byte[]> iter = lm.iterator();
+      int read = 0, wrong = 0;
+      boolean sameBytes = true;
+      for (int i=expected.size()-1; i>=0 && cursor.next(); i--) {
+         LogRecord rec = view.toLogRecord();
+         if (view.op() != rec.op() || view.txNumber() != rec.txNumber()
+               || !rec.toString().equals(expected.get(i)))
+            wrong++;
+         if (!Arrays.equals(cursor.bytes(), iter.next()))
+            sameBytes = false;
+         read++;
+      }
+      System.out.println("Records read back (should be " + expected.size() + "): " + read);
+      System.out.println("Records that differ from what was written (should be 0): " + wrong);
+      System.out.println("Cursor and iterator return the same bytes (should be true): " + sameBytes);
+
+      // appending through a reused writer allocates nothing, once warmed up; only
+      // moving to a new log block allocates, so the log has large blocks, and the
+      // quietest round is taken, which stays within one block
+      FileMgr fm = new FileMgr(new File("logrecordtest/alloc"), 65536);
+      LogMgr biglm = new LogMgr(fm, "alloclog", 4);
+      SetIntRecord.Writer writer = new SetIntRecord.Writer();
+      BlockId blk = new BlockId("logfile", 0);
+      com.sun.management.ThreadMXBean bean =
+            (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+      long allocated = Long.MAX_VALUE;
+      for (int round=0; round<20; round++) {
+         long start = bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+         for (int i=0; i<1000; i++)
+            writer.writeToLog(biglm, 1, blk, 0, i, i+1);
+         allocated = Math.min(allocated, bean.getThreadAllocatedBytes(Thread.currentThread().getId()) - start);
+      }
+      System.out.println("Bytes allocated by 1000 appends (should be 0): " + allocated);
+   }
+}
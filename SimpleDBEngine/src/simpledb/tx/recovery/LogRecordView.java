@@ -0,0 +1,56 @@
+package simpledb.tx.recovery;
+
+import simpledb.log.LogCursor;
+
+/**
+ * A reusable view of the log record under a {@link LogCursor}. It decodes the
+ * record's operator and transaction id in place, so records that a scan skips
+ * are never copied; {@link #toLogRecord()} builds the full record when needed.
+ */
+public class LogRecordView {
+	private LogCursor cursor;
+
+	/**
+	 * Create a view of the records under the specified cursor.
+	 * 
+	 * @param cursor the log cursor
+	 */
+	public LogRecordView(LogCursor cursor) {
+		this.cursor = cursor;
+	}
+
+	/**
+	 * Returns the current record's type.
+	 * 
+	 * @return the log record's type
+	 */
+	public int op() {
+		return cursor.page().getInt(cursor.position());
+	}
+
+	/**
+	 * Returns the transaction id stored with the current record, or -1 for a
+	 * checkpoint record.
+	 * 
+	 * @return the log record's transaction id
+	 */
+	public int txNumber() {
+		switch (op()) {
+		case LogRecord.CHECKPOINT:
+		case LogRecord.NQCKPT:
+		case LogRecord.FUZZYCKPT:
+			return -1;
+		default:
+			return cursor.page().getInt(cursor.position() + Integer.BYTES);
+		}
+	}
+
+	/**
+	 * Copies the current record and interprets it as a log record.
+	 * 
+	 * @return the current log record
+	 */
+	public LogRecord toLogRecord() {
+		return LogRecord.createLogRecord(cursor.bytes());
+	}
+}
@@ -37,6 +37,9 @@ public class NQCheckpoint implements LogRecord {
 	public void undo(Transaction tx) {
 	}
 
+	public void redo(Transaction tx) {
+	}
+
 	public List<Integer> getTxs() {
 		return txs;
 	}
@@ -0,0 +1,77 @@
+package simpledb.tx.recovery;
+
+import java.io.*;
+import java.nio.file.*;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.tx.Transaction;
+
+public class ParallelRedoTest {
+   private static final int BLOCKS = 40;
+
+   public static void main(String[] args) throws IOException {
+      File dir = new File("parallelredotest");
+      File copy = new File("parallelredotest2");
+      if (!dir.exists()) {
+         crash(new SimpleDB(dir.getName(), 400, 8));
+      }
+      else {
+         // recover the crashed database and a copy of it,
+         // serially and in parallel, and compare the results
+         copyDir(dir, copy);
+         long serial = recover(new SimpleDB(dir.getName(), 400, 8), 1);
+         long parallel = recover(new SimpleDB(copy.getName(), 400, 8), 4);
+         System.out.println("contents after serial recovery:   " + serial);
+         System.out.println("contents after parallel recovery: " + parallel);
+         System.out.println("same contents: " + (serial == parallel));
+      }
+   }
+
+   private static void crash(SimpleDB db) {
+      for (int i=0; i<BLOCKS; i++)
+         db.fileMgr().append("parfile");
+      Transaction loser = db.newTx();
+      for (int round=0; round<5; round++) {
+         for (int i=0; i<BLOCKS; i++) {
+            BlockId blk = new BlockId("parfile", i);
+            Transaction tx = db.newTx();
+            tx.pin(blk);
+            tx.setInt(blk, 4*round, 100*i + round, true);
+            tx.setString(blk, 100, "s" + i + "_" + round, true);
+            tx.commit();
+         }
+      }
+      for (int i=0; i<BLOCKS; i+=3) {
+         BlockId blk = new BlockId("parfile", i);
+         loser.pin(blk);
+         loser.setInt(blk, 0, -1, true);
+         loser.unpin(blk);
+      }
+      System.out.println("crashed with " + db.logMgr().segmentCount() + " log segments");
+   }
+
+   private static long recover(SimpleDB db, int nthreads) {
+      Transaction tx = db.newTx();
+      tx.recover(nthreads);
+      FileMgr fm = db.fileMgr();
+      Page p = new Page(fm.blockSize());
+      long hash = 0;
+      for (int i=0; i<BLOCKS; i++) {
+         fm.read(new BlockId("parfile", i), p);
+         for (int round=0; round<5; round++)
+            hash = 31*hash + p.getInt(4*round);
+         hash = 31*hash + p.getString(100).hashCode();
+      }
+      return hash;
+   }
+
+   private static void copyDir(File from, File to) throws IOException {
+      if (to.exists())
+         for (File f : to.listFiles())
+            f.delete();
+      to.mkdirs();
+      for (File f : from.listFiles())
+         Files.copy(f.toPath(), new File(to, f.getName()).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+   }
+}
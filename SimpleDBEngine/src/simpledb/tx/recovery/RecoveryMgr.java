@@ -1,10 +1,13 @@
 package simpledb.tx.recovery;
 
 import java.util.*;
+import java.util.concurrent.*;
 import simpledb.file.*;
 import simpledb.log.*;
 import simpledb.buffer.*;
+import simpledb.tx.SlotUpdate;
 import simpledb.tx.Transaction;
+import simpledb.tx.TransactionTable;
 import static simpledb.tx.recovery.LogRecord.*;
 
 /**
@@ -13,10 +16,24 @@ import static simpledb.tx.recovery.LogRecord.*;
  * @author Edward Sciore
  */
 public class RecoveryMgr {
+	/**
+	 * The maximum number of update records kept in a transaction's undo list. For
+	 * the updates past it, only the log addresses of their records are kept, and
+	 * rollback reads those records back from the log.
+	 */
+	static final int MAX_UNDO_RECORDS = 1000;
 	private LogMgr lm;
 	private BufferMgr bm;
 	private Transaction tx;
 	private int txnum;
+	private TransactionTable.Entry entry;
+	private UndoList undoList = new UndoList();
+	private long[] undoAddresses = new long[16];
+	private int addressCount = 0;
+	private SetIntRecord.Writer intWriter = new SetIntRecord.Writer();
+	private SetStringRecord.Writer stringWriter = new SetStringRecord.Writer();
+	private SlotRecord.Writer slotWriter = new SlotRecord.Writer();
+	private Set<Buffer> unloggedBuffs = new HashSet<>();
 
 	/**
 	 * Create a recovery manager for the specified transaction.
@@ -28,38 +45,65 @@ public class RecoveryMgr {
 		this.txnum = txnum;
 		this.lm = lm;
 		this.bm = bm;
-		StartRecord.writeToLog(lm, txnum);
+		entry = Transaction.transactionTable().get(txnum);
+		int lsn = StartRecord.writeToLog(lm, txnum);
+		entry.setStartLSN(lsn);
 	}
 
 	/**
-	 * Write a commit record to the log, and flushes it to disk.
+	 * Write a commit record to the log, and flushes it to disk. The transaction's
+	 * modified buffers are not flushed: the update records carry the new values,
+	 * so recovery can redo any of them that did not reach the disk. The exception
+	 * is the buffers holding unlogged changes, which cannot be redone.
 	 */
 	public void commit() {
-		bm.flushAll(txnum);
+		bm.flush(unloggedBuffs);
 		int lsn = CommitRecord.writeToLog(lm, txnum);
 		lm.flush(lsn);
+		entry.setStartLSN(-1);
 	}
 
 	/**
-	 * Write a rollback record to the log and flush it to disk.
+	 * Write a rollback record to the log and flush it to disk. The undo writes are
+	 * not logged, so the buffers they changed are flushed before the rollback
+	 * record is written; recovery can then skip rolled-back transactions entirely.
+	 * Those buffers are flushed even if another transaction has modified them
+	 * since, as happens when transactions update different records of a block.
 	 */
 	public void rollback() {
 		doRollback();
-		bm.flushAll(txnum);
+		bm.flush(unloggedBuffs);
 		int lsn = RollbackRecord.writeToLog(lm, txnum);
 		lm.flush(lsn);
+		entry.setStartLSN(-1);
 	}
 
-	public void checkpoint(List<Integer> txs) {
-		StringBuilder sb = new StringBuilder();
-		for (Integer tx : txs) {
-			sb.append(" ");
-			sb.append(tx);
-		}
-		System.out.println("NQ CHECKPOINT: Transactions" + sb.toString() + " are still active");
-		bm.flushAll(txnum);
-		int lsn = NQCheckpoint.writeToLog(lm, txs);
+	/**
+	 * Write a fuzzy checkpoint record to the log and flush it, without flushing any
+	 * buffers and without stopping running transactions. The record holds the
+	 * active transactions and the dirty page table. Its redo LSN is the earliest
+	 * recovery LSN of a dirty buffer, or the LSN following the last record written
+	 * before the dirty page table was read, whichever is smaller. The active
+	 * transactions come from a snapshot of the {@link TransactionTable}. Log
+	 * segments that recovery no longer needs are then released.
+	 * 
+	 * @param lm the log manager
+	 * @param bm the buffer manager
+	 * @return the LSN of the checkpoint record
+	 */
+	public static int fuzzyCheckpoint(LogMgr lm, BufferMgr bm) {
+		int redoLSN = lm.latestLSN() + 1;
+		Map<Integer, Integer> activeTxs = Transaction.transactionTable().startLSNs();
+		Map<BlockId, Integer> dirtyPages = bm.dirtyPages();
+		for (int reclsn : dirtyPages.values())
+			redoLSN = Math.min(redoLSN, reclsn);
+		int undoLSN = redoLSN;
+		for (int startlsn : activeTxs.values())
+			undoLSN = Math.min(undoLSN, startlsn);
+		int lsn = FuzzyCheckpointRecord.writeToLog(lm, redoLSN, undoLSN, activeTxs.keySet(), dirtyPages);
 		lm.flush(lsn);
+		lm.truncate(oldestNeededLSN(undoLSN));
+		return lsn;
 	}
 
 	/**
@@ -67,10 +111,23 @@ public class RecoveryMgr {
 	 * checkpoint record to the log and flush it.
 	 */
 	public void recover() {
-		doRecover();
-		bm.flushAll(txnum);
+		recover(1);
+	}
+
+	/**
+	 * Recover uncompleted transactions from the log, using the specified number of
+	 * threads to replay the changes, and then write a quiescent checkpoint record
+	 * to the log and flush it. With more than one thread, the changes are grouped
+	 * by block and the blocks are divided among the threads.
+	 * 
+	 * @param nthreads the number of threads that redo and undo changes
+	 */
+	public void recover(int nthreads) {
+		doRecover(nthreads);
+		bm.flushAll();
 		int lsn = CheckpointRecord.writeToLog(lm);
 		lm.flush(lsn);
+		lm.truncate(oldestNeededLSN(lsn));
 	}
 
 	/**
@@ -83,7 +140,12 @@ public class RecoveryMgr {
 	public int setInt(Buffer buff, int offset, int newval) {
 		int oldval = buff.contents().getInt(offset);
 		BlockId blk = buff.block();
-		return SetIntRecord.writeToLog(lm, txnum, blk, offset, oldval);
+		int lsn = intWriter.writeToLog(lm, txnum, blk, offset, oldval, newval);
+		if (keepUndo())
+			undoList.addInt(blk, offset, oldval);
+		else
+			keepAddress(intWriter.address());
+		return lsn;
 	}
 
 	/**
@@ -96,66 +158,272 @@ public class RecoveryMgr {
 	public int setString(Buffer buff, int offset, String newval) {
 		String oldval = buff.contents().getString(offset);
 		BlockId blk = buff.block();
-		return SetStringRecord.writeToLog(lm, txnum, blk, offset, oldval);
+		int lsn = stringWriter.writeToLog(lm, txnum, blk, offset, oldval, newval);
+		if (keepUndo())
+			undoList.addString(blk, offset, oldval);
+		else
+			keepAddress(stringWriter.address());
+		return lsn;
+	}
+
+	/**
+	 * Write a slot record to the log and return its lsn. The before-image holds the
+	 * slot's current header and the current values of the fields being written. A
+	 * change whose record would not fit in a log block is logged as several slot
+	 * records, each holding a piece of it, and the lsn of the last one is returned.
+	 * 
+	 * @param op    INSERTSLOT, DELETESLOT or UPDATESLOT
+	 * @param buff  the buffer containing the page
+	 * @param after the new image of the slot
+	 */
+	public int setSlot(int op, Buffer buff, SlotUpdate after) {
+		BlockId blk = buff.block();
+		SlotUpdate before = after.before(buff.contents());
+		if (SlotRecord.logSize(blk, before, after) <= lm.maxRecordSize())
+			return logSlot(op, blk, before, after);
+		int lsn = -1;
+		for (SlotUpdate piece : SlotRecord.split(blk, after, lm.maxRecordSize()))
+			lsn = logSlot(op, blk, piece.before(buff.contents()), piece);
+		return lsn;
 	}
 
 	/**
-	 * Rollback the transaction, by iterating through the log records until it finds
-	 * the transaction's START record, calling undo() for each of the transaction's
-	 * log records.
+	 * Write one slot record to the log, and add its before-image to the undo list.
+	 */
+	private int logSlot(int op, BlockId blk, SlotUpdate before, SlotUpdate after) {
+		int lsn = slotWriter.writeToLog(lm, op, txnum, blk, before, after);
+		if (keepUndo()) {
+			undoList.addInt(blk, before.offset(), before.flag());
+			for (int i = 0; i < before.size(); i++) {
+				if (before.isInt(i))
+					undoList.addInt(blk, before.fieldOffset(i), before.getInt(i));
+				else if (before.isBytes(i))
+					undoList.addBytes(blk, before.fieldOffset(i), before.getBytes(i));
+				else if (before.isBit(i))
+					undoList.addBit(blk, before.bitPosition(i), before.getBit(i));
+				else
+					undoList.addString(blk, before.fieldOffset(i), before.getString(i));
+			}
+		}
+		else
+			keepAddress(slotWriter.address());
+		return lsn;
+	}
+
+	/**
+	 * Note that the transaction changed the specified buffer without logging the
+	 * change, as is done when formatting a new block or undoing an update. Such a
+	 * change cannot be redone, so the buffer will be flushed when the transaction
+	 * commits or rolls back.
+	 * 
+	 * @param buff the changed buffer
+	 */
+	public void unloggedUpdate(Buffer buff) {
+		unloggedBuffs.add(buff);
+	}
+
+	/**
+	 * Return the oldest LSN that recovery may still need to read after a checkpoint
+	 * written at the specified LSN, which is the earliest START record of an active
+	 * transaction or else the checkpoint itself.
+	 */
+	private static int oldestNeededLSN(int ckptlsn) {
+		int oldest = ckptlsn;
+		for (int lsn : Transaction.transactionTable().startLSNs().values())
+			oldest = Math.min(oldest, lsn);
+		return oldest;
+	}
+
+	/**
+	 * Determine whether the next update can be saved in the transaction's undo
+	 * list. Once the list holds {@link #MAX_UNDO_RECORDS} entries, the later
+	 * updates are remembered by the log addresses of their records instead.
+	 */
+	private boolean keepUndo() {
+		return undoList.size() < MAX_UNDO_RECORDS;
+	}
+
+	private void keepAddress(long address) {
+		if (addressCount == undoAddresses.length)
+			undoAddresses = Arrays.copyOf(undoAddresses, 2 * addressCount);
+		undoAddresses[addressCount++] = address;
+	}
+
+	/**
+	 * Rollback the transaction. The updates past the undo list are undone first,
+	 * from the most recent to the earliest, by reading each of their records at
+	 * its remembered address; the log blocks in between, and the records of other
+	 * transactions, are never read. The entries of the undo list are then undone
+	 * without reading the log.
 	 */
 	private void doRollback() {
-		Iterator<byte[]> iter = lm.iterator();
-		while (iter.hasNext()) {
-			byte[] bytes = iter.next();
-			LogRecord rec = LogRecord.createLogRecord(bytes);
-			if (rec.txNumber() == txnum) {
-				if (rec.op() == START)
-					return;
-				rec.undo(tx);
+		if (addressCount > 0) {
+			LogCursor cursor = lm.cursor(); // flushes the log, so every record can be read
+			LogRecordView view = new LogRecordView(cursor);
+			for (int i = addressCount - 1; i >= 0; i--) {
+				cursor.moveTo(undoAddresses[i]);
+				view.toLogRecord().undo(tx);
 			}
+			addressCount = 0;
 		}
+		undoList.undoAll(tx);
 	}
 
 	/**
-	 * Do a complete database recovery. The method iterates through the log records.
-	 * Whenever it finds a log record for an unfinished transaction, it calls undo()
-	 * on that record. The method stops when it encounters a CHECKPOINT record or
-	 * the end of the log.
-	 */
-	private void doRecover() {
-		Collection<Integer> finishedTxs = new ArrayList<>();
-		Iterator<byte[]> iter = lm.iterator();
-		while (iter.hasNext()) {
-			byte[] bytes = iter.next();
-			LogRecord rec = LogRecord.createLogRecord(bytes);
-			System.out.println(rec);
-			if (rec.op() == CHECKPOINT)
-				return;
-			if (rec.op() == COMMIT || rec.op() == ROLLBACK)
-				finishedTxs.add(rec.txNumber());
-			else if (rec.op() == NQCKPT) {
-				List<Integer> activeTxs = ((NQCheckpoint) rec).getTxs();
-				// Remove finished transactions
-				activeTxs.removeAll(finishedTxs);
-
-				// Get first (earliest) txId
-				int earliestActiveTxId = activeTxs.get(0);
-
-				while (iter.hasNext()) {
-					byte[] bytes2 = iter.next();
-					LogRecord rec2 = LogRecord.createLogRecord(bytes2);
-					System.out.println(rec2);
-					// No need to iterate further
-					if (rec2.txNumber() == earliestActiveTxId && rec2.op() == START) {
-						return;
-					}
-					if (activeTxs.contains(rec2.txNumber())) {
-						rec2.undo(tx);
-					}
+	 * Do a complete database recovery, in three passes. The analysis pass reads the
+	 * log backwards to the most recent checkpoint, keeping the update records it
+	 * reads and noting which transactions committed or rolled back. For a nonquiescent
+	 * checkpoint it keeps reading until it has seen the START record of each
+	 * transaction that was active at the checkpoint and never finished. For a fuzzy
+	 * checkpoint it keeps reading back to the checkpoint's redo and undo LSNs. The
+	 * redo pass then repeats history forward from the redo point, for every
+	 * transaction except the rolled-back ones, whose pages were flushed by their
+	 * rollback. Finally, the undo pass goes backwards through the records and
+	 * undoes each update of a transaction that never finished.
+	 */
+	private void doRecover(int nthreads) {
+		List<LogRecord> recs = new ArrayList<>(); // update records, most recent first
+		Set<Integer> committedTxs = new HashSet<>();
+		Set<Integer> rolledBackTxs = new HashSet<>();
+		Set<Integer> pendingStarts = null;
+		boolean foundCkpt = false;
+		int redoLSN = 0, stopLSN = 0;
+		int redopos = -1;
+		LogCursor cursor = lm.cursor();
+		LogRecordView view = new LogRecordView(cursor);
+		int lsn = lm.latestLSN() + 1;
+		while (cursor.next()) {
+			lsn--;
+			if (foundCkpt && lsn < stopLSN && (pendingStarts == null || pendingStarts.isEmpty()))
+				break; // No need to iterate further
+			int op = view.op();
+			if (op == CHECKPOINT)
+				break;
+			if (op == COMMIT)
+				committedTxs.add(view.txNumber());
+			else if (op == ROLLBACK)
+				rolledBackTxs.add(view.txNumber());
+			else if (op == START) {
+				if (pendingStarts != null)
+					pendingStarts.remove(view.txNumber());
+			} else if (op == NQCKPT) {
+				if (!foundCkpt) {
+					foundCkpt = true;
+					redoLSN = stopLSN = lsn;
+					pendingStarts = new HashSet<>(((NQCheckpoint) view.toLogRecord()).getTxs());
+					pendingStarts.removeAll(committedTxs);
+					pendingStarts.removeAll(rolledBackTxs);
+				}
+			} else if (op == FUZZYCKPT) {
+				if (!foundCkpt) {
+					foundCkpt = true;
+					FuzzyCheckpointRecord ckpt = (FuzzyCheckpointRecord) view.toLogRecord();
+					redoLSN = ckpt.redoLSN();
+					stopLSN = Math.min(redoLSN, ckpt.undoLSN());
 				}
-			} else if (!finishedTxs.contains(rec.txNumber()))
+			} else {
+				// only the records that change blocks are kept
+				recs.add(view.toLogRecord());
+				if (lsn >= redoLSN)
+					redopos = recs.size() - 1;
+			}
+		}
+
+		// The records to redo, in log order
+		List<LogRecord> redoRecs = new ArrayList<>();
+		for (int i = redopos; i >= 0; i--) {
+			LogRecord rec = recs.get(i);
+			if (!rolledBackTxs.contains(rec.txNumber()))
+				redoRecs.add(rec);
+		}
+
+		// The records to undo, in reverse log order. Any transaction whose records
+		// were read would have had its COMMIT or ROLLBACK record read as well.
+		List<LogRecord> undoRecs = new ArrayList<>();
+		for (LogRecord rec : recs) {
+			int txn = rec.txNumber();
+			if (!committedTxs.contains(txn) && !rolledBackTxs.contains(txn))
+				undoRecs.add(rec);
+		}
+
+		if (nthreads > 1)
+			replayInParallel(redoRecs, undoRecs, nthreads);
+		else {
+			for (LogRecord rec : redoRecs)
+				rec.redo(tx);
+			for (LogRecord rec : undoRecs)
 				rec.undo(tx);
 		}
 	}
+
+	/**
+	 * Redo and undo the specified records on a pool of threads. The records are
+	 * first grouped by the block they change, keeping their relative order, so each
+	 * block's redo list and then its undo list can be applied by a single thread
+	 * without touching any other block. The blocks are divided among the threads by
+	 * hash, and each thread pins one block at a time directly from the buffer
+	 * manager; no locks are needed, since recovery runs before other transactions.
+	 */
+	private void replayInParallel(List<LogRecord> redoRecs, List<LogRecord> undoRecs, int nthreads) {
+		Map<BlockId, List<UpdateRecord>> redoWork = groupByBlock(redoRecs);
+		Map<BlockId, List<UpdateRecord>> undoWork = groupByBlock(undoRecs);
+		Set<BlockId> blocks = new LinkedHashSet<>(redoWork.keySet());
+		blocks.addAll(undoWork.keySet());
+		nthreads = Math.max(1, Math.min(nthreads, Math.min(blocks.size(), bm.available())));
+
+		List<List<BlockId>> partitions = new ArrayList<>();
+		for (int i = 0; i < nthreads; i++)
+			partitions.add(new ArrayList<>());
+		for (BlockId blk : blocks)
+			partitions.get(Math.floorMod(blk.hashCode(), nthreads)).add(blk);
+
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (List<BlockId> partition : partitions) {
+			tasks.add(() -> {
+				for (BlockId blk : partition) {
+					Buffer buff = bm.pin(blk);
+					Page p = buff.contents();
+					buff.latchExclusive();
+					try {
+						for (UpdateRecord rec : redoWork.getOrDefault(blk, Collections.emptyList()))
+							rec.redo(p);
+						for (UpdateRecord rec : undoWork.getOrDefault(blk, Collections.emptyList()))
+							rec.undo(p);
+						buff.setModified(txnum, -1);
+					} finally {
+						buff.unlatchExclusive();
+					}
+					bm.unpin(buff);
+				}
+				return null;
+			});
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(nthreads);
+		try {
+			for (Future<Void> f : pool.invokeAll(tasks))
+				f.get();
+		} catch (InterruptedException e) {
+			throw new RuntimeException("recovery was interrupted");
+		} catch (ExecutionException e) {
+			throw new RuntimeException("recovery failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Group the update records in the specified list by the block they change,
+	 * keeping them in the same order within each block.
+	 */
+	private static Map<BlockId, List<UpdateRecord>> groupByBlock(List<LogRecord> recs) {
+		Map<BlockId, List<UpdateRecord>> work = new LinkedHashMap<>();
+		for (LogRecord rec : recs) {
+			if (rec instanceof UpdateRecord) {
+				UpdateRecord urec = (UpdateRecord) rec;
+				work.computeIfAbsent(urec.block(), k -> new ArrayList<>()).add(urec);
+			}
+		}
+		return work;
+	}
 }
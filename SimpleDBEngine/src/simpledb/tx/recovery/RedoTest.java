@@ -0,0 +1,61 @@
+package simpledb.tx.recovery;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.tx.Transaction;
+
+public class RedoTest {
+   private static SimpleDB db;
+   private static FileMgr fm;
+   private static BlockId blk0, blk1;
+
+   public static void main(String[] args) {
+      db = new SimpleDB("redotest", 400, 8);
+      fm = db.fileMgr();
+      blk0 = new BlockId("redofile", 0);
+      blk1 = new BlockId("redofile", 1);
+
+      if (fm.length("redofile") == 0) {
+         fm.append("redofile");
+         fm.append("redofile");
+         crash();
+      }
+      else {
+         recover();
+      }
+   }
+
+   private static void crash() {
+      // tx1 never finishes, but its changes reach the disk
+      Transaction tx1 = db.newTx();
+      tx1.pin(blk0);
+      tx1.setInt(blk0, 0, 7, true);
+      tx1.setString(blk0, 20, "loser", true);
+      db.bufferMgr().flushAll();
+
+      // tx2 commits, but its changes never reach the disk
+      Transaction tx2 = db.newTx();
+      tx2.pin(blk1);
+      tx2.setInt(blk1, 0, 42, true);
+      tx2.setString(blk1, 20, "winner", true);
+      tx2.commit();
+      printValues("Before crash:");
+   }
+
+   private static void recover() {
+      Transaction tx = db.newTx();
+      tx.recover();
+      printValues("After recovery (should be 0 42 winner):");
+   }
+
+   // Print the values that made it to disk.
+   private static void printValues(String msg) {
+      System.out.println(msg);
+      Page p0 = new Page(fm.blockSize());
+      Page p1 = new Page(fm.blockSize());
+      fm.read(blk0, p0);
+      fm.read(blk1, p1);
+      System.out.print(p0.getInt(0) + " " + p0.getString(20) + " ");
+      System.out.println(p1.getInt(0) + " " + p1.getString(20));
+   }
+}
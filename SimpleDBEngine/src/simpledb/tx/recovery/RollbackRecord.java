@@ -34,6 +34,12 @@ public class RollbackRecord implements LogRecord {
     */
    public void undo(Transaction tx) {}
 
+   /**
+    * Does nothing, because a rollback record
+    * contains no redo information.
+    */
+   public void redo(Transaction tx) {}
+
    public String toString() {
       return "<ROLLBACK " + txnum + ">";
    }
@@ -0,0 +1,80 @@
+package simpledb.tx.recovery;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.tx.Transaction;
+
+public class RollbackTest {
+   private static SimpleDB db;
+   private static BlockId blk0, blk1;
+
+   public static void main(String[] args) {
+      db = new SimpleDB("rollbacktest", 400, 8);
+      blk0 = new BlockId("rollbackfile", 0);
+      blk1 = new BlockId("rollbackfile", 1);
+      if (db.fileMgr().length("rollbackfile") == 0) {
+         db.fileMgr().append("rollbackfile");
+         db.fileMgr().append("rollbackfile");
+      }
+
+      Transaction tx = db.newTx();
+      tx.pin(blk0);
+      tx.pin(blk1);
+      for (int pos=0; pos<40; pos+=Integer.BYTES) {
+         tx.setInt(blk0, pos, pos, true);
+         tx.setInt(blk1, pos, pos, true);
+      }
+      tx.setString(blk0, 100, "abc", true);
+      tx.unpin(blk0);
+      tx.unpin(blk1);
+      tx.commit();
+      printValues("Before (should be 0 4 abc | 0 4):");
+
+      // tx1 rolls back while tx2, whose updates are interleaved with its own, commits
+      Transaction tx1 = db.newTx();
+      Transaction tx2 = db.newTx();
+      tx1.pin(blk0);
+      tx2.pin(blk1);
+      tx1.setInt(blk0, 0, 100, true);
+      tx2.setInt(blk1, 0, 200, true);
+      tx1.setInt(blk0, 0, 101, true);
+      tx1.setString(blk0, 100, "uvw", true);
+      tx2.setInt(blk1, 4, 204, true);
+      tx1.setString(blk0, 100, "xyz", true);
+      tx1.unpin(blk0);
+      tx2.unpin(blk1);
+      tx1.rollback();
+      tx2.commit();
+      printValues("After one rollback (should be 0 4 abc | 200 204):");
+
+      // more updates than the undo list keeps, interleaved with
+      // the updates of a transaction that commits
+      Transaction tx3 = db.newTx();
+      Transaction tx4 = db.newTx();
+      tx3.pin(blk0);
+      tx4.pin(blk1);
+      for (int i=0; i<2*RecoveryMgr.MAX_UNDO_RECORDS; i++) {
+         tx3.setInt(blk0, (i%10)*Integer.BYTES, 1000+i, true);
+         if (i%100 == 0)
+            tx4.setInt(blk1, (i/100%2)*Integer.BYTES, 300+(i/100%2)*4, true);
+      }
+      tx3.setString(blk0, 100, "big", true);
+      tx3.unpin(blk0);
+      tx4.unpin(blk1);
+      tx4.commit();
+      tx3.rollback();
+      printValues("After a large rollback (should be 0 4 abc | 300 304):");
+   }
+
+   private static void printValues(String msg) {
+      Transaction tx = db.newTx();
+      tx.pin(blk0);
+      tx.pin(blk1);
+      System.out.println(msg);
+      System.out.println(tx.getInt(blk0, 0) + " " + tx.getInt(blk0, 4) + " " + tx.getString(blk0, 100)
+            + " | " + tx.getInt(blk1, 0) + " " + tx.getInt(blk1, 4));
+      tx.unpin(blk0);
+      tx.unpin(blk1);
+      tx.commit();
+   }
+}
@@ -1,11 +1,11 @@
 package simpledb.tx.recovery;
 
 import simpledb.file.*;
-import simpledb.log.LogMgr;
+import simpledb.log.*;
 import simpledb.tx.Transaction;
 
-public class SetIntRecord implements LogRecord {
-	private int txnum, offset, val;
+public class SetIntRecord implements UpdateRecord {
+	private int txnum, offset, val, newval;
 	private BlockId blk;
 
 	/**
@@ -25,6 +25,8 @@ public class SetIntRecord implements LogRecord {
 		offset = p.getInt(opos);
 		int vpos = opos + Integer.BYTES;
 		val = p.getInt(vpos);
+		int npos = vpos + Integer.BYTES;
+		newval = p.getInt(npos);
 	}
 
 	public int op() {
@@ -35,8 +37,12 @@ public class SetIntRecord implements LogRecord {
 		return txnum;
 	}
 
+	public BlockId block() {
+		return blk;
+	}
+
 	public String toString() {
-		return "<SETINT " + txnum + " " + blk + " " + offset + " " + val + ">";
+		return "<SETINT " + txnum + " " + blk + " " + offset + " " + val + " " + newval + ">";
 	}
 
 	/**
@@ -47,34 +53,91 @@ public class SetIntRecord implements LogRecord {
 	 * @see simpledb.tx.recovery.LogRecord#undo(int)
 	 */
 	public void undo(Transaction tx) {
-		System.out.println("\t undoing record");
 		tx.pin(blk);
 		tx.setInt(blk, offset, val, false); // don't log the undo!
 		tx.unpin(blk);
 	}
 
+	/**
+	 * Write the value saved in the log record back into the specified block. Like
+	 * undo, the method pins a buffer to the block, calls setInt without logging, and
+	 * unpins the buffer. Since the value is physical, redoing a record more than
+	 * once has the same effect as redoing it once.
+	 */
+	public void redo(Transaction tx) {
+		tx.pin(blk);
+		tx.setInt(blk, offset, newval, false);
+		tx.unpin(blk);
+	}
+
+	public void undo(Page p) {
+		p.setInt(offset, val);
+	}
+
+	public void redo(Page p) {
+		p.setInt(offset, newval);
+	}
+
 	/**
 	 * A static method to write a setInt record to the log. This log record contains
 	 * the SETINT operator, followed by the transaction id, the filename, number,
-	 * and offset of the modified block, and the previous integer value at that
-	 * offset.
+	 * and offset of the modified block, the previous integer value at that offset,
+	 * and the new integer value.
 	 * 
 	 * @return the LSN of the last log value
 	 */
-	public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, int val) {
-		int tpos = Integer.BYTES;
-		int fpos = tpos + Integer.BYTES;
-		int bpos = fpos + Page.maxLength(blk.fileName().length());
-		int opos = bpos + Integer.BYTES;
-		int vpos = opos + Integer.BYTES;
-		byte[] rec = new byte[vpos + Integer.BYTES];
-		Page p = new Page(rec);
-		p.setInt(0, SETINT);
-		p.setInt(tpos, txnum);
-		p.setString(fpos, blk.fileName());
-		p.setInt(bpos, blk.number());
-		p.setInt(opos, offset);
-		p.setInt(vpos, val);
-		return lm.append(rec);
+	public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, int val, int newval) {
+		return new Writer().writeToLog(lm, txnum, blk, offset, val, newval);
+	}
+
+	/**
+	 * A reusable serializer for setint records, which writes each record straight
+	 * into the log buffer. A transaction keeps one, so logging an update does not
+	 * allocate.
+	 */
+	static class Writer implements LogWritable {
+		private int txnum, offset, val, newval;
+		private BlockId blk;
+		private long address;
+
+		int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, int val, int newval) {
+			this.txnum = txnum;
+			this.blk = blk;
+			this.offset = offset;
+			this.val = val;
+			this.newval = newval;
+			return lm.append(this);
+		}
+
+		public int logSize() {
+			return Page.maxLength(blk.fileName().length()) + 6 * Integer.BYTES;
+		}
+
+		public void writeTo(Page p, int pos) {
+			int tpos = pos + Integer.BYTES;
+			int fpos = tpos + Integer.BYTES;
+			int bpos = fpos + Page.maxLength(blk.fileName().length());
+			int opos = bpos + Integer.BYTES;
+			int vpos = opos + Integer.BYTES;
+			int npos = vpos + Integer.BYTES;
+			p.setInt(pos, SETINT);
+			p.setInt(tpos, txnum);
+			p.setString(fpos, blk.fileName());
+			p.setInt(bpos, blk.number());
+			p.setInt(opos, offset);
+			p.setInt(vpos, val);
+			p.setInt(npos, newval);
+		}
+
+		public void appended(long address) {
+			this.address = address;
+		}
+
+		/**
+		 * Returns the log address of the last record written.
+		 */
+		long address() {
+			return address;
+		}
 	}
 }
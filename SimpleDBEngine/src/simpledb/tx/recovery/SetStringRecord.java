@@ -1,12 +1,12 @@
 package simpledb.tx.recovery;
 
 import simpledb.file.*;
-import simpledb.log.LogMgr;
+import simpledb.log.*;
 import simpledb.tx.Transaction;
 
-public class SetStringRecord implements LogRecord {
+public class SetStringRecord implements UpdateRecord {
 	private int txnum, offset;
-	private String val;
+	private String val, newval;
 	private BlockId blk;
 
 	/**
@@ -26,6 +26,8 @@ public class SetStringRecord implements LogRecord {
 		offset = p.getInt(opos);
 		int vpos = opos + Integer.BYTES;
 		val = p.getString(vpos);
+		int npos = vpos + Page.maxLength(val.length());
+		newval = p.getString(npos);
 	}
 
 	public int op() {
@@ -36,8 +38,12 @@ public class SetStringRecord implements LogRecord {
 		return txnum;
 	}
 
+	public BlockId block() {
+		return blk;
+	}
+
 	public String toString() {
-		return "<SETSTRING " + txnum + " " + blk + " " + offset + " " + val + ">";
+		return "<SETSTRING " + txnum + " " + blk + " " + offset + " " + val + " " + newval + ">";
 	}
 
 	/**
@@ -48,35 +54,94 @@ public class SetStringRecord implements LogRecord {
 	 * @see simpledb.tx.recovery.LogRecord#undo(int)
 	 */
 	public void undo(Transaction tx) {
-		System.out.println("\t undoing record");
 		tx.pin(blk);
 		tx.setString(blk, offset, val, false); // don't log the undo!
 		tx.unpin(blk);
 	}
 
 	/**
-	 * A static method to write a setInt record to the log. This log record contains
-	 * the SETINT operator, followed by the transaction id, the filename, number,
-	 * and offset of the modified block, and the previous integer value at that
-	 * offset.
+	 * Write the value saved in the log record back into the specified block. Like
+	 * undo, the method pins a buffer to the block, calls setString without logging, and
+	 * unpins the buffer. Since the value is physical, redoing a record more than
+	 * once has the same effect as redoing it once.
+	 */
+	public void redo(Transaction tx) {
+		tx.pin(blk);
+		tx.setString(blk, offset, newval, false);
+		tx.unpin(blk);
+	}
+
+	public void undo(Page p) {
+		p.setString(offset, val);
+	}
+
+	public void redo(Page p) {
+		p.setString(offset, newval);
+	}
+
+	/**
+	 * A static method to write a setString record to the log. This log record
+	 * contains the SETSTRING operator, followed by the transaction id, the filename,
+	 * number, and offset of the modified block, the previous string value at that
+	 * offset, and the new string value.
 	 * 
 	 * @return the LSN of the last log value
 	 */
-	public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, String val) {
-		int tpos = Integer.BYTES;
-		int fpos = tpos + Integer.BYTES;
-		int bpos = fpos + Page.maxLength(blk.fileName().length());
-		int opos = bpos + Integer.BYTES;
-		int vpos = opos + Integer.BYTES;
-		int reclen = vpos + Page.maxLength(val.length());
-		byte[] rec = new byte[reclen];
-		Page p = new Page(rec);
-		p.setInt(0, SETSTRING);
-		p.setInt(tpos, txnum);
-		p.setString(fpos, blk.fileName());
-		p.setInt(bpos, blk.number());
-		p.setInt(opos, offset);
-		p.setString(vpos, val);
-		return lm.append(rec);
+	public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, String val, String newval) {
+		return new Writer().writeToLog(lm, txnum, blk, offset, val, newval);
+	}
+
+	/**
+	 * A reusable serializer for setstring records, which writes each record
+	 * straight into the log buffer instead of building a temporary byte array.
+	 */
+	static class Writer implements LogWritable {
+		private int txnum, offset;
+		private String val, newval;
+		private BlockId blk;
+		private long address;
+
+		int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, String val, String newval) {
+			this.txnum = txnum;
+			this.blk = blk;
+			this.offset = offset;
+			this.val = val;
+			this.newval = newval;
+			int lsn = lm.append(this);
+			this.val = this.newval = null;
+			return lsn;
+		}
+
+		public int logSize() {
+			return Page.maxLength(blk.fileName().length()) + 4 * Integer.BYTES
+					+ Page.maxLength(val.length()) + Page.maxLength(newval.length());
+		}
+
+		public void writeTo(Page p, int pos) {
+			int tpos = pos + Integer.BYTES;
+			int fpos = tpos + Integer.BYTES;
+			int bpos = fpos + Page.maxLength(blk.fileName().length());
+			int opos = bpos + Integer.BYTES;
+			int vpos = opos + Integer.BYTES;
+			int npos = vpos + Page.maxLength(val.length());
+			p.setInt(pos, SETSTRING);
+			p.setInt(tpos, txnum);
+			p.setString(fpos, blk.fileName());
+			p.setInt(bpos, blk.number());
+			p.setInt(opos, offset);
+			p.setString(vpos, val);
+			p.setString(npos, newval);
+		}
+
+		public void appended(long address) {
+			this.address = address;
+		}
+
+		/**
+		 * Returns the log address of the last record written.
+		 */
+		long address() {
+			return address;
+		}
 	}
 }
\ No newline at end of file
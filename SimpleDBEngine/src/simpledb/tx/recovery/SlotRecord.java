@@ -0,0 +1,344 @@
+package simpledb.tx.recovery;
+
+import java.util.*;
+
+import simpledb.file.*;
+import simpledb.log.*;
+import simpledb.tx.SlotUpdate;
+import simpledb.tx.Transaction;
+
+/**
+ * The INSERTSLOT, DELETESLOT and UPDATESLOT log records. Each one logs the
+ * change to a record slot as a whole: the slot's header, which holds the
+ * empty/inuse flag and the null bits, together with the fields that changed.
+ * The record saves a before-image and an after-image of the slot. A deletion
+ * only changes the header. An insertion saves the old field values as well,
+ * since undoing an earlier deletion of the same slot may make them visible
+ * again. The images of a slotted page also hold ranges of raw bytes, and the
+ * images of a fixed-size page hold the slot's occupancy bit.
+ * <p>
+ * A change that does not fit in one log record, such as the insertion of a wide
+ * record, is logged as several slot records, each holding a piece of the change
+ * made by {@link #split(BlockId, SlotUpdate, int)}.
+ */
+public class SlotRecord implements UpdateRecord {
+	private static final int INT_VALUE = 0, STRING_VALUE = 1, BYTES_VALUE = 2, BIT_VALUE = 3;
+	private int op, txnum;
+	private BlockId blk;
+	private SlotUpdate before, after;
+
+	/**
+	 * Create a new slot log record.
+	 *
+	 * @param p the page containing the log values
+	 */
+	public SlotRecord(Page p) {
+		op = p.getInt(0);
+		int tpos = Integer.BYTES;
+		txnum = p.getInt(tpos);
+		int fpos = tpos + Integer.BYTES;
+		String filename = p.getString(fpos);
+		int bpos = fpos + Page.maxLength(filename.length());
+		int blknum = p.getInt(bpos);
+		blk = new BlockId(filename, blknum);
+		int ipos = bpos + Integer.BYTES;
+		before = readImage(p, ipos);
+		after = readImage(p, ipos + imageSize(before));
+	}
+
+	public int op() {
+		return op;
+	}
+
+	public int txNumber() {
+		return txnum;
+	}
+
+	public BlockId block() {
+		return blk;
+	}
+
+	public String toString() {
+		String name = (op == INSERTSLOT) ? "INSERTSLOT" : (op == DELETESLOT) ? "DELETESLOT" : "UPDATESLOT";
+		return "<" + name + " " + txnum + " " + blk + " " + before.offset() + " " + imageString(before) + " "
+				+ imageString(after) + ">";
+	}
+
+	/**
+	 * Restore the slot's before-image. The method pins a buffer to the specified
+	 * block, writes the saved header and field values without logging them, and
+	 * unpins the buffer.
+	 */
+	public void undo(Transaction tx) {
+		write(tx, before);
+	}
+
+	/**
+	 * Write the slot's after-image back into the specified block, without logging
+	 * it. Like the other update records, redoing the record more than once has the
+	 * same effect as redoing it once.
+	 */
+	public void redo(Transaction tx) {
+		write(tx, after);
+	}
+
+	public void undo(Page p) {
+		before.apply(p);
+	}
+
+	public void redo(Page p) {
+		after.apply(p);
+	}
+
+	private void write(Transaction tx, SlotUpdate img) {
+		tx.pin(blk);
+		tx.setInt(blk, img.offset(), img.flag(), false); // don't log the undo or redo!
+		for (int i = 0; i < img.size(); i++) {
+			if (img.isInt(i))
+				tx.setInt(blk, img.fieldOffset(i), img.getInt(i), false);
+			else if (img.isBytes(i))
+				tx.setRaw(blk, img.fieldOffset(i), img.getBytes(i));
+			else if (img.isBit(i))
+				tx.setBit(blk, img.bitPosition(i), img.getBit(i));
+			else
+				tx.setString(blk, img.fieldOffset(i), img.getString(i), false);
+		}
+		tx.unpin(blk);
+	}
+
+	private static SlotUpdate readImage(Page p, int pos) {
+		int offset = p.getInt(pos);
+		pos += Integer.BYTES;
+		SlotUpdate img = new SlotUpdate(offset, p.getInt(pos));
+		pos += Integer.BYTES;
+		int count = p.getInt(pos);
+		pos += Integer.BYTES;
+		for (int i = 0; i < count; i++) {
+			int fldoffset = p.getInt(pos);
+			pos += Integer.BYTES;
+			int type = p.getInt(pos);
+			pos += Integer.BYTES;
+			if (type == INT_VALUE) {
+				img.setInt(fldoffset, p.getInt(pos));
+				pos += Integer.BYTES;
+			} else if (type == BYTES_VALUE) {
+				byte[] val = p.getBytes(pos);
+				img.setBytes(fldoffset, val);
+				pos += Integer.BYTES + val.length;
+			} else if (type == BIT_VALUE) {
+				img.setBit(-1 - fldoffset, p.getInt(pos) == 1);
+				pos += Integer.BYTES;
+			} else {
+				String val = p.getString(pos);
+				img.setString(fldoffset, val);
+				pos += Page.maxLength(val.length());
+			}
+		}
+		return img;
+	}
+
+	private static int writeImage(Page p, int pos, SlotUpdate img) {
+		p.setInt(pos, img.offset());
+		pos += Integer.BYTES;
+		p.setInt(pos, img.flag());
+		pos += Integer.BYTES;
+		p.setInt(pos, img.size());
+		pos += Integer.BYTES;
+		for (int i = 0; i < img.size(); i++) {
+			p.setInt(pos, img.fieldOffset(i));
+			pos += Integer.BYTES;
+			if (img.isInt(i)) {
+				p.setInt(pos, INT_VALUE);
+				pos += Integer.BYTES;
+				p.setInt(pos, img.getInt(i));
+				pos += Integer.BYTES;
+			} else if (img.isBytes(i)) {
+				p.setInt(pos, BYTES_VALUE);
+				pos += Integer.BYTES;
+				p.setBytes(pos, img.getBytes(i));
+				pos += Integer.BYTES + img.getBytes(i).length;
+			} else if (img.isBit(i)) {
+				p.setInt(pos, BIT_VALUE);
+				pos += Integer.BYTES;
+				p.setInt(pos, img.getBit(i) ? 1 : 0);
+				pos += Integer.BYTES;
+			} else {
+				p.setInt(pos, STRING_VALUE);
+				pos += Integer.BYTES;
+				p.setString(pos, img.getString(i));
+				pos += Page.maxLength(img.getString(i).length());
+			}
+		}
+		return pos;
+	}
+
+	private static int imageSize(SlotUpdate img) {
+		int size = 3 * Integer.BYTES;
+		for (int i = 0; i < img.size(); i++) {
+			size += 2 * Integer.BYTES;
+			if (img.isInt(i) || img.isBit(i))
+				size += Integer.BYTES;
+			else if (img.isBytes(i))
+				size += Integer.BYTES + img.getBytes(i).length;
+			else
+				size += Page.maxLength(img.getString(i).length());
+		}
+		return size;
+	}
+
+	private static String imageString(SlotUpdate img) {
+		StringBuilder sb = new StringBuilder("[");
+		sb.append(img.flag());
+		for (int i = 0; i < img.size(); i++) {
+			sb.append(" ");
+			if (img.isBit(i))
+				sb.append("bit ").append(img.bitPosition(i));
+			else
+				sb.append(img.fieldOffset(i));
+			sb.append("=");
+			if (img.isInt(i) || img.isBit(i))
+				sb.append(img.value(i));
+			else if (img.isBytes(i))
+				sb.append("(").append(img.getBytes(i).length).append(" bytes)");
+			else
+				sb.append(img.getString(i));
+		}
+		sb.append("]");
+		return sb.toString();
+	}
+
+	/**
+	 * Return the size of the slot record that logs the change of a slot of the
+	 * specified block from the specified before-image to the after-image.
+	 */
+	public static int logSize(BlockId blk, SlotUpdate before, SlotUpdate after) {
+		return 3 * Integer.BYTES + Page.maxLength(blk.fileName().length()) + imageSize(before) + imageSize(after);
+	}
+
+	/**
+	 * Split the specified image of a slot of the block into images whose slot
+	 * records are each at most the specified size. Every piece holds the slot's
+	 * header, and the values are spread over the pieces in order. A string is
+	 * written as the raw bytes that the page stores for it, and a long range of
+	 * bytes is cut into shorter ranges. Writing all of the pieces therefore has the
+	 * same effect as writing the image, and undoing them in reverse order restores
+	 * the slot.
+	 *
+	 * @param blk     the slot's block
+	 * @param after   the new image of the slot
+	 * @param maxsize the largest size of a slot record
+	 * @return the pieces of the image
+	 */
+	public static List<SlotUpdate> split(BlockId blk, SlotUpdate after, int maxsize) {
+		int room = maxsize - logSize(blk, new SlotUpdate(0, 0), new SlotUpdate(0, 0));
+		int valuesize = 3 * Integer.BYTES; // the offset, type and an int or a length
+		List<SlotUpdate> pieces = new ArrayList<>();
+		SlotUpdate piece = new SlotUpdate(after.offset(), after.flag());
+		int used = 0;
+		for (int i = 0; i < after.size(); i++) {
+			if (after.isInt(i) || after.isBit(i)) {
+				if (used + 2 * valuesize > room) {
+					pieces.add(piece);
+					piece = new SlotUpdate(after.offset(), after.flag());
+					used = 0;
+				}
+				if (after.isInt(i))
+					piece.setInt(after.fieldOffset(i), after.getInt(i));
+				else
+					piece.setBit(after.bitPosition(i), after.getBit(i));
+				used += 2 * valuesize;
+				continue;
+			}
+			byte[] val = after.isBytes(i) ? after.getBytes(i) : stringBytes(after.getString(i));
+			int pos = 0;
+			while (pos < val.length) {
+				// both images hold the range, the before-image with the old bytes
+				int len = Math.min(val.length - pos, (room - used) / 2 - valuesize);
+				if (len <= 0) {
+					if (used == 0)
+						throw new RuntimeException("log records are too small for a slot record of " + blk);
+					pieces.add(piece);
+					piece = new SlotUpdate(after.offset(), after.flag());
+					used = 0;
+					continue;
+				}
+				piece.setBytes(after.fieldOffset(i) + pos, Arrays.copyOfRange(val, pos, pos + len));
+				used += 2 * (valuesize + len);
+				pos += len;
+			}
+		}
+		pieces.add(piece);
+		return pieces;
+	}
+
+	/**
+	 * Return the bytes that a page stores for the specified string.
+	 */
+	private static byte[] stringBytes(String s) {
+		byte[] b = new byte[Page.maxLength(s.length())];
+		new Page(b).setString(0, s);
+		return b;
+	}
+
+	/**
+	 * A static method to write a slot record to the log. This log record contains
+	 * the operator, followed by the transaction id, the filename and number of the
+	 * modified block, and the before- and after-images of the slot. Each image
+	 * holds the slot's offset and header and the number of field values, followed
+	 * by the offset, type and value of each field.
+	 *
+	 * @return the LSN of the last log value
+	 */
+	public static int writeToLog(LogMgr lm, int op, int txnum, BlockId blk, SlotUpdate before, SlotUpdate after) {
+		return new Writer().writeToLog(lm, op, txnum, blk, before, after);
+	}
+
+	/**
+	 * A reusable serializer for slot records, which writes each record straight
+	 * into the log buffer.
+	 */
+	static class Writer implements LogWritable {
+		private int op, txnum;
+		private BlockId blk;
+		private SlotUpdate before, after;
+		private long address;
+
+		int writeToLog(LogMgr lm, int op, int txnum, BlockId blk, SlotUpdate before, SlotUpdate after) {
+			this.op = op;
+			this.txnum = txnum;
+			this.blk = blk;
+			this.before = before;
+			this.after = after;
+			int lsn = lm.append(this);
+			this.before = this.after = null;
+			return lsn;
+		}
+
+		public int logSize() {
+			return SlotRecord.logSize(blk, before, after);
+		}
+
+		public void writeTo(Page p, int pos) {
+			int tpos = pos + Integer.BYTES;
+			int fpos = tpos + Integer.BYTES;
+			int bpos = fpos + Page.maxLength(blk.fileName().length());
+			int ipos = bpos + Integer.BYTES;
+			p.setInt(pos, op);
+			p.setInt(tpos, txnum);
+			p.setString(fpos, blk.fileName());
+			p.setInt(bpos, blk.number());
+			writeImage(p, writeImage(p, ipos, before), after);
+		}
+
+		public void appended(long address) {
+			this.address = address;
+		}
+
+		/**
+		 * Returns the log address of the last record written.
+		 */
+		long address() {
+			return address;
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package simpledb.tx.recovery;
+
+import java.util.Arrays;
+import simpledb.server.SimpleDB;
+import simpledb.record.*;
+import simpledb.tx.Transaction;
+
+public class SlotRecoveryTest {
+   private static SimpleDB db;
+   private static Schema sch;
+
+   public static void main(String[] args) {
+      db = new SimpleDB("slotrecoverytest", 400, 8);
+      // each image of a row is about as large as a log block
+      sch = new Schema();
+      sch.addStringField("a", 60);
+      sch.addStringField("b", 60);
+      sch.addStringField("c", 60);
+
+      if (db.fileMgr().isNew()) {
+         for (RecordFormat format : RecordFormat.values())
+            crash(format);
+      }
+      else {
+         Transaction tx = db.newTx();
+         tx.recover();
+         tx.commit();
+         for (RecordFormat format : RecordFormat.values())
+            printRows(format, "After recovery (should be x60 y60 z60, p5 q60 r60):");
+      }
+   }
+
+   private static void crash(RecordFormat format) {
+      Layout layout = new Layout(sch, format);
+      String tblname = tableName(format);
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, tblname, layout);
+      insert(ts, fill('x', 60), fill('y', 60), fill('z', 60));
+      insert(ts, fill('p', 5), fill('q', 60), fill('r', 60));
+      ts.close();
+      tx.commit();
+
+      // undo by rollback
+      tx = db.newTx();
+      ts = new TableScan(tx, tblname, layout);
+      ts.next();
+      ts.delete();
+      ts.next();
+      ts.setString("b", fill('u', 60));
+      insert(ts, fill('m', 60), fill('n', 60), fill('o', 60));
+      ts.close();
+      tx.rollback();
+      printRows(format, "After rollback (should be x60 y60 z60, p5 q60 r60):");
+
+      // undo by recovery: this transaction never finishes,
+      // but its changes reach the disk
+      tx = db.newTx();
+      ts = new TableScan(tx, tblname, layout);
+      ts.next();
+      ts.setString("c", fill('v', 3));
+      insert(ts, fill('m', 60), fill('n', 60), fill('o', 60));
+      ts.close();
+      db.bufferMgr().flushAll();
+   }
+
+   private static void insert(TableScan ts, String a, String b, String c) {
+      ts.insert();
+      ts.setString("a", a);
+      ts.setString("b", b);
+      ts.setString("c", c);
+   }
+
+   private static void printRows(RecordFormat format, String msg) {
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, tableName(format), new Layout(sch, format));
+      String rows = "";
+      while (ts.next()) {
+         String row = "";
+         for (String fldname : sch.fields()) {
+            String s = ts.getString(fldname);
+            row += (row.isEmpty() ? "" : " ") + s.charAt(0) + s.length();
+         }
+         rows += (rows.isEmpty() ? "" : ", ") + row;
+      }
+      ts.close();
+      tx.commit();
+      System.out.println(format + " " + msg);
+      System.out.println(rows);
+   }
+
+   private static String tableName(RecordFormat format) {
+      return "wide" + format.name().toLowerCase();
+   }
+
+   private static String fill(char c, int n) {
+      char[] chars = new char[n];
+      Arrays.fill(chars, c);
+      return new String(chars);
+   }
+}
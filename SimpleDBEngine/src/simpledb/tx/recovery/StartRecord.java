@@ -29,6 +29,12 @@ public class StartRecord implements LogRecord {
     * contains no undo information.
     */
    public void undo(Transaction tx) {}
+
+   /**
+    * Does nothing, because a start record
+    * contains no redo information.
+    */
+   public void redo(Transaction tx) {}
    
    public String toString() {
       return "<START " + txnum + ">";
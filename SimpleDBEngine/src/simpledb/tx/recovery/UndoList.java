@@ -0,0 +1,92 @@
+package simpledb.tx.recovery;
+
+import java.util.Arrays;
+
+import simpledb.file.BlockId;
+import simpledb.tx.Transaction;
+
+/**
+ * A transaction's in-memory undo information, kept alongside the log so that
+ * rollback does not have to read the log. The before-images are stored in
+ * parallel arrays that grow by doubling, so adding an entry does not allocate
+ * an object per update.
+ */
+class UndoList {
+	private static final int INITIAL_CAPACITY = 16;
+	private static final byte BYTES = -1, BIT = -2;
+	private int size = 0;
+	private byte[] ops = new byte[INITIAL_CAPACITY];
+	private BlockId[] blocks = new BlockId[INITIAL_CAPACITY];
+	private int[] offsets = new int[INITIAL_CAPACITY];
+	private int[] intvals = new int[INITIAL_CAPACITY];
+	private Object[] objvals = new Object[INITIAL_CAPACITY];
+
+	int size() {
+		return size;
+	}
+
+	void addInt(BlockId blk, int offset, int oldval) {
+		int i = nextSlot(LogRecord.SETINT, blk, offset);
+		intvals[i] = oldval;
+	}
+
+	void addString(BlockId blk, int offset, String oldval) {
+		int i = nextSlot(LogRecord.SETSTRING, blk, offset);
+		objvals[i] = oldval;
+	}
+
+	void addBytes(BlockId blk, int offset, byte[] oldval) {
+		int i = nextSlot(BYTES, blk, offset);
+		objvals[i] = oldval;
+	}
+
+	void addBit(BlockId blk, int bitpos, boolean oldval) {
+		int i = nextSlot(BIT, blk, bitpos);
+		intvals[i] = oldval ? 1 : 0;
+	}
+
+	/**
+	 * Restore the saved values through the specified transaction, from the most
+	 * recent to the earliest, without logging them. The list is then emptied.
+	 * 
+	 * @param tx the transaction that is rolling back
+	 */
+	void undoAll(Transaction tx) {
+		for (int i = size - 1; i >= 0; i--) {
+			BlockId blk = blocks[i];
+			tx.pin(blk);
+			if (ops[i] == LogRecord.SETINT)
+				tx.setInt(blk, offsets[i], intvals[i], false);
+			else if (ops[i] == BYTES)
+				tx.setRaw(blk, offsets[i], (byte[]) objvals[i]);
+			else if (ops[i] == BIT)
+				tx.setBit(blk, offsets[i], intvals[i] == 1);
+			else
+				tx.setString(blk, offsets[i], (String) objvals[i], false);
+			tx.unpin(blk);
+		}
+		clear();
+	}
+
+	void clear() {
+		Arrays.fill(blocks, 0, size, null);
+		Arrays.fill(objvals, 0, size, null);
+		size = 0;
+	}
+
+	private int nextSlot(int op, BlockId blk, int offset) {
+		if (size == ops.length) {
+			int capacity = 2 * size;
+			ops = Arrays.copyOf(ops, capacity);
+			blocks = Arrays.copyOf(blocks, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+			intvals = Arrays.copyOf(intvals, capacity);
+			objvals = Arrays.copyOf(objvals, capacity);
+		}
+		int i = size++;
+		ops[i] = (byte) op;
+		blocks[i] = blk;
+		offsets[i] = offset;
+		return i;
+	}
+}
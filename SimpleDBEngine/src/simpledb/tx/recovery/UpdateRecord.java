@@ -0,0 +1,34 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.*;
+
+/**
+ * The interface implemented by the log records that change a single block.
+ * Besides undoing and redoing themselves through a transaction, such records
+ * can apply their before- or after-image directly to a page that the caller
+ * has pinned, which is how parallel recovery replays them.
+ */
+interface UpdateRecord extends LogRecord {
+	/**
+	 * Returns the block changed by this log record.
+	 * 
+	 * @return the modified block
+	 */
+	BlockId block();
+
+	/**
+	 * Writes the record's saved before-image into the specified page, which must
+	 * hold the contents of the record's block.
+	 * 
+	 * @param p the page to change
+	 */
+	void undo(Page p);
+
+	/**
+	 * Writes the record's saved after-image into the specified page, which must
+	 * hold the contents of the record's block.
+	 * 
+	 * @param p the page to change
+	 */
+	void redo(Page p);
+}